@@ -2,6 +2,8 @@
 
 package com.cryptoregistry.digest.cubehash;
 
+import com.cryptoregistry.util.LittleEndian;
+
 /**
  * This class implements the core operations for the CubeHash digest algorithm.
  *
@@ -267,10 +269,7 @@ public abstract class CubeHashCore extends DigestEngine {
 	 *            the destination offset
 	 */
 	private static final void encodeLEInt(int val, byte[] buf, int off) {
-		buf[off + 0] = (byte) val;
-		buf[off + 1] = (byte) (val >>> 8);
-		buf[off + 2] = (byte) (val >>> 16);
-		buf[off + 3] = (byte) (val >>> 24);
+		LittleEndian.st32(buf, off, val);
 	}
 
 	/**
@@ -284,8 +283,7 @@ public abstract class CubeHashCore extends DigestEngine {
 	 * @return the decoded value
 	 */
 	private static final int decodeLEInt(byte[] buf, int off) {
-		return (buf[off + 0] & 0xFF) | ((buf[off + 1] & 0xFF) << 8)
-				| ((buf[off + 2] & 0xFF) << 16) | ((buf[off + 3] & 0xFF) << 24);
+		return LittleEndian.ld32(buf, off);
 	}
 
 	/** @see DigestEngine */
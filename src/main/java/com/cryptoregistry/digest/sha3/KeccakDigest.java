@@ -22,6 +22,8 @@ package com.cryptoregistry.digest.sha3;
 
 import java.util.Arrays;
 
+import com.cryptoregistry.util.LittleEndian;
+
 /**
  * implementation of Keccak based on following KeccakNISTInterface.c from
  * http://keccak.noekeon.org/
@@ -359,20 +361,13 @@ public class KeccakDigest implements ExtendedDigest {
 
 	private void fromBytesToWords(long[] stateAsWords, byte[] state) {
 		for (int i = 0; i < (1600 / 64); i++) {
-			stateAsWords[i] = 0;
-			int index = i * (64 / 8);
-			for (int j = 0; j < (64 / 8); j++) {
-				stateAsWords[i] |= ((long) state[index + j] & 0xff) << ((8 * j));
-			}
+			stateAsWords[i] = LittleEndian.ld64(state, i * (64 / 8));
 		}
 	}
 
 	private void fromWordsToBytes(byte[] state, long[] stateAsWords) {
 		for (int i = 0; i < (1600 / 64); i++) {
-			int index = i * (64 / 8);
-			for (int j = 0; j < (64 / 8); j++) {
-				state[index + j] = (byte) ((stateAsWords[i] >>> ((8 * j))) & 0xFF);
-			}
+			LittleEndian.st64(state, i * (64 / 8), stateAsWords[i]);
 		}
 	}
 
@@ -73,7 +73,7 @@ public class PBE {
 	public String protect(char[] password, byte[] confidentialBytes) {
 		if (params == null) throw new RuntimeException("Need to set params in constructor first before this call.");
 		if (password == null) throw new RuntimeException("Password cannot be null.");
-		TweetNaCl salt = new TweetNaCl();
+		TweetNaCl salt = TweetNaCl.getInstance();
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
 		DataOutputStream doubt = new DataOutputStream(out);
 		try {
@@ -111,7 +111,7 @@ public class PBE {
 	 */
 	public byte [] unprotect(char[] password, String protectedString) {
 
-		TweetNaCl salt = new TweetNaCl();
+		TweetNaCl salt = TweetNaCl.getInstance();
 
 		try {
 			byte[] packed = Base64.getUrlDecoder().decode(protectedString);
@@ -0,0 +1,349 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.cryptoregistry.tweet.pepper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.cryptoregistry.tweet.salt.Ed25519PublicKey;
+import com.cryptoregistry.tweet.salt.Ed25519SigningKey;
+import com.cryptoregistry.tweet.salt.SharedKey;
+import com.cryptoregistry.tweet.salt.TweetNaCl;
+import com.cryptoregistry.tweet.salt.TweetNaCl.InvalidSignatureException;
+
+/**
+ * Runs batches of independent box, unbox, sign and verify jobs on a ForkJoinPool, instead of 
+ * hand-rolled thread pools around TweetPepper.
+ * 
+ * <p>A batch is cut into chunks of consecutive jobs, one pool task per chunk. Each job gets its own
+ * CompletableFuture, handed back in the order the jobs were given; a job which throws (a cipher text 
+ * which does not open, say) completes its future exceptionally and does not affect the others.</p>
+ * 
+ * <p>Back-pressure: at most maxPendingJobs jobs are queued or running at once, over all batches. 
+ * submit() blocks until there is room, so a producer can never run ahead of the pool by more than 
+ * that. For the same reason submit() must not be called from a task running in the executor's own 
+ * pool.</p>
+ * 
+ * <p>Java 8 has no virtual threads; the jobs are CPU bound anyway, so a pool sized to the cores 
+ * is what they want.</p>
+ * 
+ * @author Dave
+ */
+public final class CryptoBatchExecutor {
+
+	public static final int DEFAULT_CHUNK_SIZE = 32;
+
+	private final ForkJoinPool pool;
+	private final TweetNaCl salt;
+	private final int maxPendingJobs;
+	private final int chunkSize;
+	private final Semaphore pending;
+
+	/**
+	 * The common pool and the shared TweetNaCl, with room for 64 jobs per core
+	 */
+	public CryptoBatchExecutor() {
+		this(ForkJoinPool.commonPool(), TweetNaCl.getInstance(), 64 * ForkJoinPool.getCommonPoolParallelism());
+	}
+
+	public CryptoBatchExecutor(ForkJoinPool pool, TweetNaCl salt, int maxPendingJobs) {
+		if (maxPendingJobs < 1)
+			throw new IllegalArgumentException("maxPendingJobs must be positive: " + maxPendingJobs);
+		this.pool = pool;
+		this.salt = salt;
+		this.maxPendingJobs = maxPendingJobs;
+		this.chunkSize = Math.min(DEFAULT_CHUNK_SIZE, maxPendingJobs);
+		this.pending = new Semaphore(maxPendingJobs);
+	}
+
+	/**
+	 * One unit of work
+	 */
+	public interface Job<R> {
+		R run(TweetNaCl salt);
+	}
+
+	/**
+	 * Submit jobs, blocking while the executor is full. 
+	 * 
+	 * If the calling thread is interrupted while waiting, the jobs not yet submitted are cancelled 
+	 * and the interrupt status is set again. If the pool refuses a chunk (it has been shut down, say), 
+	 * that chunk and the rest fail with the RejectedExecutionException.
+	 */
+	public <R> Batch<R> submit(List<? extends Job<? extends R>> jobs) {
+		final Batch<R> batch = new Batch<R>(jobs.size());
+		int n = jobs.size();
+		for (int from = 0; from < n; from += chunkSize) {
+			int to = Math.min(n, from + chunkSize);
+			try {
+				pending.acquire(to - from);
+			} catch (InterruptedException x) {
+				Thread.currentThread().interrupt();
+				for (int i = from; i < n; i++)
+					batch.fail(i, new CancellationException("Interrupted before submission"));
+				break;
+			}
+			final List<? extends Job<? extends R>> chunk = new ArrayList<Job<? extends R>>(jobs.subList(from, to));
+			final int offset = from;
+			try {
+				pool.execute(new Runnable() {
+					public void run() {
+						for (int i = 0; i < chunk.size(); i++) {
+							R result = null;
+							Throwable failure = null;
+							try {
+								result = chunk.get(i).run(salt);
+							} catch (Throwable x) {
+								failure = x;
+							}
+							// room is made before the future completes, so whoever waits on it sees the room
+							pending.release();
+							if (failure == null)
+								batch.complete(offset + i, result);
+							else
+								batch.fail(offset + i, failure);
+						}
+					}
+				});
+			} catch (RejectedExecutionException x) {
+				pending.release(to - from);
+				for (int i = from; i < n; i++)
+					batch.fail(i, x);
+				break;
+			}
+		}
+		return batch;
+	}
+
+	/**
+	 * Jobs submitted and not yet finished, over all batches
+	 */
+	public int pendingJobs() {
+		return maxPendingJobs - pending.availablePermits();
+	}
+
+	public int getMaxPendingJobs() {
+		return maxPendingJobs;
+	}
+
+	// the jobs
+
+	public static Job<byte[]> box(final byte[] message, final byte[] nonce, final byte[] theirPublicBoxingKey,
+			final byte[] ourSecretBoxingKey) {
+		return new Job<byte[]>() {
+			public byte[] run(TweetNaCl salt) {
+				return salt.crypto_box(message, nonce, theirPublicBoxingKey, ourSecretBoxingKey);
+			}
+		};
+	}
+
+	/**
+	 * Fails with InvalidCipherTextException if cipher does not open
+	 */
+	public static Job<byte[]> unbox(final byte[] cipher, final byte[] nonce, final byte[] theirPublicBoxingKey,
+			final byte[] ourSecretBoxingKey) {
+		return new Job<byte[]>() {
+			public byte[] run(TweetNaCl salt) {
+				return salt.crypto_box_open(cipher, nonce, theirPublicBoxingKey, ourSecretBoxingKey);
+			}
+		};
+	}
+
+	/**
+	 * box() with the key agreement done once beforehand, for many messages between the same two keys
+	 */
+	public static Job<byte[]> box(final byte[] message, final byte[] nonce, final SharedKey key) {
+		return new Job<byte[]>() {
+			public byte[] run(TweetNaCl salt) {
+				return salt.crypto_box_afternm(message, nonce, key);
+			}
+		};
+	}
+
+	public static Job<byte[]> unbox(final byte[] cipher, final byte[] nonce, final SharedKey key) {
+		return new Job<byte[]>() {
+			public byte[] run(TweetNaCl salt) {
+				return salt.crypto_box_open_afternm(cipher, nonce, key);
+			}
+		};
+	}
+
+	public static Job<byte[]> secretbox(final byte[] message, final byte[] nonce, final byte[] key) {
+		return new Job<byte[]>() {
+			public byte[] run(TweetNaCl salt) {
+				return salt.secretbox(message, nonce, key);
+			}
+		};
+	}
+
+	public static Job<byte[]> secretboxOpen(final byte[] cipher, final byte[] nonce, final byte[] key) {
+		return new Job<byte[]>() {
+			public byte[] run(TweetNaCl salt) {
+				return salt.secretbox_open(cipher, nonce, key);
+			}
+		};
+	}
+
+	/**
+	 * The detached signature on message
+	 */
+	public static Job<byte[]> sign(final byte[] message, final Ed25519SigningKey key) {
+		return new Job<byte[]>() {
+			public byte[] run(TweetNaCl salt) {
+				return salt.crypto_sign_detached(message, key);
+			}
+		};
+	}
+
+	/**
+	 * Whether signature is a good detached signature on message. A bad signature is a false result, 
+	 * not a failed job.
+	 */
+	public static Job<Boolean> verify(final byte[] signature, final byte[] message, final Ed25519PublicKey key) {
+		return new Job<Boolean>() {
+			public Boolean run(TweetNaCl salt) {
+				try {
+					salt.crypto_sign_verify_detached(signature, message, key);
+					return Boolean.TRUE;
+				} catch (InvalidSignatureException x) {
+					return Boolean.FALSE;
+				}
+			}
+		};
+	}
+
+	public static Job<Boolean> verify(final byte[] signature, final byte[] message, final byte[] publicSigningKey) {
+		return new Job<Boolean>() {
+			public Boolean run(TweetNaCl salt) {
+				try {
+					salt.crypto_sign_verify_detached(signature, message, publicSigningKey);
+					return Boolean.TRUE;
+				} catch (InvalidSignatureException x) {
+					return Boolean.FALSE;
+				}
+			}
+		};
+	}
+
+	/**
+	 * The results of one submit(), in job order, and its statistics once it is done
+	 */
+	public static final class Batch<R> {
+
+		private final List<CompletableFuture<R>> results;
+		private final CompletableFuture<BatchStats> stats = new CompletableFuture<BatchStats>();
+		private final AtomicInteger remaining, failed = new AtomicInteger();
+		private final long started = System.nanoTime();
+
+		Batch(int size) {
+			List<CompletableFuture<R>> list = new ArrayList<CompletableFuture<R>>(size);
+			for (int i = 0; i < size; i++)
+				list.add(new CompletableFuture<R>());
+			results = Collections.unmodifiableList(list);
+			remaining = new AtomicInteger(size);
+			if (size == 0)
+				stats.complete(new BatchStats(0, 0, 0));
+		}
+
+		void complete(int i, R result) {
+			results.get(i).complete(result);
+			finished();
+		}
+
+		void fail(int i, Throwable x) {
+			results.get(i).completeExceptionally(x);
+			failed.incrementAndGet();
+			finished();
+		}
+
+		private void finished() {
+			if (remaining.decrementAndGet() == 0)
+				stats.complete(new BatchStats(results.size(), failed.get(), System.nanoTime() - started));
+		}
+
+		/**
+		 * One future per job, in the order the jobs were submitted
+		 */
+		public List<CompletableFuture<R>> results() {
+			return results;
+		}
+
+		public CompletableFuture<R> result(int i) {
+			return results.get(i);
+		}
+
+		/**
+		 * All results in job order, or the first failure
+		 */
+		public CompletableFuture<List<R>> all() {
+			return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[results.size()]))
+					.thenApply(new Function<Void, List<R>>() {
+						public List<R> apply(Void v) {
+							List<R> list = new ArrayList<R>(results.size());
+							for (CompletableFuture<R> f : results)
+								list.add(f.join());
+							return list;
+						}
+					});
+		}
+
+		/**
+		 * Completes when every job has finished, whether or not it succeeded
+		 */
+		public CompletableFuture<BatchStats> stats() {
+			return stats;
+		}
+	}
+
+	/**
+	 * How a batch went: jobs, failures and wall-clock time from submit() to the last job finishing
+	 */
+	public static final class BatchStats {
+
+		public final int jobs;
+		public final int failed;
+		public final long elapsedNanos;
+
+		BatchStats(int jobs, int failed, long elapsedNanos) {
+			this.jobs = jobs;
+			this.failed = failed;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public double jobsPerSecond() {
+			return elapsedNanos == 0 ? 0 : jobs * 1e9 / elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d jobs, %d failed, %.1fms, %.0f jobs/s", jobs, failed, elapsedNanos / 1e6,
+					jobsPerSecond());
+		}
+	}
+}
@@ -122,11 +122,12 @@ public class KMU {
 	 */
 	public void protectKeyBlocks(char [] password) {
 		List<Block> list = new ArrayList<Block>();
+		TweetPepper pepper = new TweetPepper();
 		for(String s: map.keySet()){
 			Block b = map.get(s);
 			if(b.name.endsWith("-U")){
 				String base64UnsecureKey = b.get("S");
-				PBEParams params = new TweetPepper().createPBEParams();
+				PBEParams params = pepper.createPBEParams();
 				PBE pbe = new PBE(params);
 				String enc = pbe.protect(password, Base64.getUrlDecoder().decode(base64UnsecureKey));
 				b.remove("S");
@@ -0,0 +1,52 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.pepper;
+
+/**
+ * The stream ciphers of an E block, recorded under StreamAlg by their labels. Salsa20/12 and Salsa20/8
+ * are the reduced-round variants, faster in that order, for bulk data of low sensitivity.
+ * 
+ * @author Dave
+ *
+ */
+public enum StreamAlg {
+	Salsa20("Salsa20", 20), Salsa20_12("Salsa20/12", 12), Salsa20_8("Salsa20/8", 8);
+
+	public final String label;
+	public final int rounds;
+
+	private StreamAlg(String label, int rounds) {
+		this.label = label;
+		this.rounds = rounds;
+	}
+
+	public static StreamAlg fromLabel(String label) {
+		for (StreamAlg alg : values()) {
+			if (alg.label.equals(label))
+				return alg;
+		}
+		throw new RuntimeException("Unexpected algorithm: " + label);
+	}
+
+	@Override
+	public String toString() {
+		return label;
+	}
+}
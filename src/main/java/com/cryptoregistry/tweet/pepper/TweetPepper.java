@@ -21,15 +21,18 @@ along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
 package com.cryptoregistry.tweet.pepper;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Base64.Decoder;
 import java.util.Base64.Encoder;
+import java.util.List;
 
 import com.cryptoregistry.tweet.pbe.PBE;
 import com.cryptoregistry.tweet.pbe.PBEParams;
@@ -41,12 +44,15 @@ import com.cryptoregistry.tweet.pepper.key.SecretBoxKeyContents;
 import com.cryptoregistry.tweet.pepper.key.SecretKey;
 import com.cryptoregistry.tweet.pepper.key.SigningKeyContents;
 import com.cryptoregistry.tweet.pepper.key.TweetKeyMetadata;
+import com.cryptoregistry.tweet.salt.RandomSource;
+import com.cryptoregistry.tweet.salt.SalsaDRBG;
 import com.cryptoregistry.tweet.salt.TweetNaCl;
 import com.cryptoregistry.tweet.salt.pqc.ExchangePair;
 import com.cryptoregistry.tweet.salt.pqc.NHKeyContents;
 import com.cryptoregistry.tweet.salt.pqc.NHKeyForExchange;
 import com.cryptoregistry.tweet.salt.pqc.NHKeyForPublication;
 import com.cryptoregistry.tweet.salt.pqc.NewHope;
+import com.cryptoregistry.tweet.salt.stream.ParallelSalsa;
 import com.cryptoregistry.tweet.salt.stream.Salsa20;
 
 /**
@@ -57,19 +63,20 @@ import com.cryptoregistry.tweet.salt.stream.Salsa20;
  */
 public final class TweetPepper {
 
-	private final SecureRandom rand = initRand();
-	public final TweetNaCl salt = new TweetNaCl();
+	private final RandomSource rand;
+	public final TweetNaCl salt;
 
 	public TweetPepper() {
-		super();
+		this(SalsaDRBG.getInstance());
 	}
 
-	private final SecureRandom initRand() {
-		try {
-			return SecureRandom.getInstanceStrong();
-		} catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException(e);
-		}
+	/**
+	 * All keys, nonces and salts made here, and by salt, come from rand
+	 */
+	public TweetPepper(RandomSource rand) {
+		super();
+		this.rand = rand;
+		this.salt = new TweetNaCl(rand);
 	}
 
 	/**
@@ -104,6 +111,36 @@ public final class TweetPepper {
 		return contents;
 	}
 
+	/**
+	 * count boxing keys at once, generated in parallel and much faster per key than one at a time
+	 */
+	public List<BoxingKeyContents> generateBoxingKeys(int count) {
+		byte[][] pk = new byte[count][TweetNaCl.BOX_PUBLIC_KEY_BYTES];
+		byte[][] sk = new byte[count][TweetNaCl.BOX_SECRET_KEY_BYTES];
+		salt.crypto_box_keypair(pk, sk, false);
+		List<BoxingKeyContents> list = new ArrayList<BoxingKeyContents>(count);
+		for (int i = 0; i < count; i++) {
+			list.add(new BoxingKeyContents(TweetKeyMetadata.createBoxingMetadata(BlockType.U),
+					new PublicKey(pk[i]), new PrivateKey(sk[i])));
+		}
+		return list;
+	}
+
+	/**
+	 * count signing keys at once, generated in parallel and much faster per key than one at a time
+	 */
+	public List<SigningKeyContents> generateSigningKeys(int count) {
+		byte[][] pk = new byte[count][TweetNaCl.SIGN_PUBLIC_KEY_BYTES];
+		byte[][] sk = new byte[count][TweetNaCl.SIGN_SECRET_KEY_BYTES];
+		salt.crypto_sign_keypair(pk, sk, false);
+		List<SigningKeyContents> list = new ArrayList<SigningKeyContents>(count);
+		for (int i = 0; i < count; i++) {
+			list.add(new SigningKeyContents(TweetKeyMetadata.createSigningMetadata(BlockType.U),
+					new PublicKey(pk[i]), new PrivateKey(sk[i])));
+		}
+		return list;
+	}
+
 	/**
 	 * Build a java object representation of a key for use in secret key boxing. 
 	 * 
@@ -317,52 +354,153 @@ public final class TweetPepper {
 			BoxingKeyContents senderSecretBoxingKey, 
 			InputStream in) {
 		
-		Block block = new Block(BlockType.E);
+		return encryptSalsa20(receiverPublicBoxingKey, senderSecretBoxingKey, in, StreamAlg.Salsa20);
+	}
+	
+	/**
+	 * As above, with the stream cipher alg, which is recorded in the block as StreamAlg. The reduced-round 
+	 * Salsa20/12 and Salsa20/8 trade security margin for speed. 
+	 * 
+	 * @param receiverPublicBoxingKey
+	 * @param senderSecretBoxingKey
+	 * @param in
+	 * @param alg
+	 * @return a block of type E with the encoded contents
+	 */
+	public Block encryptSalsa20(
+			BoxingKeyForPublication receiverPublicBoxingKey,
+			BoxingKeyContents senderSecretBoxingKey, 
+			InputStream in, StreamAlg alg) {
+		
+		// transient, one-use values
+		byte [] key = new byte[TweetNaCl.BOX_SECRET_KEY_BYTES];
+		rand.nextBytes(key);
+		byte[] n = new byte[Salsa20.CRYPTO_STREAM_SALSA20_REF_NONCEBYTES];
+		rand.nextBytes(n);
+		
+		// the input is read straight into the one array it is encrypted in, sized by available()  
+		// where the stream knows (files and byte arrays do), so large inputs are held once, not twice
+		byte [] data;
+		int sum = 0;
+		try {
+			data = new byte[Math.max(in.available(), 8192)];
+			int len;
+			while ((len = in.read(data, sum, data.length - sum)) != -1){
+				sum+=len;
+				if(sum == data.length) {
+					int b = in.read(); // an exactly sized array is not grown at the end of the input
+					if(b == -1) break;
+					if(sum == Integer.MAX_VALUE - 8) throw new RuntimeException("Input too large for Data.0");
+					data = Arrays.copyOf(data, (int) Math.min(Integer.MAX_VALUE - 8, 2L * sum));
+					data[sum++] = (byte) b;
+				}
+			}
+		}catch(IOException x) {
+			throw new RuntimeException(x);
+		}
+		 
+		// encrypted in place, on all cores if it is large
+		Block block;
+		try {
+			ParallelSalsa.getInstance(alg.rounds).xor(data, 0, data, 0, sum, n, 0, key, 0);
+			block = salsa20Block(receiverPublicBoxingKey, senderSecretBoxingKey, key, n, alg);
+		}finally {
+			Arrays.fill(key, (byte) 0);
+		}
+		ByteBuffer encoded = Base64.getUrlEncoder().encode(ByteBuffer.wrap(data, 0, sum));
+		block.put("Data.0", new String(encoded.array(), 0, encoded.remaining(), StandardCharsets.US_ASCII));
+		block.put("Input.Length", String.valueOf(sum));
+
+		return block;
+	}
+	
+	/**
+	 * encryptSalsa20 for files. Both files are memory-mapped and the keystream is xored straight 
+	 * from one mapping to the other, on all cores, so large files cost neither heap nor copies. 
+	 * 
+	 * The block has the fields of the encryptSalsa20 block, except that the cipher text is the file 
+	 * out rather than Data.0; its name is recorded as Data.File. Putting the bytes of out, base64url 
+	 * encoded, under Data.0 makes the block one that decryptSalsa20 reads. 
+	 * 
+	 * @param receiverPublicBoxingKey
+	 * @param senderSecretBoxingKey
+	 * @param in
+	 * @param out created, or overwritten; may be in, though that is not crash-safe (see ParallelSalsa)
+	 * @return a block of type E describing out
+	 */
+	public Block encryptSalsa20(
+			BoxingKeyForPublication receiverPublicBoxingKey,
+			BoxingKeyContents senderSecretBoxingKey, 
+			Path in, Path out) {
+		
+		return encryptSalsa20(receiverPublicBoxingKey, senderSecretBoxingKey, in, out, StreamAlg.Salsa20);
+	}
+	
+	/**
+	 * As above, with the stream cipher alg, which is recorded in the block as StreamAlg
+	 * 
+	 * @param receiverPublicBoxingKey
+	 * @param senderSecretBoxingKey
+	 * @param in
+	 * @param out created, or overwritten; may be in, though that is not crash-safe (see ParallelSalsa)
+	 * @param alg
+	 * @return a block of type E describing out
+	 */
+	public Block encryptSalsa20(
+			BoxingKeyForPublication receiverPublicBoxingKey,
+			BoxingKeyContents senderSecretBoxingKey, 
+			Path in, Path out, StreamAlg alg) {
 		
 		// transient, one-use values
-		byte[] nonce = new byte[TweetNaCl.BOX_NONCE_BYTES];
-		rand.nextBytes(nonce);
 		byte [] key = new byte[TweetNaCl.BOX_SECRET_KEY_BYTES];
 		rand.nextBytes(key);
 		byte[] n = new byte[Salsa20.CRYPTO_STREAM_SALSA20_REF_NONCEBYTES];
 		rand.nextBytes(n);
 		
+		try {
+			long length = ParallelSalsa.getInstance(alg.rounds).xor(out, in, n, 0, key);
+			
+			Block block = salsa20Block(receiverPublicBoxingKey, senderSecretBoxingKey, key, n, alg);
+			block.put("Data.File", out.getFileName().toString());
+			block.put("Input.Length", String.valueOf(length));
+			
+			return block;
+		}catch(IOException x) {
+			throw new RuntimeException(x);
+		}finally {
+			Arrays.fill(key, (byte) 0);
+		}
+	}
+	
+	/*
+	 * The fields every Salsa20 E block starts with: the key handles, and the stream key boxed from 
+	 * sender to receiver
+	 */
+	private Block salsa20Block(
+			BoxingKeyForPublication receiverPublicBoxingKey,
+			BoxingKeyContents senderSecretBoxingKey, 
+			byte[] key, byte[] n, StreamAlg alg) {
+		
+		Block block = new Block(BlockType.E);
+		
+		byte[] nonce = new byte[TweetNaCl.BOX_NONCE_BYTES];
+		rand.nextBytes(nonce);
+		
 		// key encapsulation
 		byte[] enc = salt.crypto_box(key,
 				nonce, 
 				receiverPublicBoxingKey.publicKey.getBytes(),
 				senderSecretBoxingKey.secretBoxingKey.getBytes());
 		
-		 Salsa20 salsa = new Salsa20();
-		 ByteArrayOutputStream bos = new ByteArrayOutputStream(); // result of encryption collected here
-		 int sum = 0;
-		 
-		 try {
-		// take bytes from the input stream and encrypt
-		byte [] buf = new byte[1028];
-		int len = 0;
-		
-	      while ((len = in.read(buf, 0, buf.length)) != -1){
-	  		salsa.crypto_stream(buf, len, n, 0, key);
-	        bos.write(buf, 0, len);
-	        sum+=len;
-	      }
-	      
-		 }catch(IOException x) {
-			 throw new RuntimeException(x);
-		 }
-
 		block.put("S", senderSecretBoxingKey.metadata.handle);
 		block.put("P", receiverPublicBoxingKey.metadata.handle);
 		
 		Encoder encoder = Base64.getUrlEncoder();
 		block.put("Nonce.0", encoder.encodeToString(nonce));
 		block.put("EncapsulatedKey", encoder.encodeToString(enc));
-		block.put("StreamAlg", "Salsa20");
+		block.put("StreamAlg", alg.label);
 		block.put("StreamNonce.0", encoder.encodeToString(n));
-		block.put("Data.0", encoder.encodeToString(bos.toByteArray()));
-		block.put("Input.Length", String.valueOf(sum));
-
+		
 		return block;
 	}
 	
@@ -380,6 +518,83 @@ public final class TweetPepper {
 			BoxingKeyForPublication senderPublicBoxingKey, 
 			Block block) {
 		
+		int length = Integer.parseInt(block.get("Input.Length"));
+		return decryptSalsa20(receiverSecretBoxingKey, senderPublicBoxingKey, block, 0, length);
+	}
+	
+	/**
+	 * Decrypt only bytes [from, from + len) of the input to encryptSalsa20. The keystream is started 
+	 * at from, so the cost of the stream cipher is that of len bytes whatever from is.
+	 * 
+	 * @param receiverSecretBoxingKey
+	 * @param senderPublicBoxingKey
+	 * @param block
+	 * @param from
+	 * @param len
+	 * @return a ByteArrayInputStream
+	 */
+	public InputStream decryptSalsa20(
+			BoxingKeyContents receiverSecretBoxingKey,
+			BoxingKeyForPublication senderPublicBoxingKey, 
+			Block block, long from, int len) {
+		
+		byte[] key = openStreamKey(receiverSecretBoxingKey, senderPublicBoxingKey, block);
+		try {
+			StreamAlg alg = StreamAlg.fromLabel(block.get("StreamAlg"));
+			byte [] streamNonce = block.getBytesFromBase64urlString("StreamNonce.0");
+			
+			byte [] data = block.getBytesFromBase64urlString("Data.0");
+			if (from < 0 || len < 0 || from > data.length - len)
+				throw new IllegalArgumentException("Range " + from + ", " + len + " outside of " + data.length + " bytes");
+			byte [] raw = new byte[len];
+			ParallelSalsa.getInstance(alg.rounds).xor(raw, 0, data, (int) from, len, streamNonce, 0, key, from);
+			ByteArrayInputStream out = new ByteArrayInputStream(raw);
+			return out;
+		}finally {
+			Arrays.fill(key, (byte) 0);
+		}
+	}
+	
+	/**
+	 * Decrypt the file in, made by encryptSalsa20(BoxingKeyForPublication, BoxingKeyContents, Path, Path) 
+	 * and described by block, to the file out. Both files are memory-mapped as for encryption. 
+	 * 
+	 * @param receiverSecretBoxingKey
+	 * @param senderPublicBoxingKey
+	 * @param block
+	 * @param in the cipher text
+	 * @param out created, or overwritten; may be in, though that is not crash-safe (see ParallelSalsa)
+	 */
+	public void decryptSalsa20(
+			BoxingKeyContents receiverSecretBoxingKey,
+			BoxingKeyForPublication senderPublicBoxingKey, 
+			Block block, Path in, Path out) {
+		
+		byte[] key = openStreamKey(receiverSecretBoxingKey, senderPublicBoxingKey, block);
+		try {
+			StreamAlg alg = StreamAlg.fromLabel(block.get("StreamAlg"));
+			byte [] streamNonce = block.getBytesFromBase64urlString("StreamNonce.0");
+			
+			// checked before out is touched, which may be in itself
+			long length = Files.size(in);
+			if (length != Long.parseLong(block.get("Input.Length")))
+				throw new RuntimeException("File length " + length + ", expecting: " + block.get("Input.Length"));
+			ParallelSalsa.getInstance(alg.rounds).xor(out, in, streamNonce, 0, key);
+		}catch(IOException x) {
+			throw new RuntimeException(x);
+		}finally {
+			Arrays.fill(key, (byte) 0);
+		}
+	}
+	
+	/*
+	 * The stream key of a Salsa20 E block, after checking the block is between these two keys
+	 */
+	private byte[] openStreamKey(
+			BoxingKeyContents receiverSecretBoxingKey,
+			BoxingKeyForPublication senderPublicBoxingKey, 
+			Block block) {
+		
 		if (!block.get("S").equals(senderPublicBoxingKey.metadata.handle)) {
 			throw new RuntimeException("looks like wrong key, expecting: "
 					+ block.get("S"));
@@ -390,36 +605,20 @@ public final class TweetPepper {
 		}
 
 		Decoder decoder = Base64.getUrlDecoder();
-		byte[] key = salt.crypto_box_open(decoder.decode(block.get("EncapsulatedKey")),
+		return salt.crypto_box_open(decoder.decode(block.get("EncapsulatedKey")),
 				decoder.decode(block.get("Nonce.0")),
 				senderPublicBoxingKey.publicKey.getBytes(),
 				receiverSecretBoxingKey.secretBoxingKey.getBytes());
-		
-		String streamingAlg = block.get("StreamAlg");
-		byte [] streamNonce = block.getBytesFromBase64urlString("StreamNonce.0");
-		
-		switch(streamingAlg){
-		
-			case "Salsa20" :{
-				Salsa20 salsa = new Salsa20();
-				byte [] data = block.getBytesFromBase64urlString("Data.0");
-				byte [] raw = new byte[data.length];
-				salsa.crypto_stream_xor(data, raw, raw.length, streamNonce, 0, key);
-				ByteArrayInputStream out = new ByteArrayInputStream(raw);
-				return out;
-			}
-			default: throw new RuntimeException("Unexpected algorithm: "+streamingAlg);
-		}
 	}
 	
 	// POST-QUANTUM CRYPTO SECTION
 	
 	public NHKeyContents generatePQCKeys() {
-		return new NewHope().generateKeys(rand);
+		return new NewHope().generateKeys(RandomSource.asSecureRandom(rand));
 	}
 
 	public ExchangePair generateExchange(NHKeyForPublication receiverPublicKey) {
-		return new NewHope().generateExchange(rand, receiverPublicKey);
+		return new NewHope().generateExchange(RandomSource.asSecureRandom(rand), receiverPublicKey);
 	}
 
 	public byte[] calculateAgreement(NHKeyContents ourKeyContents, NHKeyForExchange exchangeKey) {
@@ -35,6 +35,9 @@ public class Key {
 	
 	// status of the key
 	protected boolean alive = true;
+	
+	// run by selfDestruct(), for anything derived from the key bytes
+	private Runnable onSelfDestruct;
 
 	public Key(byte [] bytes) {
 		this.bytes = bytes;
@@ -61,6 +64,21 @@ public class Key {
 			bytes[i] = '\0';
 		}
 		alive = false;
+		Runnable r = onSelfDestruct;
+		if(r != null) r.run();
+	}
+	
+	/**
+	 * Have selfDestruct() also run r, after any earlier ones, so copies made from the key bytes go with them 
+	 */
+	synchronized void onSelfDestruct(final Runnable r) {
+		final Runnable prev = onSelfDestruct;
+		onSelfDestruct = prev == null ? r : new Runnable() {
+			public void run() {
+				prev.run();
+				r.run();
+			}
+		};
 	}
 
 	public boolean isAlive() {
@@ -23,10 +23,15 @@ package com.cryptoregistry.tweet.pepper.key;
 import java.util.Base64;
 
 import com.cryptoregistry.tweet.pepper.Block;
+import com.cryptoregistry.tweet.salt.Ed25519SigningKey;
+import com.cryptoregistry.tweet.salt.TweetNaCl;
 
 public class SigningKeyContents extends SigningKeyForPublication {
 	
 	public final PrivateKey privateSigningKey;
+	
+	// made on first use by expandedSigningKey()
+	private Ed25519SigningKey expanded;
 
 	public SigningKeyContents(TweetKeyMetadata metadata, PublicKey pubKey, PrivateKey privateSigningKey) {
 		super(pubKey, metadata);
@@ -49,6 +54,44 @@ public class SigningKeyContents extends SigningKeyForPublication {
          return b;
 	}
 	
+	/**
+	 * The private key in expanded form, made once and kept, so signing many messages 
+	 * with this key hashes the seed only once. It is wiped when the private key self-destructs.
+	 */
+	public synchronized Ed25519SigningKey expandedSigningKey() {
+		byte [] sk = privateSigningKey.getBytes(); // fails once the key has self-destructed
+		if(expanded == null) {
+			privateSigningKey.onSelfDestruct(new Runnable() {
+				public void run() {
+					destroyExpanded();
+				}
+			});
+		}
+		if(expanded == null || !expanded.isAlive()) {
+			expanded = new Ed25519SigningKey(sk);
+		}
+		return expanded;
+	}
+	
+	/**
+	 * Wipe the private key and the expanded key made from it
+	 */
+	public void selfDestruct() {
+		privateSigningKey.selfDestruct();
+		destroyExpanded();
+	}
+	
+	private synchronized void destroyExpanded() {
+		if(expanded != null) expanded.selfDestruct();
+	}
+	
+	/**
+	 * The signed message as crypto_sign() makes it, using the expanded key
+	 */
+	public byte [] sign(byte [] message) {
+		return TweetNaCl.getInstance().crypto_sign(message, expandedSigningKey());
+	}
+	
 	public Block pubBlock() {
 		 Block b = super.toBlock();
        return b;
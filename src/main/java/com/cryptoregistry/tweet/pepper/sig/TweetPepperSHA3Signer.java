@@ -108,7 +108,7 @@ public class TweetPepperSHA3Signer {
 		
 		byte [] hash = new byte [digest.getDigestSize()];
 		digest.doFinal(hash, 0);
-		byte [] signatureBytes = new TweetNaCl().crypto_sign(hash, keyContents.privateSigningKey.getBytes());
+		byte [] signatureBytes = TweetNaCl.getInstance().crypto_sign(hash, keyContents.expandedSigningKey());
 		
 		
 		return new TweetPepperSignature(meta, Base64.getUrlEncoder().encodeToString(signatureBytes), tokens);
@@ -104,7 +104,7 @@ public class TweetPepperSigner {
 		}
 		
 		byte [] hash = digest.digest();
-		byte [] signatureBytes = new TweetNaCl().crypto_sign(hash, keyContents.privateSigningKey.getBytes());
+		byte [] signatureBytes = TweetNaCl.getInstance().crypto_sign(hash, keyContents.expandedSigningKey());
 		
 		
 		return new TweetPepperSignature(meta, Base64.getUrlEncoder().encodeToString(signatureBytes), tokens);
@@ -37,6 +37,8 @@ import com.cryptoregistry.digest.sha3.SHA3Digest;
 import com.cryptoregistry.tweet.pepper.Block;
 import com.cryptoregistry.tweet.pepper.KMU;
 import com.cryptoregistry.tweet.pepper.key.SigningKeyForPublication;
+import com.cryptoregistry.tweet.salt.Ed25519PublicKey;
+import com.cryptoregistry.tweet.salt.Ed25519PublicKeyCache;
 import com.cryptoregistry.tweet.salt.TweetNaCl;
 import com.cryptoregistry.tweet.salt.TweetNaCl.InvalidSignatureException;
 
@@ -164,10 +166,14 @@ public class TweetPepperVerifier {
 		byte [] digestBytes = digest.digest();
 		byte [] sigBytes = Base64.getUrlDecoder().decode(sig);
 		try {
-			byte [] outsign = new TweetNaCl().crypto_sign_open(sigBytes, verifierKey.publicKey.getBytes());
+			Ed25519PublicKey key = Ed25519PublicKeyCache.getDefault().get(verifierKey.publicKey.getBytes());
+			byte [] outsign = TweetNaCl.getInstance().crypto_sign_open(sigBytes, key);
 			return Arrays.equals(digestBytes, outsign);
 		}catch(InvalidSignatureException x){
 			return false;
+		}catch(IllegalArgumentException x){
+			// not a public key at all
+			return false;
 		}
 	}
 	
@@ -217,10 +223,14 @@ public class TweetPepperVerifier {
 		digest.doFinal(digestBytes, 0);
 		byte [] sigBytes = Base64.getUrlDecoder().decode(sig);
 		try {
-			byte [] outsign = new TweetNaCl().crypto_sign_open(sigBytes, verifierKey.publicKey.getBytes());
+			Ed25519PublicKey key = Ed25519PublicKeyCache.getDefault().get(verifierKey.publicKey.getBytes());
+			byte [] outsign = TweetNaCl.getInstance().crypto_sign_open(sigBytes, key);
 			return Arrays.equals(digestBytes, outsign);
 		}catch(InvalidSignatureException x){
 			return false;
+		}catch(IllegalArgumentException x){
+			// not a public key at all
+			return false;
 		}
 	}
 }
@@ -0,0 +1,1325 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The GF(2^255-19) field, Edwards point and mod L scalar arithmetic behind TweetNaCl's X25519 and
+ * Ed25519, taken out of TweetNaCl so that the temporaries can be reused.
+ *
+ * An instance is a scratch context: every field element, point and buffer a key agreement, signature
+ * or verification needs is allocated once, here, and reused on each call, so those calls allocate
+ * nothing. That makes an instance strictly single-threaded; TweetNaCl keeps one per thread.
+ *
+ * The functions keep the names and shapes of the C original. A comment on a scratch field says which
+ * functions own it: a function must never call another one that uses the same scratch.
+ *
+ * Field elements are ten signed limbs of alternately 26 and 25 bits (radix 2^25.5) as in ref10, so a
+ * multiplication is 100 products where the 16 x 16 bit TweetNaCl layout needed 256.
+ *
+ * @author Dave
+ */
+final class Curve25519 {
+
+	static final int GF_LEN = 10;
+	private static final long[] gf0 = new long[GF_LEN];
+	private static final long[] gf1 = new long[GF_LEN];
+	static {
+		gf1[0] = 1;
+	}
+	private static final long[] _121665 = new long[GF_LEN];
+	static {
+		_121665[0] = 121665;
+	}
+	private final static long[]
+			D = new long[] { 56195235, 13857412, 51736253, 6949390, 114729,
+					24766616, 60832955, 30306712, 48412415, 21499315 },
+			D2 = new long[] { 45281625, 27714825, 36363642, 13898781, 229458,
+					15978800, 54557047, 27058993, 29715967, 9444199 },
+			X = new long[] { 52811034, 25909283, 16144682, 17082669, 27570973,
+					30858332, 40966398, 8378388, 20764389, 8758491 },
+			Y = new long[] { 40265304, 26843545, 13421772, 20132659, 26843545,
+					6710886, 53687091, 13421772, 40265318, 26843545 },
+			I = new long[] { 34513072, 25610706, 9377949, 3500415, 12389472,
+					33281959, 41962654, 31548777, 326685, 11406482 };
+
+	private static final byte[] DOM2 = "SigEd25519 no Ed25519 collisions".getBytes(StandardCharsets.US_ASCII);
+
+	private static final long[] L = { 0xed, 0xd3, 0xf5, 0x5c, 0x1a, 0x63, 0x12, 0x58,
+			0xd6, 0x9c, 0xf7, 0xa2, 0xde, 0xf9, 0xde, 0x14, 0, 0, 0, 0, 0, 0,
+			0, 0, 0, 0, 0, 0, 0, 0, 0, 0x10 };
+
+	// pack25519
+	private final long[] /* gf */pt = new long[GF_LEN];
+	// neq25519, par25519
+	private final byte[] pb0 = new byte[32], pb1 = new byte[32];
+	// inv25519, pow2523
+	private final long[] /* gf */i0 = new long[GF_LEN], i1 = new long[GF_LEN], i2 = new long[GF_LEN],
+			i3 = new long[GF_LEN];
+	// add, madd, and the X25519 ladder
+	private final long[] /* gf */a = new long[GF_LEN], b = new long[GF_LEN], c = new long[GF_LEN],
+			d = new long[GF_LEN], e = new long[GF_LEN], f = new long[GF_LEN], g = new long[GF_LEN],
+			h = new long[GF_LEN], t = new long[GF_LEN];
+	// batchinv25519
+	private final long[] /* gf */bi = new long[GF_LEN], bt = new long[GF_LEN];
+	// the ladder, crypto_scalarmult_base
+	private final byte[] lz = new byte[32];
+	private final long[] /* gf */lx = new long[GF_LEN];
+	// pack
+	private final long[] /* gf */tx = new long[GF_LEN], ty = new long[GF_LEN], zi = new long[GF_LEN];
+	// unpackneg
+	private final long[] /* gf */ut = new long[GF_LEN], chk = new long[GF_LEN], num = new long[GF_LEN],
+			den = new long[GF_LEN], den2 = new long[GF_LEN], den4 = new long[GF_LEN], den6 = new long[GF_LEN];
+	// verify, decodeVerifyKey, doublescalarmult
+	private final long[][][] /* ge_cached */vt = new long[8][4][GF_LEN];
+	private final long[][] /* ge */vp = new long[4][GF_LEN], vq = new long[4][GF_LEN];
+	private final byte[] hslide = new byte[256], sslide = new byte[256];
+	// scalarbase, select
+	private final byte[] digits = new byte[64];
+	private final long[][] /* ge_precomp */sel = new long[3][GF_LEN];
+	private final long[] /* gf */selneg = new long[GF_LEN];
+	// reduce, and the signing functions after their calls to reduce
+	private final long[] sx = new long[64];
+	// the signing functions
+	private final SHA512Digest sha = new SHA512Digest();
+	private final byte[] sd = new byte[64], sh = new byte[64], sr = new byte[64], st = new byte[32];
+	private final long[][] /* ge */sp = new long[4][GF_LEN], sq = new long[4][GF_LEN];
+
+	/*
+	 * X25519: q = n * p
+	 */
+	int crypto_scalarmult(byte[] q, byte[] n, byte[] p) {
+		ladder(n, p);
+		inv25519(c, c);
+		M(a, a, c);
+		pack25519(q, a);
+		return 0;
+	}
+
+	/*
+	 * X25519 with the base point u = 9: n * B by the fixed-base Edwards comb in BaseTable, then the
+	 * birational map u = (1 + y) / (1 - y) = (Z + Y) / (Z - Y). Same output as crypto_scalarmult(q, n,
+	 * _9) for about a third of the work, as scalarbase needs no doublings beyond four.
+	 */
+	int crypto_scalarmult_base(byte[] q, byte[] n) {
+		long[][] /* ge */p = sp;
+		clamp(lz, n);
+		scalarbase(p, lz, 0);
+		Arrays.fill(lz, (byte) 0);
+		A(a, p[2], p[1]);
+		Z(c, p[2], p[1]);
+		inv25519(c, c);
+		M(a, a, c);
+		pack25519(q, a);
+		return 0;
+	}
+
+	/*
+	 * crypto_scalarmult_base(q[i], n[i]) for from <= i < to, sharing one field inversion between them
+	 */
+	void crypto_scalarmult_base_batch(byte[][] q, byte[][] n, int from, int to) {
+		int k, count = to - from;
+		long[][] /* ge */p = sp;
+		long[][] /* gf */us = new long[count][GF_LEN], ds = new long[count][GF_LEN];
+		for (k = 0; k < count; ++k) {
+			clamp(lz, n[from + k]);
+			scalarbase(p, lz, 0);
+			A(us[k], p[2], p[1]);
+			Z(ds[k], p[2], p[1]);
+		}
+		Arrays.fill(lz, (byte) 0);
+		batchinv25519(ds, count);
+		for (k = 0; k < count; ++k) {
+			M(a, us[k], ds[k]);
+			pack25519(q[from + k], a);
+		}
+	}
+
+	/*
+	 * The X25519 scalar clamp of n to z
+	 */
+	private static void clamp(byte[] z, byte[] n) {
+		System.arraycopy(n, 0, z, 0, 31);
+		z[31] = (byte) ((n[31] & 127) | 64);
+		z[0] &= 248;
+	}
+
+	/*
+	 * The Montgomery ladder for n * p, leaving the result as a / c
+	 */
+	private void ladder(byte[] n, byte[] p) {
+		byte[] z = lz;
+		long[] x = lx;
+		int r;
+		int i;
+		clamp(z, n);
+		unpack25519(x, p, 0);
+		for (i = 0; i < GF_LEN; ++i) {
+			b[i] = x[i];
+			d[i] = a[i] = c[i] = 0;
+		}
+		a[0] = d[0] = 1;
+
+		for (i = 254; i >= 0; --i) {
+			r = ((0xff & z[i >> 3]) >> (i & 7)) & 1;
+			sel25519(a, b, r);
+			sel25519(c, d, r);
+			A(e, a, c);
+			Z(a, a, c);
+			A(c, b, d);
+			Z(b, b, d);
+			S(d, e);
+			S(f, a);
+			M(a, c, a);
+			M(c, b, e);
+			A(e, a, c);
+			Z(a, a, c);
+			S(b, a);
+			Z(c, d, f);
+			M(a, c, _121665);
+			A(a, a, d);
+			M(c, c, a);
+			M(a, d, f);
+			M(d, b, x);
+			S(b, e);
+			sel25519(a, b, r);
+			sel25519(c, d, r);
+		}
+		Arrays.fill(z, (byte) 0);
+	}
+
+	/*
+	 * sk holds the 32 byte seed; the public key goes to pk and to the second half of sk
+	 */
+	void crypto_sign_keypair(byte[] pk, byte[] sk) {
+		byte[] d = sd;
+		long[][] /* gf */p = sp;
+		int i;
+
+		sha.reset();
+		sha.update(sk, 0, 32);
+		sha.doFinal(d, 0);
+		d[0] &= 248;
+		d[31] &= 127;
+		d[31] |= 64;
+
+		scalarbase(p, d, 0);
+		pack(pk, 0, p);
+
+		for (i = 0; i < 32; ++i)
+			sk[32 + i] = pk[i];
+		Arrays.fill(d, (byte) 0);
+	}
+
+	/*
+	 * crypto_sign_keypair for pk[i], sk[i], from <= i < to, sharing one field inversion between them
+	 */
+	void crypto_sign_keypairs(byte[][] pk, byte[][] sk, int from, int to) {
+		byte[] d = sd;
+		int k, count = to - from;
+		long[][][] /* ge */ps = new long[count][4][GF_LEN];
+		long[][] /* gf */zs = new long[count][GF_LEN];
+
+		for (k = 0; k < count; ++k) {
+			sha.reset();
+			sha.update(sk[from + k], 0, 32);
+			sha.doFinal(d, 0);
+			d[0] &= 248;
+			d[31] &= 127;
+			d[31] |= 64;
+			scalarbase(ps[k], d, 0);
+			set25519(zs[k], ps[k][2]);
+		}
+		Arrays.fill(d, (byte) 0);
+
+		batchinv25519(zs, count);
+		for (k = 0; k < count; ++k) {
+			pack(pk[from + k], 0, ps[k], zs[k]);
+			System.arraycopy(pk[from + k], 0, sk[from + k], 32, 32);
+		}
+	}
+
+	/*
+	 * The 64 byte signature on n bytes of m at mOff, to sig at sigOff
+	 */
+	void crypto_sign_detached(byte[] sig, int sigOff, byte[] m, int mOff, int n, byte[] sk) {
+		sign(sig, sigOff, m, mOff, n, null, null, sk);
+	}
+
+	/*
+	 * The 64 byte signature on the remaining bytes of mb, to sig at sigOff. mb is left as it was
+	 */
+	void crypto_sign_detached(byte[] sig, int sigOff, ByteBuffer mb, byte[] sk) {
+		sign(sig, sigOff, null, 0, 0, mb, null, sk);
+	}
+
+	/*
+	 * Ed25519ph (RFC 8032, 5.1): the signature on the 64 byte SHA-512 hash ph of a message, under a
+	 * context string of at most 255 bytes
+	 */
+	void crypto_sign_ph(byte[] sig, int sigOff, byte[] ph, byte[] ctx, byte[] sk) {
+		sign(sig, sigOff, ph, 0, 64, null, ctx, sk);
+	}
+
+	/*
+	 * The message is either n bytes of m at mOff, or if mb is not null, the remaining bytes of mb. A
+	 * non-null ctx makes this Ed25519ph: every hash then starts with dom2(1, ctx).
+	 */
+	private void sign(byte[] sig, int sigOff, byte[] m, int mOff, int n, ByteBuffer mb, byte[] ctx, byte[] sk) {
+		expandSigningKey(sd, sk);
+		sign(sig, sigOff, m, mOff, n, mb, ctx, sd, sk, 32);
+		Arrays.fill(sd, (byte) 0);
+	}
+
+	/*
+	 * The 64 byte expanded form of the secret key sk to d: the clamped scalar, then the nonce prefix
+	 */
+	void expandSigningKey(byte[] d, byte[] sk) {
+		sha.reset();
+		sha.update(sk, 0, 32);
+		sha.doFinal(d, 0);
+		d[0] &= 248;
+		d[31] &= 127;
+		d[31] |= 64;
+	}
+
+	/*
+	 * crypto_sign_detached with the key already expanded, d as expandSigningKey makes it and the public
+	 * key at pk[pkOff]
+	 */
+	void crypto_sign_detached(byte[] sig, int sigOff, byte[] m, int mOff, int n, byte[] d, byte[] pk, int pkOff) {
+		sign(sig, sigOff, m, mOff, n, null, null, d, pk, pkOff);
+	}
+
+	/*
+	 * sign() given the expanded key d, which is only read
+	 */
+	private void sign(byte[] sig, int sigOff, byte[] m, int mOff, int n, ByteBuffer mb, byte[] ctx, byte[] d,
+			byte[] pk, int pkOff) {
+		byte[] h = sh, r = sr;
+		long[] x = sx;
+		long[][] /* gf */p = sp;
+
+		// r = H(prefix || m), hashed where the message lies rather than copied next to the prefix. The
+		// digest is reset first: an exception part way through an earlier hash can leave it dirty
+		sha.reset();
+		dom2(ctx);
+		sha.update(d, 32, 32);
+		hashMessage(m, mOff, n, mb);
+		sha.doFinal(r, 0);
+		reduce(r);
+		scalarbase(p, r, 0);
+		pack(sig, sigOff, p);
+
+		// h = H(R || A || m)
+		sha.reset();
+		dom2(ctx);
+		sha.update(sig, sigOff, 32);
+		sha.update(pk, pkOff, 32);
+		hashMessage(m, mOff, n, mb);
+		sha.doFinal(h, 0);
+		reduce(h);
+
+		for (int i = 0; i < 64; ++i)
+			x[i] = 0;
+		for (int i = 0; i < 32; ++i)
+			x[i] = 0xff & r[i];
+		for (int i = 0; i < 32; ++i)
+			for (int j = 0; j < 32; ++j)
+				x[i + j] += (0xff & h[i]) * (0xff & d[j]);
+		modL(sig, sigOff + 32, x);
+
+		Arrays.fill(x, 0);
+		Arrays.fill(r, (byte) 0);
+	}
+
+	/*
+	 * 0 if the 64 bytes at sig[sigOff] are a valid signature on mLen bytes of m at mOff under pk, else -1
+	 */
+	int crypto_sign_verify_detached(byte[] sig, int sigOff, byte[] m, int mOff, int mLen, byte[] pk) {
+		return verify(sig, sigOff, m, mOff, mLen, null, null, pk);
+	}
+
+	/*
+	 * As above for the remaining bytes of mb, which is left as it was
+	 */
+	int crypto_sign_verify_detached(byte[] sig, int sigOff, ByteBuffer mb, byte[] pk) {
+		return verify(sig, sigOff, null, 0, 0, mb, null, pk);
+	}
+
+	/*
+	 * Ed25519ph verification of the signature at sig[sigOff] on the message whose SHA-512 hash is ph
+	 */
+	int crypto_sign_verify_ph(byte[] sig, int sigOff, byte[] ph, byte[] ctx, byte[] pk) {
+		return verify(sig, sigOff, ph, 0, 64, null, ctx, pk);
+	}
+
+	/*
+	 * crypto_sign_verify_detached against an already decoded key
+	 */
+	int crypto_sign_verify_detached(byte[] sig, int sigOff, byte[] m, int mOff, int mLen, Ed25519PublicKey key) {
+		return verify(sig, sigOff, m, mOff, mLen, null, null, key.encoded, key.table);
+	}
+
+	int crypto_sign_verify_detached(byte[] sig, int sigOff, ByteBuffer mb, Ed25519PublicKey key) {
+		return verify(sig, sigOff, null, 0, 0, mb, null, key.encoded, key.table);
+	}
+
+	private int verify(byte[] sig, int sigOff, byte[] m, int mOff, int mLen, ByteBuffer mb, byte[] ctx,
+			byte[] pk) {
+		return verify(sig, sigOff, m, mOff, mLen, mb, ctx, pk, null);
+	}
+
+	/*
+	 * Checks 8 * ([S]B + [h](-A) - R) == 0, with table the decoded key if there is one. Cofactored, as
+	 * the batch check is, so a signature gets the same answer whichever way it is verified; R must
+	 * still be canonically encoded.
+	 */
+	private int verify(byte[] sig, int sigOff, byte[] m, int mOff, int mLen, ByteBuffer mb, byte[] ctx,
+			byte[] pk, long[][][] /* ge_cached */table) {
+		byte[] h = sh;
+		long[][] /* gf */p = sp, negR = vp;
+
+		// S must be below 2^253 (it is below L for any signature crypto_sign makes), which also keeps
+		// its top radix-16 digit within reach of the scalarbase table
+		if ((sig[sigOff + 63] & 224) != 0)
+			return -1;
+
+		if (table == null) {
+			table = vt;
+			if (decodeVerifyKey(table, pk, 0) != 0)
+				return -1;
+		}
+
+		sha.reset();
+		dom2(ctx);
+		sha.update(sig, sigOff, 32);
+		sha.update(pk, 0, 32);
+		hashMessage(m, mOff, mLen, mb);
+		sha.doFinal(h, 0);
+		reduce(h);
+		doublescalarmult(p, h, table, sig, sigOff + 32);
+
+		if (unpacknegR(negR, sig, sigOff) != 0)
+			return -1;
+		add(p, negR);
+		dbl(p);
+		dbl(p);
+		dbl(p);
+		return isIdentity(p) ? 0 : -1;
+	}
+
+	/*
+	 * unpackneg() for the R of a signature, which must also be the canonical encoding of its point:
+	 * y below p, and no sign bit on x = 0. Checked on the encoding, so no inversion is needed.
+	 */
+	private int unpacknegR(long[][] /* ge */r/* [4] */, byte[] sig, int sigOff) {
+		byte[] c = pb0;
+		if (unpackneg(r, sig, sigOff) != 0)
+			return -1;
+		pack25519(c, r[1]);
+		c[31] |= sig[sigOff + 31] & 0x80;
+		if (vn(sig, sigOff, c, 32) != 0)
+			return -1;
+		if ((sig[sigOff + 31] & 0x80) != 0 && neq25519(r[0], gf0) == 0)
+			return -1;
+		return 0;
+	}
+
+	private boolean isIdentity(long[][] /* ge */p) {
+		return neq25519(p[0], gf0) == 0 && neq25519(p[1], p[2]) == 0;
+	}
+
+	/*
+	 * Decode the public key at pk[pkOff] for verification: table[k] = (2k + 1) * (-A) and table[4 + k]
+	 * its negative, k < 4, in cached form (Y + X, Y - X, 2Z, 2dT). 0 on success, -1 if pk is not a point.
+	 */
+	int decodeVerifyKey(long[][][] /* ge_cached */table/* [8][4] */, byte[] pk, int pkOff) {
+		long[][] /* ge */p = vp, p2 = vq;
+		int k;
+		if (unpackneg(p, pk, pkOff) != 0)
+			return -1;
+		for (k = 0; k < 4; ++k)
+			set25519(p2[k], p[k]);
+		dbl(p2);
+		for (k = 0; k < 4; ++k) {
+			if (k > 0)
+				add(p, p2);
+			long[][] c = table[k], n = table[4 + k];
+			A(c[0], p[1], p[0]);
+			Z(c[1], p[1], p[0]);
+			A(c[2], p[2], p[2]);
+			M(c[3], p[3], D2);
+			car25519(c[0]);
+			car25519(c[1]);
+			car25519(c[2]);
+			set25519(n[0], c[1]);
+			set25519(n[1], c[0]);
+			set25519(n[2], c[2]);
+			Z(n[3], gf0, c[3]);
+		}
+		return 0;
+	}
+
+	/*
+	 * p = h * A + s * B where table holds the odd multiples of A as decodeVerifyKey makes them. Both
+	 * scalars are recoded into signed odd digits of at most 7 (the ref10 slide), and points are added
+	 * only for the nonzero digits. Variable time: only for public data, i.e. verification.
+	 */
+	private void doublescalarmult(long[][] /* ge */p/* [4] */, byte[] h, long[][][] /* ge_cached */table,
+			byte[] s, int sOff) {
+		byte[] hs = hslide, ss = sslide;
+		int i;
+		slide(hs, h, 0);
+		slide(ss, s, sOff);
+		set25519(p[0], gf0);
+		set25519(p[1], gf1);
+		set25519(p[2], gf1);
+		set25519(p[3], gf0);
+
+		for (i = 255; i >= 0 && hs[i] == 0 && ss[i] == 0; --i)
+			;
+		for (; i >= 0; --i) {
+			dbl(p);
+			if (hs[i] > 0)
+				cadd(p, table[hs[i] >> 1]);
+			else if (hs[i] < 0)
+				cadd(p, table[4 + (-hs[i] >> 1)]);
+			if (ss[i] > 0)
+				madd(p, BaseTable.T[0][ss[i] - 1]);
+			else if (ss[i] < 0)
+				madd(p, BaseTable.NEG_ODD[-ss[i] >> 1]);
+		}
+	}
+
+	/*
+	 * The 256 bits of a as digits in {0, +-1, +-3, +-5, +-7}, each nonzero digit followed by at least
+	 * three zeros
+	 */
+	private static void slide(byte[] r, byte[] a, int aOff) {
+		int i, b, k;
+		for (i = 0; i < 256; ++i)
+			r[i] = (byte) (1 & ((0xff & a[aOff + (i >> 3)]) >> (i & 7)));
+		for (i = 0; i < 256; ++i) {
+			if (r[i] == 0)
+				continue;
+			for (b = 1; b <= 6 && i + b < 256; ++b) {
+				if (r[i + b] == 0)
+					continue;
+				if (r[i] + (r[i + b] << b) <= 7) {
+					r[i] += r[i + b] << b;
+					r[i + b] = 0;
+				} else if (r[i] - (r[i + b] << b) >= -7) {
+					r[i] -= r[i + b] << b;
+					for (k = i + b; k < 256; ++k) {
+						if (r[k] == 0) {
+							r[k] = 1;
+							break;
+						}
+						r[k] = 0;
+					}
+				} else
+					break;
+			}
+		}
+	}
+
+	/*
+	 * dom2(1, ctx) = "SigEd25519 no Ed25519 collisions" || 1 || len(ctx) || ctx, nothing for plain Ed25519
+	 */
+	private void dom2(byte[] ctx) {
+		if (ctx == null)
+			return;
+		sha.update(DOM2, 0, DOM2.length);
+		sha.update((byte) 1);
+		sha.update((byte) ctx.length);
+		sha.update(ctx, 0, ctx.length);
+	}
+
+	private void hashMessage(byte[] m, int mOff, int n, ByteBuffer mb) {
+		if (mb == null)
+			sha.update(m, mOff, n);
+		else
+			sha.update(mb.duplicate());
+	}
+
+	/*
+	 * Batch verification. With random 128-bit z_i, checks
+	 *
+	 *   8 * ( (sum z_i * S_i) * B + sum z_i * (-R_i) + sum (z_i * h_i) * (-A_i) ) == 0
+	 *
+	 * with one multi-scalar multiplication, and only if that fails verifies the entries one at a time to
+	 * find the bad ones. Entries which cannot even be decoded, or have a null signature, are marked
+	 * invalid up front and left out.
+	 *
+	 * Both the batch equation and the single one are cofactored, so a signature which is off from a
+	 * valid one by a point of small order passes either way, whatever else is in the batch.
+	 *
+	 * The batch needs memory in proportion to its size; that is allocated per call.
+	 */
+	void crypto_sign_verify_batch(byte[][] sig, int[] sigOff, byte[][] m, int[] mOff, int[] mLen,
+			byte[][] pk, boolean[] valid, RandomSource rnd) {
+		int n = valid.length, count = 0, i, j;
+		long[][][] /* ge */points = new long[2 * n + 1][][];
+		byte[][] scalars = new byte[2 * n + 1][];
+		int[] index = new int[n];
+		byte[] sumS = new byte[32], h = sh, z = new byte[32], z16 = new byte[16];
+		long[] x = sx;
+
+		for (i = 0; i < n; ++i) {
+			valid[i] = false;
+			if (sig[i] == null || (sig[i][sigOff[i] + 63] & 224) != 0)
+				continue;
+			long[][] /* gf */negA = new long[4][GF_LEN], negR = new long[4][GF_LEN];
+			if (unpackneg(negA, pk[i], 0) != 0)
+				continue;
+			if (unpacknegR(negR, sig[i], sigOff[i]) != 0)
+				continue;
+
+			sha.reset();
+			sha.update(sig[i], sigOff[i], 32);
+			sha.update(pk[i], 0, 32);
+			sha.update(m[i], mOff[i], mLen[i]);
+			sha.doFinal(h, 0);
+			reduce(h);
+			rnd.nextBytes(z16);
+			System.arraycopy(z16, 0, z, 0, 16);
+
+			points[2 * count + 1] = negR;
+			scalars[2 * count + 1] = Arrays.copyOf(z, 32);
+			points[2 * count + 2] = negA;
+			scalars[2 * count + 2] = new byte[32];
+			mulAddModL(scalars[2 * count + 2], z, h, 0, null, x);
+			mulAddModL(sumS, z, sig[i], sigOff[i] + 32, sumS, x);
+
+			valid[i] = true;
+			index[count++] = i;
+		}
+		if (count == 0)
+			return;
+
+		long[][] /* ge */base = new long[4][GF_LEN];
+		set25519(base[0], X);
+		set25519(base[1], Y);
+		set25519(base[2], gf1);
+		M(base[3], X, Y);
+		points[0] = base;
+		scalars[0] = sumS;
+
+		long[][] /* ge */p = multiscalarmult(points, scalars, 2 * count + 1);
+		dbl(p);
+		dbl(p);
+		dbl(p);
+		if (isIdentity(p))
+			return;
+
+		for (j = 0; j < count; ++j) {
+			i = index[j];
+			valid[i] = crypto_sign_verify_detached(sig[i], sigOff[i], m[i], mOff[i], mLen[i], pk[i]) == 0;
+		}
+	}
+
+	private static int vn(byte[] x, int xOff, byte[] y, int n) {
+		int i, d = 0;
+		for (i = 0; i < n; ++i)
+			d |= 0xff & (x[xOff + i] ^ y[i]);
+		return (1 & ((d - 1) >> 8)) - 1;
+	}
+
+	private void set25519(long[] /* gf */r, long[] /* gf */a) {
+		int i;
+		for (i = 0; i < GF_LEN; ++i)
+			r[i] = a[i];
+	}
+
+	private void car25519(long[] /* gf */o) {
+		carry(o, o[0], o[1], o[2], o[3], o[4], o[5], o[6], o[7], o[8], o[9]);
+	}
+
+	/*
+	 * Carry the 64-bit column sums h into o. Even limbs end up in [-2^25, 2^25], odd ones in
+	 * [-2^24, 2^24]; the carry out of the top limb wraps round to the bottom times 19.
+	 */
+	private static void carry(long[] /* gf */o, long h0, long h1, long h2, long h3, long h4,
+			long h5, long h6, long h7, long h8, long h9) {
+		long c;
+		c = (h0 + (1L << 25)) >> 26; h1 += c; h0 -= c << 26;
+		c = (h4 + (1L << 25)) >> 26; h5 += c; h4 -= c << 26;
+		c = (h1 + (1L << 24)) >> 25; h2 += c; h1 -= c << 25;
+		c = (h5 + (1L << 24)) >> 25; h6 += c; h5 -= c << 25;
+		c = (h2 + (1L << 25)) >> 26; h3 += c; h2 -= c << 26;
+		c = (h6 + (1L << 25)) >> 26; h7 += c; h6 -= c << 26;
+		c = (h3 + (1L << 24)) >> 25; h4 += c; h3 -= c << 25;
+		c = (h7 + (1L << 24)) >> 25; h8 += c; h7 -= c << 25;
+		c = (h4 + (1L << 25)) >> 26; h5 += c; h4 -= c << 26;
+		c = (h8 + (1L << 25)) >> 26; h9 += c; h8 -= c << 26;
+		c = (h9 + (1L << 24)) >> 25; h0 += c * 19; h9 -= c << 25;
+		c = (h0 + (1L << 25)) >> 26; h1 += c; h0 -= c << 26;
+		o[0] = h0; o[1] = h1; o[2] = h2; o[3] = h3; o[4] = h4;
+		o[5] = h5; o[6] = h6; o[7] = h7; o[8] = h8; o[9] = h9;
+	}
+
+	private void sel25519(long[] /* gf */p, long[] /* gf */q, int b) {
+		long t, c = ~(b - 1);
+		int i;
+		for (i = 0; i < GF_LEN; ++i) {
+			t = c & (p[i] ^ q[i]);
+			p[i] ^= t;
+			q[i] ^= t;
+		}
+	}
+
+	private void cmov25519(long[] /* gf */p, long[] /* gf */q, int b) {
+		long c = -b;
+		for (int i = 0; i < GF_LEN; ++i)
+			p[i] ^= c & (p[i] ^ q[i]);
+	}
+
+	/*
+	 * The canonical 32 byte encoding: carry, subtract p once if the value is at least p, then write
+	 * out the 26 and 25 bit limbs back to back
+	 */
+	private void pack25519(byte[] o, long[] /* gf */n) {
+		long[] h = pt;
+		long q, acc;
+		int i, bits, k;
+		carry(h, n[0], n[1], n[2], n[3], n[4], n[5], n[6], n[7], n[8], n[9]);
+		q = (19 * h[9] + (1L << 24)) >> 25;
+		for (i = 0; i < GF_LEN; ++i)
+			q = (h[i] + q) >> (26 - (i & 1));
+		h[0] += 19 * q;
+		for (i = 0; i < GF_LEN - 1; ++i) {
+			q = h[i] >> (26 - (i & 1));
+			h[i + 1] += q;
+			h[i] -= q << (26 - (i & 1));
+		}
+		h[9] &= (1L << 25) - 1;
+
+		acc = 0;
+		bits = 0;
+		k = 0;
+		for (i = 0; i < GF_LEN; ++i) {
+			acc |= h[i] << bits;
+			bits += 26 - (i & 1);
+			while (bits >= 8) {
+				o[k++] = (byte) acc;
+				acc >>>= 8;
+				bits -= 8;
+			}
+		}
+		o[31] = (byte) acc;
+	}
+
+	private int neq25519(long[] /* gf */a, long[] /* gf */b) {
+		byte[] c = pb0, d = pb1;
+		pack25519(c, a);
+		pack25519(d, b);
+		return vn(c, 0, d, 32);
+	}
+
+	private byte par25519(long[] /* gf */a) {
+		byte[] d = pb0;
+		pack25519(d, a);
+		return (byte) (d[0] & 1);
+	}
+
+	private void unpack25519(long[] /* gf */o, byte[] n, int nOff) {
+		long acc = 0;
+		int i, w, bits = 0, k = nOff;
+		for (i = 0; i < GF_LEN; ++i) {
+			w = 26 - (i & 1);
+			while (bits < w) {
+				acc |= (0xffL & n[k++]) << bits;
+				bits += 8;
+			}
+			o[i] = acc & ((1L << w) - 1);
+			acc >>>= w;
+			bits -= w;
+		}
+	}
+
+	private void A(long[] /* gf */o, long[] /* gf */a, long[] /* gf */b) {
+		int i;
+		for (i = 0; i < GF_LEN; ++i)
+			o[i] = a[i] + b[i];
+	}
+
+	private void Z(long[] /* gf */o, long[] /* gf */a, long[] /* gf */b) {
+		int i;
+		for (i = 0; i < GF_LEN; ++i)
+			o[i] = a[i] - b[i];
+	}
+
+	/*
+	 * Schoolbook 10 x 10 multiplication, as ref10 does it. The 19 folds the part above 2^255 back
+	 * down and the 2 makes up for odd limbs being half a bit short. Inputs may be sums or
+	 * differences of two carried elements.
+	 */
+	private void M(long[] /* gf */o, long[] /* gf */a, long[] /* gf */b) {
+		long f0 = a[0], f1 = a[1], f2 = a[2], f3 = a[3], f4 = a[4];
+		long f5 = a[5], f6 = a[6], f7 = a[7], f8 = a[8], f9 = a[9];
+		long g0 = b[0], g1 = b[1], g2 = b[2], g3 = b[3], g4 = b[4];
+		long g5 = b[5], g6 = b[6], g7 = b[7], g8 = b[8], g9 = b[9];
+		long g1_19 = 19 * g1, g2_19 = 19 * g2, g3_19 = 19 * g3, g4_19 = 19 * g4, g5_19 = 19 * g5;
+		long g6_19 = 19 * g6, g7_19 = 19 * g7, g8_19 = 19 * g8, g9_19 = 19 * g9;
+		long f1_2 = 2 * f1, f3_2 = 2 * f3, f5_2 = 2 * f5, f7_2 = 2 * f7, f9_2 = 2 * f9;
+		long h0 = f0 * g0 + f1_2 * g9_19 + f2 * g8_19 + f3_2 * g7_19 + f4 * g6_19
+				+ f5_2 * g5_19 + f6 * g4_19 + f7_2 * g3_19 + f8 * g2_19 + f9_2 * g1_19;
+		long h1 = f0 * g1 + f1 * g0 + f2 * g9_19 + f3 * g8_19 + f4 * g7_19
+				+ f5 * g6_19 + f6 * g5_19 + f7 * g4_19 + f8 * g3_19 + f9 * g2_19;
+		long h2 = f0 * g2 + f1_2 * g1 + f2 * g0 + f3_2 * g9_19 + f4 * g8_19
+				+ f5_2 * g7_19 + f6 * g6_19 + f7_2 * g5_19 + f8 * g4_19 + f9_2 * g3_19;
+		long h3 = f0 * g3 + f1 * g2 + f2 * g1 + f3 * g0 + f4 * g9_19
+				+ f5 * g8_19 + f6 * g7_19 + f7 * g6_19 + f8 * g5_19 + f9 * g4_19;
+		long h4 = f0 * g4 + f1_2 * g3 + f2 * g2 + f3_2 * g1 + f4 * g0
+				+ f5_2 * g9_19 + f6 * g8_19 + f7_2 * g7_19 + f8 * g6_19 + f9_2 * g5_19;
+		long h5 = f0 * g5 + f1 * g4 + f2 * g3 + f3 * g2 + f4 * g1
+				+ f5 * g0 + f6 * g9_19 + f7 * g8_19 + f8 * g7_19 + f9 * g6_19;
+		long h6 = f0 * g6 + f1_2 * g5 + f2 * g4 + f3_2 * g3 + f4 * g2
+				+ f5_2 * g1 + f6 * g0 + f7_2 * g9_19 + f8 * g8_19 + f9_2 * g7_19;
+		long h7 = f0 * g7 + f1 * g6 + f2 * g5 + f3 * g4 + f4 * g3
+				+ f5 * g2 + f6 * g1 + f7 * g0 + f8 * g9_19 + f9 * g8_19;
+		long h8 = f0 * g8 + f1_2 * g7 + f2 * g6 + f3_2 * g5 + f4 * g4
+				+ f5_2 * g3 + f6 * g2 + f7_2 * g1 + f8 * g0 + f9_2 * g9_19;
+		long h9 = f0 * g9 + f1 * g8 + f2 * g7 + f3 * g6 + f4 * g5
+				+ f5 * g4 + f6 * g3 + f7 * g2 + f8 * g1 + f9 * g0;
+		carry(o, h0, h1, h2, h3, h4, h5, h6, h7, h8, h9);
+	}
+
+	private void S(long[] /* gf */o, long[] /* gf */a) {
+		long f0 = a[0], f1 = a[1], f2 = a[2], f3 = a[3], f4 = a[4];
+		long f5 = a[5], f6 = a[6], f7 = a[7], f8 = a[8], f9 = a[9];
+		long f0_2 = 2 * f0, f1_2 = 2 * f1, f2_2 = 2 * f2, f3_2 = 2 * f3, f4_2 = 2 * f4;
+		long f5_2 = 2 * f5, f6_2 = 2 * f6, f7_2 = 2 * f7, f8_2 = 2 * f8;
+		long f5_19 = 19 * f5, f6_19 = 19 * f6, f7_19 = 19 * f7, f8_19 = 19 * f8, f9_19 = 19 * f9;
+		long f5_38 = 38 * f5, f7_38 = 38 * f7, f9_38 = 38 * f9;
+		long h0 = f0 * f0 + f1_2 * f9_38 + f2_2 * f8_19 + f3_2 * f7_38 + f4_2 * f6_19 + f5 * f5_38;
+		long h1 = f0_2 * f1 + f2_2 * f9_19 + f3_2 * f8_19 + f4_2 * f7_19 + f5_2 * f6_19;
+		long h2 = f0_2 * f2 + f1 * f1_2 + f3_2 * f9_38 + f4_2 * f8_19 + f5_2 * f7_38 + f6 * f6_19;
+		long h3 = f0_2 * f3 + f1_2 * f2 + f4_2 * f9_19 + f5_2 * f8_19 + f6_2 * f7_19;
+		long h4 = f0_2 * f4 + f1_2 * f3_2 + f2 * f2 + f5_2 * f9_38 + f6_2 * f8_19 + f7 * f7_38;
+		long h5 = f0_2 * f5 + f1_2 * f4 + f2_2 * f3 + f6_2 * f9_19 + f7_2 * f8_19;
+		long h6 = f0_2 * f6 + f1_2 * f5_2 + f2_2 * f4 + f3 * f3_2 + f7_2 * f9_38 + f8 * f8_19;
+		long h7 = f0_2 * f7 + f1_2 * f6 + f2_2 * f5 + f3_2 * f4 + f8_2 * f9_19;
+		long h8 = f0_2 * f8 + f1_2 * f7_2 + f2_2 * f6 + f3_2 * f5_2 + f4 * f4 + f9 * f9_38;
+		long h9 = f0_2 * f9 + f1_2 * f8 + f2_2 * f7 + f3_2 * f6 + f4_2 * f5;
+		carry(o, h0, h1, h2, h3, h4, h5, h6, h7, h8, h9);
+	}
+
+
+	/*
+	 * o = z^(p - 2) = 1/z, the ref10 addition chain: 254 squarings and 11 multiplications
+	 */
+	private void inv25519(long[] /* gf */o, long[] /* gf */z) {
+		long[] t0 = i0, t1 = i1, t2 = i2, t3 = i3;
+		int k;
+		S(t0, z);
+		S(t1, t0);
+		S(t1, t1);
+		M(t1, z, t1);
+		M(t0, t0, t1);
+		S(t2, t0);
+		M(t1, t1, t2);
+		S(t2, t1);
+		for (k = 1; k < 5; ++k)
+			S(t2, t2);
+		M(t1, t2, t1);
+		S(t2, t1);
+		for (k = 1; k < 10; ++k)
+			S(t2, t2);
+		M(t2, t2, t1);
+		S(t3, t2);
+		for (k = 1; k < 20; ++k)
+			S(t3, t3);
+		M(t2, t3, t2);
+		for (k = 0; k < 10; ++k)
+			S(t2, t2);
+		M(t1, t2, t1);
+		S(t2, t1);
+		for (k = 1; k < 50; ++k)
+			S(t2, t2);
+		M(t2, t2, t1);
+		S(t3, t2);
+		for (k = 1; k < 100; ++k)
+			S(t3, t3);
+		M(t2, t3, t2);
+		for (k = 0; k < 50; ++k)
+			S(t2, t2);
+		M(t1, t2, t1);
+		for (k = 0; k < 5; ++k)
+			S(t1, t1);
+		M(o, t1, t0);
+	}
+
+	/*
+	 * o = z^((p - 5) / 8) = z^(2^252 - 3), for the square root in unpackneg
+	 */
+	private void pow2523(long[] /* gf */o, long[] /* gf */z) {
+		long[] t0 = i0, t1 = i1, t2 = i2;
+		int k;
+		S(t0, z);
+		S(t1, t0);
+		S(t1, t1);
+		M(t1, z, t1);
+		M(t0, t0, t1);
+		S(t0, t0);
+		M(t0, t1, t0);
+		S(t1, t0);
+		for (k = 1; k < 5; ++k)
+			S(t1, t1);
+		M(t0, t1, t0);
+		S(t1, t0);
+		for (k = 1; k < 10; ++k)
+			S(t1, t1);
+		M(t1, t1, t0);
+		S(t2, t1);
+		for (k = 1; k < 20; ++k)
+			S(t2, t2);
+		M(t1, t2, t1);
+		for (k = 0; k < 10; ++k)
+			S(t1, t1);
+		M(t0, t1, t0);
+		S(t1, t0);
+		for (k = 1; k < 50; ++k)
+			S(t1, t1);
+		M(t1, t1, t0);
+		S(t2, t1);
+		for (k = 1; k < 100; ++k)
+			S(t2, t2);
+		M(t1, t2, t1);
+		for (k = 0; k < 50; ++k)
+			S(t1, t1);
+		M(t0, t1, t0);
+		S(t0, t0);
+		S(t0, t0);
+		M(o, t0, z);
+	}
+
+	/*
+	 * z[i] = 1/z[i] for i < n with a single inversion (Montgomery's trick): the running products
+	 * z[0] ... z[i] are inverted together, then unwound at 3 multiplications per element
+	 */
+	private void batchinv25519(long[][] /* gf */z, int n) {
+		long[][] /* gf */prod = new long[n][GF_LEN];
+		long[] /* gf */acc = bi, t = bt;
+		int i;
+		set25519(prod[0], z[0]);
+		for (i = 1; i < n; ++i)
+			M(prod[i], prod[i - 1], z[i]);
+		inv25519(acc, prod[n - 1]);
+		for (i = n - 1; i > 0; --i) {
+			M(t, acc, prod[i - 1]);
+			M(acc, acc, z[i]);
+			set25519(z[i], t);
+		}
+		set25519(z[0], acc);
+	}
+
+	private void add(long[][] /* gf */p/* [4] */, long[][] /* gf */q/* [4] */) {
+		Z(a, p[1], p[0]);
+		Z(t, q[1], q[0]);
+		M(a, a, t);
+		A(b, p[0], p[1]);
+		A(t, q[0], q[1]);
+		M(b, b, t);
+		M(c, p[3], q[3]);
+		M(c, c, D2);
+		M(d, p[2], q[2]);
+		A(d, d, d);
+		Z(e, b, a);
+		Z(f, d, c);
+		A(g, d, c);
+		A(h, b, a);
+
+		M(p[0], e, f);
+		M(p[1], h, g);
+		M(p[2], g, f);
+		M(p[3], e, h);
+	}
+
+	/*
+	 * add() for a second operand in cached form (Y + X, Y - X, 2Z, 2dT)
+	 */
+	private void cadd(long[][] /* gf */p/* [4] */, long[][] /* ge_cached */q/* [4] */) {
+		Z(a, p[1], p[0]);
+		M(a, a, q[1]);
+		A(b, p[0], p[1]);
+		M(b, b, q[0]);
+		M(c, p[3], q[3]);
+		M(d, p[2], q[2]);
+		Z(e, b, a);
+		Z(f, d, c);
+		A(g, d, c);
+		A(h, b, a);
+
+		M(p[0], e, f);
+		M(p[1], h, g);
+		M(p[2], g, f);
+		M(p[3], e, h);
+	}
+
+	/*
+	 * p = 2p, 4 squarings and 4 multiplications where add(p, p) takes 9 multiplications
+	 */
+	private void dbl(long[][] /* gf */p/* [4] */) {
+		S(a, p[0]);
+		S(b, p[1]);
+		S(c, p[2]);
+		A(c, c, c);
+		A(d, p[0], p[1]);
+		S(d, d);
+		Z(d, d, a);
+		Z(d, d, b);
+		car25519(d); // E = 2XY
+		Z(e, b, a); // G = Y^2 - X^2
+		Z(f, e, c);
+		car25519(f); // F = G - 2Z^2
+		A(g, a, b);
+		Z(g, gf0, g); // H = -X^2 - Y^2
+
+		M(p[0], d, f);
+		M(p[1], e, g);
+		M(p[2], f, e);
+		M(p[3], d, g);
+	}
+
+	/*
+	 * add() for a second operand in precomputed affine form (y + x, y - x, 2dxy), Z = 1
+	 */
+	private void madd(long[][] /* gf */p/* [4] */, long[][] /* ge_precomp */q/* [3] */) {
+		Z(a, p[1], p[0]);
+		M(a, a, q[1]);
+		A(b, p[0], p[1]);
+		M(b, b, q[0]);
+		M(c, p[3], q[2]);
+		A(d, p[2], p[2]);
+		Z(e, b, a);
+		Z(f, d, c);
+		A(g, d, c);
+		A(h, b, a);
+
+		M(p[0], e, f);
+		M(p[1], h, g);
+		M(p[2], g, f);
+		M(p[3], e, h);
+	}
+
+	private void pack(byte[] r, int rOff, long[][] /* gf */p/* [4] */) {
+		inv25519(zi, p[2]);
+		pack(r, rOff, p, zi);
+	}
+
+	/*
+	 * pack() with 1/Z already known
+	 */
+	private void pack(byte[] r, int rOff, long[][] /* gf */p/* [4] */, long[] /* gf */zi) {
+		M(tx, p[0], zi);
+		M(ty, p[1], zi);
+		pack25519(pb1, ty);
+		System.arraycopy(pb1, 0, r, rOff, 32);
+		r[rOff + 31] ^= par25519(tx) << 7;
+	}
+
+	private void neg(long[][] /* ge */p) {
+		Z(p[0], gf0, p[0]);
+		Z(p[3], gf0, p[3]);
+	}
+
+	/*
+	 * s * B for the fixed base point, s given as 32 little-endian bytes with the top bit clear. The
+	 * scalar is recoded into 64 signed radix-16 digits in [-8, 8] and the multiples e[i] * 16^i * B are
+	 * read from BaseTable: first all odd digits, then four doublings, then all even digits (the ref10
+	 * comb). Every table entry is touched on every lookup, so timing does not depend on s.
+	 */
+	private void scalarbase(long[][] /* gf */p/* [4] */, byte[] s, int sOff) {
+		byte[] e = digits;
+		int i, carry;
+
+		for (i = 0; i < 32; ++i) {
+			e[2 * i] = (byte) (s[sOff + i] & 15);
+			e[2 * i + 1] = (byte) ((s[sOff + i] >> 4) & 15);
+		}
+		carry = 0;
+		for (i = 0; i < 63; ++i) {
+			e[i] += carry;
+			carry = (e[i] + 8) >> 4;
+			e[i] -= carry << 4;
+		}
+		e[63] += carry;
+
+		set25519(p[0], gf0);
+		set25519(p[1], gf1);
+		set25519(p[2], gf1);
+		set25519(p[3], gf0);
+		for (i = 1; i < 64; i += 2) {
+			select(sel, i / 2, e[i]);
+			madd(p, sel);
+		}
+		add(p, p);
+		add(p, p);
+		add(p, p);
+		add(p, p);
+		for (i = 0; i < 64; i += 2) {
+			select(sel, i / 2, e[i]);
+			madd(p, sel);
+		}
+		Arrays.fill(e, (byte) 0);
+	}
+
+	/*
+	 * t = b * 16^(2 * pos) * B in precomputed form, for b in [-8, 8], in constant time
+	 */
+	private void select(long[][] /* ge_precomp */t, int pos, byte b) {
+		int bnegative = (b >> 7) & 1;
+		int babs = b - (((-bnegative) & b) << 1);
+		long[][][] row = BaseTable.T[pos];
+
+		set25519(t[0], gf1);
+		set25519(t[1], gf1);
+		set25519(t[2], gf0);
+		for (int j = 0; j < 8; ++j) {
+			int eq = (((babs ^ (j + 1)) - 1) >>> 31);
+			cmov25519(t[0], row[j][0], eq);
+			cmov25519(t[1], row[j][1], eq);
+			cmov25519(t[2], row[j][2], eq);
+		}
+		// -(x, y) is (-x, y): swap y+x with y-x and negate 2dxy
+		sel25519(t[0], t[1], bnegative);
+		Z(selneg, gf0, t[2]);
+		cmov25519(t[2], selneg, bnegative);
+	}
+
+	/*
+	 * T[i][j] = (j + 1) * 16^(2i) * B, i < 32, j < 8, as (y + x, y - x, 2dxy). Built on first use,
+	 * once per JVM; 256 affine points, about 24 Kb.
+	 */
+	private static final class BaseTable {
+		static final long[][][][] T = new Curve25519().buildBaseTable();
+		// -B, -3B, -5B, -7B for doublescalarmult
+		static final long[][][] NEG_ODD = new long[4][3][GF_LEN];
+		static {
+			for (int k = 0; k < 4; ++k) {
+				long[][] q = T[0][2 * k];
+				for (int i = 0; i < GF_LEN; ++i) {
+					NEG_ODD[k][0][i] = q[1][i];
+					NEG_ODD[k][1][i] = q[0][i];
+					NEG_ODD[k][2][i] = -q[2][i];
+				}
+			}
+		}
+	}
+
+	private long[][][][] buildBaseTable() {
+		long[][][][] T = new long[32][8][3][GF_LEN];
+		long[][] /* gf */b = new long[4][GF_LEN], p = new long[4][GF_LEN];
+		long[] /* gf */zi = new long[GF_LEN], x = new long[GF_LEN], y = new long[GF_LEN];
+		int i, j, k;
+
+		set25519(b[0], X);
+		set25519(b[1], Y);
+		set25519(b[2], gf1);
+		M(b[3], X, Y);
+		for (i = 0; i < 32; ++i) {
+			for (k = 0; k < 4; ++k)
+				set25519(p[k], b[k]);
+			for (j = 0; j < 8; ++j) {
+				inv25519(zi, p[2]);
+				M(x, p[0], zi);
+				M(y, p[1], zi);
+				A(T[i][j][0], y, x);
+				Z(T[i][j][1], y, x);
+				M(T[i][j][2], x, y);
+				M(T[i][j][2], T[i][j][2], D2);
+				car25519(T[i][j][0]);
+				car25519(T[i][j][1]);
+				add(p, b);
+			}
+			for (k = 0; k < 8; ++k)
+				add(b, b);
+		}
+		return T;
+	}
+
+	private int unpackneg(long[][] /* gf */r/* [4] */, byte[] p/* [32] */, int pOff) {
+		long[] /* gf */t = ut;
+		set25519(r[2], gf1);
+		unpack25519(r[1], p, pOff);
+		S(num, r[1]);
+		M(den, num, D);
+		Z(num, num, r[2]);
+		A(den, r[2], den);
+
+		S(den2, den);
+		S(den4, den2);
+		M(den6, den4, den2);
+		M(t, den6, num);
+		M(t, t, den);
+
+		pow2523(t, t);
+		M(t, t, num);
+		M(t, t, den);
+		M(t, t, den);
+		M(r[0], t, den);
+
+		S(chk, r[0]);
+		M(chk, chk, den);
+		if (neq25519(chk, num) != 0)
+			M(r[0], r[0], I);
+
+		S(chk, r[0]);
+		M(chk, chk, den);
+		if (neq25519(chk, num) != 0)
+			return -1;
+
+		if (par25519(r[0]) == ((0xff & p[pOff + 31]) >> 7))
+			Z(r[0], gf0, r[0]);
+
+		M(r[3], r[0], r[1]);
+		return 0;
+	}
+
+	private void modL(byte[] r, int rOff, long[] x/* [64] */) {
+		long carry;
+		int i, j;
+		for (i = 63; i >= 32; --i) {
+			carry = 0;
+			for (j = i - 32; j < i - 12; ++j) {
+				x[j] += carry - 16 * x[i] * L[j - (i - 32)];
+				carry = (x[j] + 128) >> 8;
+				x[j] -= carry << 8;
+			}
+			x[j] += carry;
+			x[i] = 0;
+		}
+		carry = 0;
+		for (j = 0; j < 32; ++j) {
+			x[j] += carry - (x[31] >> 4) * L[j];
+			carry = x[j] >> 8;
+			x[j] &= 255;
+		}
+		for (j = 0; j < 32; ++j)
+			x[j] -= carry * L[j];
+		for (i = 0; i < 32; ++i) {
+			x[i + 1] += x[i] >> 8;
+			r[rOff + i] = (byte) (x[i] & 255);
+		}
+	}
+
+	private void reduce(byte[] r) {
+		long[] x = sx;
+		for (int i = 0; i < 64; i++)
+			x[i] = 0xff & r[i];
+		for (int i = 0; i < 64; ++i)
+			r[i] = 0;
+		modL(r, 0, x);
+	}
+
+	/*
+	 * r = a * b[bOff..bOff + 32] + c mod L, for c null or already below L; x is scratch space
+	 */
+	private void mulAddModL(byte[] r, byte[] a, byte[] b, int bOff, byte[] c, long[] x) {
+		int i, j;
+		for (i = 0; i < 64; ++i)
+			x[i] = 0;
+		if (c != null)
+			for (i = 0; i < 32; ++i)
+				x[i] = 0xff & c[i];
+		for (i = 0; i < 32; ++i)
+			for (j = 0; j < 32; ++j)
+				x[i + j] += (0xff & a[i]) * (long) (0xff & b[bOff + j]);
+		modL(r, 0, x);
+	}
+
+	/*
+	 * sum scalars[i] * points[i] for i < count, variable time (Pippenger's bucket method). Only for
+	 * public inputs.
+	 */
+	private long[][] multiscalarmult(long[][][] /* ge */points, byte[][] scalars, int count) {
+		int c = Math.max(2, Math.min(12, 29 - Integer.numberOfLeadingZeros(count)));
+		int windows = (256 + c - 1) / c;
+		long[][][] /* ge */buckets = new long[1 << c][][];
+		long[][] /* ge */acc = new long[4][GF_LEN], run = new long[4][GF_LEN], sum = new long[4][GF_LEN];
+		boolean haveRun, haveSum;
+		int w, i, d, k;
+
+		set25519(acc[0], gf0);
+		set25519(acc[1], gf1);
+		set25519(acc[2], gf1);
+		set25519(acc[3], gf0);
+		for (w = windows - 1; w >= 0; --w) {
+			for (k = 0; k < c; ++k)
+				add(acc, acc);
+
+			Arrays.fill(buckets, null);
+			for (i = 0; i < count; ++i) {
+				d = digit(scalars[i], w * c, c);
+				if (d == 0)
+					continue;
+				if (buckets[d] == null)
+					buckets[d] = copy(points[i]);
+				else
+					add(buckets[d], points[i]);
+			}
+
+			// sum d * bucket[d] as a running sum from the top
+			haveRun = haveSum = false;
+			for (d = (1 << c) - 1; d > 0; --d) {
+				if (buckets[d] != null) {
+					if (haveRun)
+						add(run, buckets[d]);
+					else
+						set(run, buckets[d]);
+					haveRun = true;
+				}
+				if (haveRun) {
+					if (haveSum)
+						add(sum, run);
+					else
+						set(sum, run);
+					haveSum = true;
+				}
+			}
+			if (haveSum)
+				add(acc, sum);
+		}
+		return acc;
+	}
+
+	private static int digit(byte[] s, int bit, int c) {
+		int v = 0;
+		for (int k = 0; k < c && bit + k < 256; ++k)
+			v |= (((0xff & s[(bit + k) >> 3]) >> ((bit + k) & 7)) & 1) << k;
+		return v;
+	}
+
+	private long[][] copy(long[][] /* ge */p) {
+		long[][] q = new long[4][GF_LEN];
+		set(q, p);
+		return q;
+	}
+
+	private void set(long[][] /* ge */p, long[][] /* ge */q) {
+		for (int i = 0; i < 4; ++i)
+			set25519(p[i], q[i]);
+	}
+}
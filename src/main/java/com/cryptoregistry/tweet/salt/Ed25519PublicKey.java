@@ -0,0 +1,58 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt;
+
+/**
+ * An Ed25519 public key decoded once for verification. Decoding a key takes a square root in the
+ * field, and the small table of its multiples used by verification takes a few point additions more;
+ * a TweetNaCl verify with a byte[] key pays for both on every call. Verifying with this object instead
+ * skips that work, which matters when the same key checks many signatures.
+ *
+ * Immutable and safe to share between threads. See Ed25519PublicKeyCache to keep them around.
+ *
+ * @author Dave
+ * @see TweetNaCl#crypto_sign_open(byte[], Ed25519PublicKey)
+ */
+public final class Ed25519PublicKey {
+
+	// the key as given, which verification hashes
+	final byte[] encoded;
+	// odd multiples of -A and their negatives, see Curve25519.decodeVerifyKey()
+	final long[][][] table;
+
+	/**
+	 * @throws IllegalArgumentException if publicSigningKey is not 32 bytes encoding a curve point
+	 */
+	public Ed25519PublicKey(byte[] publicSigningKey) {
+		if (publicSigningKey.length != TweetNaCl.SIGN_PUBLIC_KEY_BYTES)
+			throw new IllegalArgumentException("Illegal signing key length: " + publicSigningKey.length);
+		encoded = publicSigningKey.clone();
+		table = new long[8][4][Curve25519.GF_LEN];
+		if (TweetNaCl.curve().decodeVerifyKey(table, encoded, 0) != 0)
+			throw new IllegalArgumentException("Not an Ed25519 public key");
+	}
+
+	/**
+	 * A copy of the 32 byte encoded key
+	 */
+	public byte[] getBytes() {
+		return encoded.clone();
+	}
+}
@@ -0,0 +1,87 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decoded Ed25519PublicKeys by their 32 byte encoding, so a key seen again is not decoded again.
+ *
+ * Safe for any number of threads. The cache holds at most maxSize keys; when it is full an arbitrary
+ * entry makes room for the new one, which is cheap and good enough for the usual case of a working set
+ * of signers that fits. Two threads asking for the same new key at once may both decode it.
+ *
+ * @author Dave
+ */
+public final class Ed25519PublicKeyCache {
+
+	public static final int DEFAULT_MAX_SIZE = 1024;
+
+	private static final Ed25519PublicKeyCache DEFAULT = new Ed25519PublicKeyCache(DEFAULT_MAX_SIZE);
+
+	private final int maxSize;
+	private final ConcurrentHashMap<ByteBuffer, Ed25519PublicKey> keys;
+
+	public Ed25519PublicKeyCache(int maxSize) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+		this.maxSize = maxSize;
+		keys = new ConcurrentHashMap<ByteBuffer, Ed25519PublicKey>();
+	}
+
+	/**
+	 * The shared cache used by the pepper verifiers
+	 */
+	public static Ed25519PublicKeyCache getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * The decoded form of publicSigningKey, from the cache if it is there
+	 *
+	 * @throws IllegalArgumentException if publicSigningKey is not a valid public key. Invalid keys are
+	 *             not cached.
+	 */
+	public Ed25519PublicKey get(byte[] publicSigningKey) {
+		Ed25519PublicKey key = keys.get(ByteBuffer.wrap(publicSigningKey));
+		if (key != null)
+			return key;
+		key = new Ed25519PublicKey(publicSigningKey);
+		while (keys.size() >= maxSize) {
+			Iterator<ByteBuffer> it = keys.keySet().iterator();
+			if (!it.hasNext())
+				break;
+			keys.remove(it.next());
+		}
+		// wraps the key's own copy, which nobody can change
+		Ed25519PublicKey prior = keys.putIfAbsent(ByteBuffer.wrap(key.encoded), key);
+		return prior != null ? prior : key;
+	}
+
+	public int size() {
+		return keys.size();
+	}
+
+	public void clear() {
+		keys.clear();
+	}
+}
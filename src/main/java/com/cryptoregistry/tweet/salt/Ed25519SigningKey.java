@@ -0,0 +1,75 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt;
+
+import java.util.Arrays;
+
+/**
+ * An Ed25519 secret key expanded once for signing. Every signature made from the 64 byte secret key
+ * starts by hashing its 32 byte seed with SHA-512 to get the secret scalar and the nonce prefix; this
+ * object keeps the result, so signing with it skips that hash. Worth it for keys which sign a lot.
+ *
+ * The expanded key is as secret as the key it came from. Safe to share between threads until
+ * selfDestruct() is called.
+ *
+ * @author Dave
+ * @see TweetNaCl#crypto_sign(byte[], Ed25519SigningKey)
+ */
+public final class Ed25519SigningKey {
+
+	// clamped scalar, then nonce prefix
+	final byte[] expanded = new byte[64];
+	final byte[] publicKey;
+	private volatile boolean alive = true;
+
+	/**
+	 * @param secretSigningKey the 64 byte secret key from crypto_sign_keypair: the seed, then the public key
+	 */
+	public Ed25519SigningKey(byte[] secretSigningKey) {
+		if (secretSigningKey.length != TweetNaCl.SIGN_SECRET_KEY_BYTES)
+			throw new IllegalStateException("Illegal signing key length: " + secretSigningKey.length);
+		TweetNaCl.curve().expandSigningKey(expanded, secretSigningKey);
+		publicKey = Arrays.copyOfRange(secretSigningKey, 32, 64);
+	}
+
+	/**
+	 * A copy of the 32 byte public key
+	 */
+	public byte[] getPublicKey() {
+		return publicKey.clone();
+	}
+
+	/**
+	 * Wipe the expanded key. It cannot sign after this.
+	 */
+	public void selfDestruct() {
+		alive = false;
+		Arrays.fill(expanded, (byte) 0);
+	}
+
+	public boolean isAlive() {
+		return alive;
+	}
+
+	void checkAlive() {
+		if (!alive)
+			throw new IllegalStateException("Signing key has been destroyed");
+	}
+}
@@ -0,0 +1,139 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Ed25519ph (HashEdDSA, RFC 8032 section 5.1), incrementally. The message is fed through update() as
+ * it arrives and only its SHA-512 hash is kept, so a stream of any size is signed or verified in one
+ * pass and constant memory. Plain Ed25519 needs the whole message twice and cannot do that.
+ *
+ * Ed25519ph signatures are not Ed25519 signatures: the same key signs the same message differently in
+ * the two modes, and each only verifies in its own mode. An optional context string of up to 255 bytes
+ * binds a signature to its use, and must be the same on both sides.
+ *
+ * Keys are the usual TweetNaCl signing keys. sign() and verify() reset the object for the next message.
+ * Not thread-safe; use one instance per thread.
+ *
+ * @author Dave
+ */
+public final class Ed25519ph {
+
+	private static final byte[] NO_CONTEXT = new byte[0];
+
+	private final byte[] key;
+	private final boolean forSigning;
+	private final byte[] ctx;
+	private final SHA512Digest digest = new SHA512Digest();
+	private final byte[] ph = new byte[SHA512Digest.DIGEST_SIZE];
+
+	private Ed25519ph(byte[] key, boolean forSigning, byte[] ctx) {
+		if (ctx.length > 255)
+			throw new IllegalArgumentException("Context longer than 255 bytes: " + ctx.length);
+		this.key = key.clone();
+		this.forSigning = forSigning;
+		this.ctx = ctx.clone();
+	}
+
+	public static Ed25519ph signer(byte[] secretSigningKey) {
+		return signer(secretSigningKey, NO_CONTEXT);
+	}
+
+	public static Ed25519ph signer(byte[] secretSigningKey, byte[] context) {
+		if (secretSigningKey.length != TweetNaCl.SIGN_SECRET_KEY_BYTES)
+			throw new IllegalStateException("Illegal signing key length: " + secretSigningKey.length);
+		return new Ed25519ph(secretSigningKey, true, context);
+	}
+
+	public static Ed25519ph verifier(byte[] publicSigningKey) {
+		return verifier(publicSigningKey, NO_CONTEXT);
+	}
+
+	public static Ed25519ph verifier(byte[] publicSigningKey, byte[] context) {
+		if (publicSigningKey.length != TweetNaCl.SIGN_PUBLIC_KEY_BYTES)
+			throw new IllegalStateException("Illegal signing key length: " + publicSigningKey.length);
+		return new Ed25519ph(publicSigningKey, false, context);
+	}
+
+	public Ed25519ph update(byte in) {
+		digest.update(in);
+		return this;
+	}
+
+	public Ed25519ph update(byte[] in, int off, int len) {
+		digest.update(in, off, len);
+		return this;
+	}
+
+	/**
+	 * All remaining bytes of in; its position is advanced to the limit
+	 */
+	public Ed25519ph update(ByteBuffer in) {
+		digest.update(in);
+		return this;
+	}
+
+	/**
+	 * Read in to the end of the stream. The stream is not closed.
+	 *
+	 * @return the number of bytes read
+	 */
+	public long update(InputStream in) throws IOException {
+		byte[] buf = new byte[8192];
+		long total = 0;
+		int n;
+		while ((n = in.read(buf)) != -1) {
+			digest.update(buf, 0, n);
+			total += n;
+		}
+		return total;
+	}
+
+	/**
+	 * The 64 byte signature on everything passed to update() since the last sign() or reset()
+	 */
+	public byte[] sign() {
+		if (!forSigning)
+			throw new IllegalStateException("Not initialized for signing");
+		byte[] sig = new byte[TweetNaCl.SIGNATURE_SIZE_BYTES];
+		digest.doFinal(ph, 0);
+		TweetNaCl.curve().crypto_sign_ph(sig, 0, ph, ctx, key);
+		return sig;
+	}
+
+	/**
+	 * Whether signature is good for everything passed to update() since the last verify() or reset()
+	 */
+	public boolean verify(byte[] signature) {
+		if (forSigning)
+			throw new IllegalStateException("Not initialized for verification");
+		digest.doFinal(ph, 0);
+		if (signature.length != TweetNaCl.SIGNATURE_SIZE_BYTES)
+			return false;
+		return TweetNaCl.curve().crypto_sign_verify_ph(signature, 0, ph, ctx, key) == 0;
+	}
+
+	public void reset() {
+		digest.reset();
+	}
+}
@@ -0,0 +1,109 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt;
+
+import java.util.Arrays;
+
+/**
+ * HMAC-SHA-512-256, the NaCl crypto_auth: HMAC-SHA-512 with the tag cut to its first 32 bytes.
+ *
+ * The SHA-512 states after the key xor ipad and the key xor opad blocks are computed once, in the
+ * constructor. A MAC after that costs the message blocks plus one block for the outer hash, which
+ * makes a long-lived instance per key the cheap way to tag many short messages.
+ *
+ * update() as often as required, then doFinal() or verify(), both of which make the object ready for
+ * the next message under the same key. Not thread-safe; use one instance per thread.
+ *
+ * @author Dave
+ * @see TweetNaCl#crypto_auth(byte[], byte[])
+ */
+public final class HmacSHA512256 {
+
+	public static final int TAG_BYTES = TweetNaCl.crypto_auth_hmacsha512256_tweet_BYTES;
+
+	private final SHA512Digest innerStart = new SHA512Digest(), outerStart = new SHA512Digest();
+	private final SHA512Digest inner = new SHA512Digest(), outer = new SHA512Digest();
+	private final byte[] h = new byte[SHA512Digest.DIGEST_SIZE];
+
+	/**
+	 * Any key length is allowed, as in RFC 2104; crypto_auth uses 32 bytes
+	 */
+	public HmacSHA512256(byte[] key) {
+		byte[] pad = new byte[SHA512Digest.BLOCK_SIZE];
+		if (key.length > SHA512Digest.BLOCK_SIZE)
+			System.arraycopy(SHA512Digest.hash(key), 0, pad, 0, SHA512Digest.DIGEST_SIZE);
+		else
+			System.arraycopy(key, 0, pad, 0, key.length);
+
+		for (int i = 0; i < pad.length; i++)
+			pad[i] ^= 0x36;
+		innerStart.update(pad, 0, pad.length);
+		for (int i = 0; i < pad.length; i++)
+			pad[i] ^= 0x36 ^ 0x5c;
+		outerStart.update(pad, 0, pad.length);
+		Arrays.fill(pad, (byte) 0);
+
+		inner.reset(innerStart);
+	}
+
+	public void update(byte in) {
+		inner.update(in);
+	}
+
+	public void update(byte[] in, int off, int len) {
+		inner.update(in, off, len);
+	}
+
+	/**
+	 * Write the 32 byte tag to out at outOff
+	 *
+	 * @return TAG_BYTES
+	 */
+	public int doFinal(byte[] out, int outOff) {
+		inner.doFinal(h, 0);
+		outer.reset(outerStart);
+		outer.update(h, 0, SHA512Digest.DIGEST_SIZE);
+		outer.doFinal(h, 0);
+		System.arraycopy(h, 0, out, outOff, TAG_BYTES);
+		inner.reset(innerStart);
+		return TAG_BYTES;
+	}
+
+	/**
+	 * Whether the 32 bytes at tag[tagOff] are the tag of the message so far. Constant time.
+	 */
+	public boolean verify(byte[] tag, int tagOff) {
+		if (tagOff < 0 || tagOff > tag.length - TAG_BYTES)
+			return false;
+		byte[] x = new byte[TAG_BYTES];
+		doFinal(x, 0);
+		int d = 0;
+		for (int i = 0; i < TAG_BYTES; i++)
+			d |= x[i] ^ tag[tagOff + i];
+		return d == 0;
+	}
+
+	/**
+	 * Drop whatever has been passed to update() since the last tag
+	 */
+	public void reset() {
+		inner.reset(innerStart);
+	}
+}
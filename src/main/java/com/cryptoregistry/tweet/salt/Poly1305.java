@@ -0,0 +1,239 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt;
+
+import static com.cryptoregistry.util.LittleEndian.ld32;
+import static com.cryptoregistry.util.LittleEndian.st32;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The Poly1305 one-time authenticator behind crypto_onetimeauth, secretbox and box, fed incrementally.
+ *
+ * The accumulator and the key are held as five 26-bit limbs (poly1305-donna-32), so a 16 byte block
+ * costs 25 multiplications where TweetNaCl's byte limbs needed 289. Nothing is allocated after
+ * construction.
+ *
+ * A key must only ever authenticate one message. update() as often as required, then doFinal(),
+ * which wipes the key; update() and doFinal() then throw IllegalStateException until init() gives
+ * the object a new one.
+ *
+ * @author Dave
+ */
+public final class Poly1305 {
+
+	public static final int KEY_BYTES = 32;
+	public static final int TAG_BYTES = 16;
+
+	private static final int MASK = 0x3ffffff;
+
+	private int r0, r1, r2, r3, r4;
+	private int s1, s2, s3, s4;
+	private int h0, h1, h2, h3, h4;
+	private int pad0, pad1, pad2, pad3;
+
+	private final byte[] buf = new byte[16];
+	private int bufLen;
+	private boolean keyed;
+
+	public Poly1305() {
+	}
+
+	public Poly1305(byte[] key) {
+		init(key, 0);
+	}
+
+	/**
+	 * Start a new message under the 32 byte key at key[off]
+	 */
+	public void init(byte[] key, int off) {
+		if (off < 0 || off > key.length - KEY_BYTES)
+			throw new IllegalArgumentException("Poly1305 key needs " + KEY_BYTES + " bytes");
+		// r is clamped as it is read
+		r0 = ld32(key, off) & 0x3ffffff;
+		r1 = (ld32(key, off + 3) >>> 2) & 0x3ffff03;
+		r2 = (ld32(key, off + 6) >>> 4) & 0x3ffc0ff;
+		r3 = (ld32(key, off + 9) >>> 6) & 0x3f03fff;
+		r4 = (ld32(key, off + 12) >>> 8) & 0x00fffff;
+		s1 = r1 * 5;
+		s2 = r2 * 5;
+		s3 = r3 * 5;
+		s4 = r4 * 5;
+		h0 = h1 = h2 = h3 = h4 = 0;
+		pad0 = ld32(key, off + 16);
+		pad1 = ld32(key, off + 20);
+		pad2 = ld32(key, off + 24);
+		pad3 = ld32(key, off + 28);
+		bufLen = 0;
+		keyed = true;
+	}
+
+	public void update(byte in) {
+		checkKeyed();
+		buf[bufLen++] = in;
+		if (bufLen == 16) {
+			block(buf, 0, 1 << 24);
+			bufLen = 0;
+		}
+	}
+
+	public void update(byte[] in, int off, int len) {
+		if (off < 0 || len < 0 || off > in.length - len)
+			throw new IndexOutOfBoundsException("offset " + off + ", length " + len + ", array length " + in.length);
+		checkKeyed();
+		if (bufLen > 0) {
+			int n = Math.min(16 - bufLen, len);
+			System.arraycopy(in, off, buf, bufLen, n);
+			bufLen += n;
+			off += n;
+			len -= n;
+			if (bufLen < 16)
+				return;
+			block(buf, 0, 1 << 24);
+			bufLen = 0;
+		}
+		while (len >= 16) {
+			block(in, off, 1 << 24);
+			off += 16;
+			len -= 16;
+		}
+		System.arraycopy(in, off, buf, 0, len);
+		bufLen = len;
+	}
+
+	/**
+	 * All remaining bytes of in; its position is advanced to the limit
+	 */
+	public void update(ByteBuffer in) {
+		checkKeyed();
+		if (in.hasArray()) {
+			update(in.array(), in.arrayOffset() + in.position(), in.remaining());
+			in.position(in.limit());
+			return;
+		}
+		while (in.hasRemaining()) {
+			int n = Math.min(16 - bufLen, in.remaining());
+			in.get(buf, bufLen, n);
+			bufLen += n;
+			if (bufLen == 16) {
+				block(buf, 0, 1 << 24);
+				bufLen = 0;
+			}
+		}
+	}
+
+	/**
+	 * Write the 16 byte tag to out at outOff
+	 *
+	 * @return TAG_BYTES
+	 */
+	public int doFinal(byte[] out, int outOff) {
+		int c, g0, g1, g2, g3, g4, mask;
+		long f;
+
+		checkKeyed();
+		if (bufLen > 0) {
+			// the last, short block is padded with a 1 byte and zeros instead of the high bit
+			buf[bufLen++] = 1;
+			while (bufLen < 16)
+				buf[bufLen++] = 0;
+			block(buf, 0, 0);
+			bufLen = 0;
+		}
+
+		c = h1 >>> 26; h1 &= MASK; h2 += c;
+		c = h2 >>> 26; h2 &= MASK; h3 += c;
+		c = h3 >>> 26; h3 &= MASK; h4 += c;
+		c = h4 >>> 26; h4 &= MASK; h0 += c * 5;
+		c = h0 >>> 26; h0 &= MASK; h1 += c;
+
+		// h - p, kept if it did not go negative, in constant time
+		g0 = h0 + 5; c = g0 >>> 26; g0 &= MASK;
+		g1 = h1 + c; c = g1 >>> 26; g1 &= MASK;
+		g2 = h2 + c; c = g2 >>> 26; g2 &= MASK;
+		g3 = h3 + c; c = g3 >>> 26; g3 &= MASK;
+		g4 = h4 + c - (1 << 26);
+		mask = (g4 >>> 31) - 1;
+		g0 &= mask;
+		g1 &= mask;
+		g2 &= mask;
+		g3 &= mask;
+		g4 &= mask;
+		mask = ~mask;
+		h0 = (h0 & mask) | g0;
+		h1 = (h1 & mask) | g1;
+		h2 = (h2 & mask) | g2;
+		h3 = (h3 & mask) | g3;
+		h4 = (h4 & mask) | g4;
+
+		// h + s mod 2^128
+		f = (0xffffffffL & (h0 | (h1 << 26))) + (0xffffffffL & pad0);
+		st32(out, outOff, (int) f);
+		f = (0xffffffffL & ((h1 >>> 6) | (h2 << 20))) + (0xffffffffL & pad1) + (f >>> 32);
+		st32(out, outOff + 4, (int) f);
+		f = (0xffffffffL & ((h2 >>> 12) | (h3 << 14))) + (0xffffffffL & pad2) + (f >>> 32);
+		st32(out, outOff + 8, (int) f);
+		f = (0xffffffffL & ((h3 >>> 18) | (h4 << 8))) + (0xffffffffL & pad3) + (f >>> 32);
+		st32(out, outOff + 12, (int) f);
+
+		// the one-time key goes with the tag
+		h0 = h1 = h2 = h3 = h4 = 0;
+		r0 = r1 = r2 = r3 = r4 = 0;
+		s1 = s2 = s3 = s4 = 0;
+		pad0 = pad1 = pad2 = pad3 = 0;
+		Arrays.fill(buf, (byte) 0);
+		keyed = false;
+		return TAG_BYTES;
+	}
+
+	private void checkKeyed() {
+		if (!keyed)
+			throw new IllegalStateException("Poly1305 key already used, or never set: init() first");
+	}
+
+	/*
+	 * h = (h + m + hibit * 2^128) * r mod 2^130 - 5, only partly reduced
+	 */
+	private void block(byte[] m, int off, int hibit) {
+		long d0, d1, d2, d3, d4, c;
+
+		h0 += ld32(m, off) & MASK;
+		h1 += (ld32(m, off + 3) >>> 2) & MASK;
+		h2 += (ld32(m, off + 6) >>> 4) & MASK;
+		h3 += (ld32(m, off + 9) >>> 6) & MASK;
+		h4 += (ld32(m, off + 12) >>> 8) | hibit;
+
+		d0 = (long) h0 * r0 + (long) h1 * s4 + (long) h2 * s3 + (long) h3 * s2 + (long) h4 * s1;
+		d1 = (long) h0 * r1 + (long) h1 * r0 + (long) h2 * s4 + (long) h3 * s3 + (long) h4 * s2;
+		d2 = (long) h0 * r2 + (long) h1 * r1 + (long) h2 * r0 + (long) h3 * s4 + (long) h4 * s3;
+		d3 = (long) h0 * r3 + (long) h1 * r2 + (long) h2 * r1 + (long) h3 * r0 + (long) h4 * s4;
+		d4 = (long) h0 * r4 + (long) h1 * r3 + (long) h2 * r2 + (long) h3 * r1 + (long) h4 * r0;
+
+		c = d0 >>> 26; h0 = (int) d0 & MASK;
+		d1 += c; c = d1 >>> 26; h1 = (int) d1 & MASK;
+		d2 += c; c = d2 >>> 26; h2 = (int) d2 & MASK;
+		d3 += c; c = d3 >>> 26; h3 = (int) d3 & MASK;
+		d4 += c; c = d4 >>> 26; h4 = (int) d4 & MASK;
+		h0 += (int) c * 5;
+		h1 += h0 >>> 26;
+		h0 &= MASK;
+	}
+}
@@ -0,0 +1,86 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt;
+
+import java.security.SecureRandom;
+import java.security.SecureRandomSpi;
+
+/**
+ * Where keys, nonces and salts come from. Implementations must be safe to call from any number of
+ * threads at once.
+ *
+ * The default is SalsaDRBG. To use a particular SecureRandom instead, wrap it with from().
+ *
+ * @author Dave
+ * @see TweetNaCl#TweetNaCl(RandomSource)
+ */
+public interface RandomSource {
+
+	/**
+	 * Fill len bytes of b starting at off
+	 */
+	void nextBytes(byte[] b, int off, int len);
+
+	default void nextBytes(byte[] b) {
+		nextBytes(b, 0, b.length);
+	}
+
+	/**
+	 * A RandomSource backed by rand, which must itself be thread-safe (SecureRandom is)
+	 */
+	static RandomSource from(final SecureRandom rand) {
+		return new RandomSource() {
+			public void nextBytes(byte[] b, int off, int len) {
+				if (off == 0 && len == b.length) {
+					rand.nextBytes(b);
+					return;
+				}
+				byte[] r = new byte[len];
+				rand.nextBytes(r);
+				System.arraycopy(r, 0, b, off, len);
+			}
+		};
+	}
+
+	/**
+	 * A SecureRandom view of source, for APIs which want one. Seeding it has no effect.
+	 */
+	static SecureRandom asSecureRandom(final RandomSource source) {
+		SecureRandomSpi spi = new SecureRandomSpi() {
+			private static final long serialVersionUID = 1L;
+
+			protected void engineSetSeed(byte[] seed) {
+			}
+
+			protected void engineNextBytes(byte[] bytes) {
+				source.nextBytes(bytes);
+			}
+
+			protected byte[] engineGenerateSeed(int numBytes) {
+				byte[] b = new byte[numBytes];
+				source.nextBytes(b);
+				return b;
+			}
+		};
+		return new SecureRandom(spi, null) {
+			private static final long serialVersionUID = 1L;
+		};
+	}
+}
@@ -0,0 +1,267 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt;
+
+import java.nio.ByteBuffer;
+
+/**
+ * SHA-512 (FIPS 180-4) on native 64-bit words. This is the hash inside Ed25519, used by TweetNaCl for
+ * crypto_hash, crypto_sign and crypto_sign_open.
+ *
+ * The API follows the digests in com.cryptoregistry.digest: update() as often as required, then
+ * doFinal(), which also resets the object for reuse. Not thread-safe; use one instance per thread.
+ *
+ * @author Dave
+ */
+public final class SHA512Digest {
+
+	public static final int DIGEST_SIZE = 64;
+	public static final int BLOCK_SIZE = 128;
+
+	private static final long[] K = { 0x428a2f98d728ae22L, 0x7137449123ef65cdL,
+			0xb5c0fbcfec4d3b2fL, 0xe9b5dba58189dbbcL, 0x3956c25bf348b538L,
+			0x59f111f1b605d019L, 0x923f82a4af194f9bL, 0xab1c5ed5da6d8118L,
+			0xd807aa98a3030242L, 0x12835b0145706fbeL, 0x243185be4ee4b28cL,
+			0x550c7dc3d5ffb4e2L, 0x72be5d74f27b896fL, 0x80deb1fe3b1696b1L,
+			0x9bdc06a725c71235L, 0xc19bf174cf692694L, 0xe49b69c19ef14ad2L,
+			0xefbe4786384f25e3L, 0x0fc19dc68b8cd5b5L, 0x240ca1cc77ac9c65L,
+			0x2de92c6f592b0275L, 0x4a7484aa6ea6e483L, 0x5cb0a9dcbd41fbd4L,
+			0x76f988da831153b5L, 0x983e5152ee66dfabL, 0xa831c66d2db43210L,
+			0xb00327c898fb213fL, 0xbf597fc7beef0ee4L, 0xc6e00bf33da88fc2L,
+			0xd5a79147930aa725L, 0x06ca6351e003826fL, 0x142929670a0e6e70L,
+			0x27b70a8546d22ffcL, 0x2e1b21385c26c926L, 0x4d2c6dfc5ac42aedL,
+			0x53380d139d95b3dfL, 0x650a73548baf63deL, 0x766a0abb3c77b2a8L,
+			0x81c2c92e47edaee6L, 0x92722c851482353bL, 0xa2bfe8a14cf10364L,
+			0xa81a664bbc423001L, 0xc24b8b70d0f89791L, 0xc76c51a30654be30L,
+			0xd192e819d6ef5218L, 0xd69906245565a910L, 0xf40e35855771202aL,
+			0x106aa07032bbd1b8L, 0x19a4c116b8d2d0c8L, 0x1e376c085141ab53L,
+			0x2748774cdf8eeb99L, 0x34b0bcb5e19b48a8L, 0x391c0cb3c5c95a63L,
+			0x4ed8aa4ae3418acbL, 0x5b9cca4f7763e373L, 0x682e6ff3d6b2b8a3L,
+			0x748f82ee5defb2fcL, 0x78a5636f43172f60L, 0x84c87814a1f0ab72L,
+			0x8cc702081a6439ecL, 0x90befffa23631e28L, 0xa4506cebde82bde9L,
+			0xbef9a3f7b2c67915L, 0xc67178f2e372532bL, 0xca273eceea26619cL,
+			0xd186b8c721c0c207L, 0xeada7dd6cde0eb1eL, 0xf57d4f7fee6ed178L,
+			0x06f067aa72176fbaL, 0x0a637dc5a2c898a6L, 0x113f9804bef90daeL,
+			0x1b710b35131c471bL, 0x28db77f523047d84L, 0x32caab7b40c72493L,
+			0x3c9ebe0a15c9bebcL, 0x431d67c49c100d4cL, 0x4cc5d4becb3e42b6L,
+			0x597f299cfc657e2aL, 0x5fcb6fab3ad6faecL, 0x6c44198c4a475817L };
+
+	private final long[] state = new long[8];
+	private final long[] w = new long[80];
+	private final byte[] buf = new byte[BLOCK_SIZE];
+	private int bufLen;
+	private long byteCount;
+
+	public SHA512Digest() {
+		reset();
+	}
+
+	public SHA512Digest(SHA512Digest source) {
+		reset(source);
+	}
+
+	/**
+	 * One-shot convenience
+	 */
+	public static byte[] hash(byte[] in) {
+		byte[] out = new byte[DIGEST_SIZE];
+		SHA512Digest d = new SHA512Digest();
+		d.update(in, 0, in.length);
+		d.doFinal(out, 0);
+		return out;
+	}
+
+	public String getAlgorithmName() {
+		return "SHA-512";
+	}
+
+	public int getDigestSize() {
+		return DIGEST_SIZE;
+	}
+
+	public int getByteLength() {
+		return BLOCK_SIZE;
+	}
+
+	public void reset() {
+		state[0] = 0x6a09e667f3bcc908L;
+		state[1] = 0xbb67ae8584caa73bL;
+		state[2] = 0x3c6ef372fe94f82bL;
+		state[3] = 0xa54ff53a5f1d36f1L;
+		state[4] = 0x510e527fade682d1L;
+		state[5] = 0x9b05688c2b3e6c1fL;
+		state[6] = 0x1f83d9abfb41bd6bL;
+		state[7] = 0x5be0cd19137e2179L;
+		bufLen = 0;
+		byteCount = 0;
+	}
+
+	/**
+	 * Put this digest into the same state as other, without allocating
+	 */
+	public void reset(SHA512Digest other) {
+		System.arraycopy(other.state, 0, state, 0, 8);
+		System.arraycopy(other.buf, 0, buf, 0, other.bufLen);
+		bufLen = other.bufLen;
+		byteCount = other.byteCount;
+	}
+
+	public void update(byte in) {
+		buf[bufLen++] = in;
+		byteCount++;
+		if (bufLen == BLOCK_SIZE) {
+			compress(buf, 0);
+			bufLen = 0;
+		}
+	}
+
+	public void update(byte[] in, int inOff, int len) {
+		if (inOff < 0 || len < 0 || inOff > in.length - len)
+			throw new IndexOutOfBoundsException("offset " + inOff + ", length " + len + ", array length " + in.length);
+		byteCount += len;
+		if (bufLen > 0) {
+			int n = Math.min(BLOCK_SIZE - bufLen, len);
+			System.arraycopy(in, inOff, buf, bufLen, n);
+			bufLen += n;
+			inOff += n;
+			len -= n;
+			if (bufLen < BLOCK_SIZE)
+				return;
+			compress(buf, 0);
+			bufLen = 0;
+		}
+		// whole blocks straight from the caller's array
+		while (len >= BLOCK_SIZE) {
+			compress(in, inOff);
+			inOff += BLOCK_SIZE;
+			len -= BLOCK_SIZE;
+		}
+		System.arraycopy(in, inOff, buf, 0, len);
+		bufLen = len;
+	}
+
+	/**
+	 * All remaining bytes of in; its position is advanced to the limit. Heap buffers are hashed in
+	 * place, direct ones a block at a time through the internal buffer.
+	 */
+	public void update(ByteBuffer in) {
+		int len = in.remaining();
+		if (in.hasArray()) {
+			update(in.array(), in.arrayOffset() + in.position(), len);
+			in.position(in.limit());
+			return;
+		}
+		byteCount += len;
+		while (len > 0) {
+			int n = Math.min(BLOCK_SIZE - bufLen, len);
+			in.get(buf, bufLen, n);
+			bufLen += n;
+			len -= n;
+			if (bufLen == BLOCK_SIZE) {
+				compress(buf, 0);
+				bufLen = 0;
+			}
+		}
+	}
+
+	/**
+	 * Write the 64 byte digest to out at outOff and reset
+	 *
+	 * @return DIGEST_SIZE
+	 */
+	public int doFinal(byte[] out, int outOff) {
+		long bits = byteCount << 3;
+		long bitsHi = byteCount >>> 61;
+
+		buf[bufLen++] = (byte) 0x80;
+		if (bufLen > BLOCK_SIZE - 16) {
+			while (bufLen < BLOCK_SIZE)
+				buf[bufLen++] = 0;
+			compress(buf, 0);
+			bufLen = 0;
+		}
+		while (bufLen < BLOCK_SIZE - 16)
+			buf[bufLen++] = 0;
+		store64(buf, BLOCK_SIZE - 16, bitsHi);
+		store64(buf, BLOCK_SIZE - 8, bits);
+		compress(buf, 0);
+
+		for (int i = 0; i < 8; i++)
+			store64(out, outOff + 8 * i, state[i]);
+		reset();
+		return DIGEST_SIZE;
+	}
+
+	private void compress(byte[] m, int off) {
+		long[] w = this.w;
+		int i;
+		for (i = 0; i < 16; i++)
+			w[i] = load64(m, off + 8 * i);
+		for (; i < 80; i++) {
+			long x = w[i - 15], y = w[i - 2];
+			long s0 = Long.rotateRight(x, 1) ^ Long.rotateRight(x, 8) ^ (x >>> 7);
+			long s1 = Long.rotateRight(y, 19) ^ Long.rotateRight(y, 61) ^ (y >>> 6);
+			w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+		}
+
+		long a = state[0], b = state[1], c = state[2], d = state[3];
+		long e = state[4], f = state[5], g = state[6], h = state[7];
+		for (i = 0; i < 80; i++) {
+			long t1 = h + (Long.rotateRight(e, 14) ^ Long.rotateRight(e, 18) ^ Long.rotateRight(e, 41))
+					+ ((e & f) ^ (~e & g)) + K[i] + w[i];
+			long t2 = (Long.rotateRight(a, 28) ^ Long.rotateRight(a, 34) ^ Long.rotateRight(a, 39))
+					+ ((a & b) ^ (a & c) ^ (b & c));
+			h = g;
+			g = f;
+			f = e;
+			e = d + t1;
+			d = c;
+			c = b;
+			b = a;
+			a = t1 + t2;
+		}
+		state[0] += a;
+		state[1] += b;
+		state[2] += c;
+		state[3] += d;
+		state[4] += e;
+		state[5] += f;
+		state[6] += g;
+		state[7] += h;
+	}
+
+	private static long load64(byte[] x, int i) {
+		return ((long) (x[i] & 0xff) << 56) | ((long) (x[i + 1] & 0xff) << 48)
+				| ((long) (x[i + 2] & 0xff) << 40) | ((long) (x[i + 3] & 0xff) << 32)
+				| ((long) (x[i + 4] & 0xff) << 24) | ((x[i + 5] & 0xff) << 16)
+				| ((x[i + 6] & 0xff) << 8) | (x[i + 7] & 0xff);
+	}
+
+	private static void store64(byte[] x, int i, long u) {
+		x[i] = (byte) (u >>> 56);
+		x[i + 1] = (byte) (u >>> 48);
+		x[i + 2] = (byte) (u >>> 40);
+		x[i + 3] = (byte) (u >>> 32);
+		x[i + 4] = (byte) (u >>> 24);
+		x[i + 5] = (byte) (u >>> 16);
+		x[i + 6] = (byte) (u >>> 8);
+		x[i + 7] = (byte) u;
+	}
+}
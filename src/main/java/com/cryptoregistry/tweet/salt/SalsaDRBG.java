@@ -0,0 +1,129 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import com.cryptoregistry.tweet.salt.stream.SalsaEngine;
+
+/**
+ * The default RandomSource: a Salsa20 keystream generator per thread, so threads never wait on each
+ * other or on the operating system.
+ *
+ * Each thread's generator is seeded with 32 bytes from a non-blocking SecureRandom (/dev/urandom on
+ * Linux) the first time it is used, and reseeded from there after RESEED_BYTES of output or
+ * RESEED_MILLIS, whichever comes first. Output is made a buffer at a time with fast key erasure: the
+ * first 32 bytes of every buffer become the next key and are never handed out, and bytes are wiped
+ * from the buffer as they are used, so a later compromise of the state does not reveal earlier output.
+ *
+ * @author Dave
+ */
+public final class SalsaDRBG implements RandomSource {
+
+	public static final long RESEED_BYTES = 1L << 24;
+	public static final long RESEED_MILLIS = 5 * 60 * 1000;
+
+	private static final SalsaDRBG INSTANCE = new SalsaDRBG();
+
+	// the seed source. Only touched when a thread (re)seeds
+	private static final SecureRandom seeder = new SecureRandom();
+
+	private static final int BUF_BYTES = 1024;
+
+	private static final byte[] ZERO_NONCE = new byte[SalsaEngine.NONCE_BYTES];
+
+	private final ThreadLocal<State> states = new ThreadLocal<State>() {
+		@Override
+		protected State initialValue() {
+			return new State();
+		}
+	};
+
+	public static SalsaDRBG getInstance() {
+		return INSTANCE;
+	}
+
+	private SalsaDRBG() {
+	}
+
+	@Override
+	public void nextBytes(byte[] b, int off, int len) {
+		if (off < 0 || len < 0 || off > b.length - len)
+			throw new IndexOutOfBoundsException("offset " + off + ", length " + len + ", array length " + b.length);
+		states.get().nextBytes(b, off, len);
+	}
+
+	private static final class State {
+		private final byte[] key = new byte[32];
+		private final SalsaEngine salsa = new SalsaEngine();
+		private final byte[] buf = new byte[BUF_BYTES];
+		private int pos = BUF_BYTES;
+		private long output;
+		private long seededAt;
+
+		State() {
+			reseed();
+		}
+
+		void nextBytes(byte[] b, int off, int len) {
+			while (len > 0) {
+				if (pos == BUF_BYTES)
+					refill();
+				int n = Math.min(len, BUF_BYTES - pos);
+				System.arraycopy(buf, pos, b, off, n);
+				Arrays.fill(buf, pos, pos + n, (byte) 0);
+				pos += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		private void reseed() {
+			byte[] seed = new byte[32];
+			synchronized (seeder) {
+				seeder.nextBytes(seed);
+			}
+			// mixed into the current key, so a weak seed cannot make things worse
+			for (int i = 0; i < 32; i++)
+				key[i] ^= seed[i];
+			Arrays.fill(seed, (byte) 0);
+			output = 0;
+			seededAt = System.currentTimeMillis();
+			pos = BUF_BYTES;
+		}
+
+		/*
+		 * Blocks 0, 1, ... of the Salsa20 keystream under the current key and a zero nonce; the first
+		 * 32 bytes replace the key
+		 */
+		private void refill() {
+			if (output >= RESEED_BYTES || System.currentTimeMillis() - seededAt >= RESEED_MILLIS)
+				reseed();
+			salsa.init(key, 0, ZERO_NONCE, 0);
+			salsa.xor(buf, 0, null, 0, BUF_BYTES);
+			salsa.clear();
+			System.arraycopy(buf, 0, key, 0, 32);
+			Arrays.fill(buf, 0, 32, (byte) 0);
+			pos = 32;
+			output += BUF_BYTES - 32;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt;
+
+import java.util.Arrays;
+
+/**
+ * The precomputed result of crypto_box_beforenm(): the X25519 shared secret between our secret
+ * boxing key and their public boxing key, run through HSalsa20.
+ *
+ * The bytes are deliberately not exposed. Hold on to one of these for a long-lived peer and pass
+ * it to crypto_box_afternm() / crypto_box_open_afternm(), then every message costs a secretbox only.
+ *
+ * @author Dave
+ * @see TweetNaCl#crypto_box_beforenm(byte[], byte[])
+ */
+public final class SharedKey {
+
+	private final byte[] k;
+	private volatile boolean alive = true;
+
+	SharedKey(byte[] k) {
+		this.k = k;
+	}
+
+	byte[] bytes() {
+		if (!alive) throw new IllegalStateException("Shared key has been destroyed");
+		return k;
+	}
+
+	/**
+	 * Zero the key material. Any further use of this object will throw an IllegalStateException.
+	 */
+	public void selfDestruct() {
+		alive = false;
+		Arrays.fill(k, (byte) 0);
+	}
+
+	public boolean isAlive() {
+		return alive;
+	}
+}
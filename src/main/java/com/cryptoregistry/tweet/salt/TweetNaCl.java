@@ -19,13 +19,18 @@ along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
 */
 package com.cryptoregistry.tweet.salt;
 
-import java.security.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.util.Arrays;
-import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.cryptoregistry.tweet.salt.stream.SalsaEngine;
+import com.cryptoregistry.util.LittleEndian;
 
 /**
  * Ported from the original C by Ian Preston and Chris Boddy
- * crypto_hash() is ported from TweetNaCl.js
  * Released under GPL 2.
  */
 
@@ -34,6 +39,11 @@ import java.util.Random;
  * to be object-oriented, thread-safe, and efficient in environments that are multi-threaded. 
  * The class should not be used directly, but called through the "TweetPepper' interface - DRS
  *
+ * <p>An instance holds nothing but its RandomSource: constants are static, and the curve code keeps
+ * its scratch space per thread. Any number of threads may box, sign and verify through one instance
+ * without locking, so there is no reason to make more than one per RandomSource; getInstance() is the
+ * shared one for the default SalsaDRBG.</p>
+ *
  * @see TweetPepper
  */
 
@@ -54,29 +64,54 @@ public class TweetNaCl {
 	public static final int SECRETBOX_NONCE_BYTES = 24;
 	public static final int SECRETBOX_OVERHEAD_BYTES = 16;
 	public static final int HASH_SIZE_BYTES = 64; // SHA-512
-	private static final int SECRETBOX_INTERNAL_OVERHEAD_BYTES = 32;
 	
+	private final RandomSource random;
+
+	/**
+	 * Keys and random bytes come from the default SalsaDRBG
+	 */
 	public TweetNaCl() {
-		
+		this(SalsaDRBG.getInstance());
 	}
 
-	public void crypto_sign_keypair(byte[] pk, byte[] sk, boolean isSeeded) {
-		byte[] d = new byte[64];
-		long[][] /* gf */p = new long[4][GF_LEN];
-		int i;
+	public TweetNaCl(RandomSource random) {
+		if (random == null)
+			throw new NullPointerException("random");
+		this.random = random;
+	}
 
-		if (!isSeeded)
-			randombytes(sk, 32);
-		crypto_hash(d, sk, 32);
-		d[0] &= 248;
-		d[31] &= 127;
-		d[31] |= 64;
+	public RandomSource getRandomSource() {
+		return random;
+	}
 
-		scalarbase(p, d, 0);
-		pack(pk, p);
+	private static final TweetNaCl INSTANCE = new TweetNaCl();
 
-		for (i = 0; i < 32; ++i)
-			sk[32 + i] = pk[i];
+	/**
+	 * The shared instance, with keys and random bytes from SalsaDRBG
+	 */
+	public static TweetNaCl getInstance() {
+		return INSTANCE;
+	}
+
+	/*
+	 * The curve code works in a per-thread scratch context, so that signing, verifying and key
+	 * agreement do not allocate
+	 */
+	private static final ThreadLocal<Curve25519> curves = new ThreadLocal<Curve25519>() {
+		@Override
+		protected Curve25519 initialValue() {
+			return new Curve25519();
+		}
+	};
+
+	static Curve25519 curve() {
+		return curves.get();
+	}
+
+	public void crypto_sign_keypair(byte[] pk, byte[] sk, boolean isSeeded) {
+		if (!isSeeded)
+			randombytes(sk, 32);
+		curve().crypto_sign_keypair(pk, sk);
 	}
 
 	public int crypto_box_keypair(byte[] y, byte[] x, boolean isSeeded) {
@@ -86,7 +121,65 @@ public class TweetNaCl {
 	}
 
 	public int crypto_scalarmult_base(byte[] q, byte[] n) {
-		return crypto_scalarmult(q, n, _9);
+		return curve().crypto_scalarmult_base(q, n);
+	}
+
+	/*
+	 * Bulk key generation runs in tasks of this many pairs, each of which shares one field inversion
+	 */
+	private static final int KEYPAIR_BATCH_SIZE = 64;
+
+	/**
+	 * crypto_sign_keypair for every pk[i], sk[i], spread over the common ForkJoin pool. Each task of
+	 * up to 64 pairs pays for a single field inversion rather than one per pair.
+	 */
+	public void crypto_sign_keypair(byte[][] pk, byte[][] sk, boolean isSeeded) {
+		checkKeypairArrays(pk, SIGN_PUBLIC_KEY_BYTES, sk, SIGN_SECRET_KEY_BYTES);
+		ForkJoinPool.commonPool().invoke(new KeypairTask(pk, sk, isSeeded, true, 0, pk.length));
+	}
+
+	/**
+	 * crypto_box_keypair for every y[i], x[i], in bulk as crypto_sign_keypair(byte[][], byte[][], boolean)
+	 */
+	public void crypto_box_keypair(byte[][] y, byte[][] x, boolean isSeeded) {
+		checkKeypairArrays(y, BOX_PUBLIC_KEY_BYTES, x, BOX_SECRET_KEY_BYTES);
+		ForkJoinPool.commonPool().invoke(new KeypairTask(y, x, isSeeded, false, 0, y.length));
+	}
+
+	private final class KeypairTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final byte[][] pk, sk;
+		final boolean isSeeded, signing;
+		final int from, to;
+
+		KeypairTask(byte[][] pk, byte[][] sk, boolean isSeeded, boolean signing, int from, int to) {
+			this.pk = pk;
+			this.sk = sk;
+			this.isSeeded = isSeeded;
+			this.signing = signing;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > KEYPAIR_BATCH_SIZE) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new KeypairTask(pk, sk, isSeeded, signing, from, mid),
+						new KeypairTask(pk, sk, isSeeded, signing, mid, to));
+				return;
+			}
+			if (from == to)
+				return;
+			if (!isSeeded)
+				for (int i = from; i < to; ++i)
+					randombytes(sk[i], 32);
+			if (signing)
+				curve().crypto_sign_keypairs(pk, sk, from, to);
+			else
+				curve().crypto_scalarmult_base_batch(pk, sk, from, to);
+		}
 	}
 
 	public byte[] crypto_sign(byte[] message, byte[] secretSigningKey) {
@@ -98,1314 +191,732 @@ public class TweetNaCl {
 	}
 
 	public byte[] crypto_sign_open(byte[] signed, byte[] publicSigningKey) {
-		byte[] message = new byte[signed.length];
+		if (signed.length < SIGNATURE_SIZE_BYTES)
+			throw new InvalidSignatureException();
+		byte[] message = new byte[signed.length - SIGNATURE_SIZE_BYTES];
 		int res = this.crypto_sign_open(message, signed, signed.length,
 				publicSigningKey);
 		if (res != 0)
 			throw new InvalidSignatureException();
-		return Arrays.copyOfRange(message, 64, message.length);
+		return message;
+	}
+
+	/**
+	 * crypto_sign() with a key expanded beforehand, for keys which sign many messages. The output is
+	 * the same.
+	 */
+	public byte[] crypto_sign(byte[] message, Ed25519SigningKey secretSigningKey) {
+		secretSigningKey.checkAlive();
+		byte[] signedMessage = new byte[message.length + SIGNATURE_SIZE_BYTES];
+		curve().crypto_sign_detached(signedMessage, 0, message, 0, message.length, secretSigningKey.expanded,
+				secretSigningKey.publicKey, 0);
+		System.arraycopy(message, 0, signedMessage, SIGNATURE_SIZE_BYTES, message.length);
+		return signedMessage;
+	}
+
+	/**
+	 * crypto_sign_open() with a key decoded beforehand, for keys which verify many messages
+	 */
+	public byte[] crypto_sign_open(byte[] signed, Ed25519PublicKey publicSigningKey) {
+		if (signed.length < SIGNATURE_SIZE_BYTES)
+			throw new InvalidSignatureException();
+		int n = signed.length - SIGNATURE_SIZE_BYTES;
+		if (curve().crypto_sign_verify_detached(signed, 0, signed, SIGNATURE_SIZE_BYTES, n, publicSigningKey) != 0)
+			throw new InvalidSignatureException();
+		return Arrays.copyOfRange(signed, SIGNATURE_SIZE_BYTES, signed.length);
+	}
+
+	/**
+	 * The 64 byte signature on message, without a copy of the message appended as crypto_sign() does.
+	 * The message is hashed where it lies.
+	 */
+	public byte[] crypto_sign_detached(byte[] message, byte[] secretSigningKey) {
+		byte[] sig = new byte[SIGNATURE_SIZE_BYTES];
+		crypto_sign_detached(sig, 0, message, 0, message.length, secretSigningKey);
+		return sig;
+	}
+
+	/**
+	 * crypto_sign_detached() with a key expanded beforehand
+	 */
+	public byte[] crypto_sign_detached(byte[] message, Ed25519SigningKey secretSigningKey) {
+		secretSigningKey.checkAlive();
+		byte[] sig = new byte[SIGNATURE_SIZE_BYTES];
+		curve().crypto_sign_detached(sig, 0, message, 0, message.length, secretSigningKey.expanded,
+				secretSigningKey.publicKey, 0);
+		return sig;
+	}
+
+	/**
+	 * Offset form of crypto_sign_detached(): signs mLen bytes of m at mOff and writes the signature
+	 * to sig at sigOff
+	 *
+	 * @return SIGNATURE_SIZE_BYTES
+	 */
+	public int crypto_sign_detached(byte[] sig, int sigOff, byte[] m, int mOff, int mLen, byte[] secretSigningKey) {
+		checkSigningKey(secretSigningKey, SIGN_SECRET_KEY_BYTES);
+		checkBounds(m, mOff, mLen);
+		checkBounds(sig, sigOff, SIGNATURE_SIZE_BYTES);
+		curve().crypto_sign_detached(sig, sigOff, m, mOff, mLen, secretSigningKey);
+		return SIGNATURE_SIZE_BYTES;
+	}
+
+	/**
+	 * ByteBuffer form of crypto_sign_detached(). Signs all remaining bytes of m and advances its
+	 * position. Direct buffers are hashed a block at a time, never copied whole.
+	 */
+	public byte[] crypto_sign_detached(ByteBuffer m, byte[] secretSigningKey) {
+		checkSigningKey(secretSigningKey, SIGN_SECRET_KEY_BYTES);
+		byte[] sig = new byte[SIGNATURE_SIZE_BYTES];
+		if (m.hasArray())
+			curve().crypto_sign_detached(sig, 0, m.array(), m.arrayOffset() + m.position(), m.remaining(),
+					secretSigningKey);
+		else
+			curve().crypto_sign_detached(sig, 0, m, secretSigningKey);
+		m.position(m.limit());
+		return sig;
+	}
+
+	/**
+	 * Check a signature from crypto_sign_detached() on message
+	 *
+	 * @throws InvalidSignatureException if it does not verify
+	 */
+	public void crypto_sign_verify_detached(byte[] signature, byte[] message, byte[] publicSigningKey) {
+		if (signature.length != SIGNATURE_SIZE_BYTES)
+			throw new InvalidSignatureException();
+		crypto_sign_verify_detached(signature, 0, message, 0, message.length, publicSigningKey);
+	}
+
+	/**
+	 * Offset form of crypto_sign_verify_detached(): the 64 byte signature at sig[sigOff] on mLen bytes
+	 * of m at mOff
+	 *
+	 * @throws InvalidSignatureException if it does not verify
+	 */
+	public void crypto_sign_verify_detached(byte[] sig, int sigOff, byte[] m, int mOff, int mLen,
+			byte[] publicSigningKey) {
+		checkSigningKey(publicSigningKey, SIGN_PUBLIC_KEY_BYTES);
+		checkBounds(m, mOff, mLen);
+		checkBounds(sig, sigOff, SIGNATURE_SIZE_BYTES);
+		if (curve().crypto_sign_verify_detached(sig, sigOff, m, mOff, mLen, publicSigningKey) != 0)
+			throw new InvalidSignatureException();
+	}
+
+	/**
+	 * ByteBuffer form of crypto_sign_verify_detached(), over all remaining bytes of m. The position of
+	 * m is advanced whether or not the signature verifies.
+	 *
+	 * @throws InvalidSignatureException if it does not verify
+	 */
+	public void crypto_sign_verify_detached(byte[] signature, ByteBuffer m, byte[] publicSigningKey) {
+		checkSigningKey(publicSigningKey, SIGN_PUBLIC_KEY_BYTES);
+		if (signature.length != SIGNATURE_SIZE_BYTES)
+			throw new InvalidSignatureException();
+		int res;
+		if (m.hasArray())
+			res = curve().crypto_sign_verify_detached(signature, 0, m.array(), m.arrayOffset() + m.position(),
+					m.remaining(), publicSigningKey);
+		else
+			res = curve().crypto_sign_verify_detached(signature, 0, m, publicSigningKey);
+		m.position(m.limit());
+		if (res != 0)
+			throw new InvalidSignatureException();
+	}
+
+	/**
+	 * crypto_sign_verify_detached() with a key decoded beforehand
+	 *
+	 * @throws InvalidSignatureException if it does not verify
+	 */
+	public void crypto_sign_verify_detached(byte[] signature, byte[] message, Ed25519PublicKey publicSigningKey) {
+		if (signature.length != SIGNATURE_SIZE_BYTES)
+			throw new InvalidSignatureException();
+		if (curve().crypto_sign_verify_detached(signature, 0, message, 0, message.length, publicSigningKey) != 0)
+			throw new InvalidSignatureException();
+	}
+
+	/**
+	 * Verify many detached signatures at once, considerably faster than one at a time when they are
+	 * all good. Entry i is the 64 byte signature signatures[i] over messages[i] by publicKeys[i]. The
+	 * whole batch is checked with one random linear combination; if that fails, the entries are
+	 * verified individually so the bad ones can be reported.
+	 *
+	 * @return for each entry, whether its signature is valid
+	 */
+	public boolean[] crypto_sign_verify_batch(byte[][] messages, byte[][] signatures, byte[][] publicKeys) {
+		int n = messages.length;
+		if (signatures.length != n || publicKeys.length != n)
+			throw new IllegalArgumentException("Batch arrays differ in length");
+		int[] sigOff = new int[n], mOff = new int[n], mLen = new int[n];
+		byte[][] sigs = new byte[n][];
+		for (int i = 0; i < n; i++) {
+			// malformed entries are simply invalid
+			if (signatures[i].length == SIGNATURE_SIZE_BYTES && publicKeys[i].length == SIGN_PUBLIC_KEY_BYTES)
+				sigs[i] = signatures[i];
+			mLen[i] = messages[i].length;
+		}
+		boolean[] valid = new boolean[n];
+		curve().crypto_sign_verify_batch(sigs, sigOff, messages, mOff, mLen, publicKeys, valid, random);
+		return valid;
+	}
+
+	/**
+	 * Batch form of crypto_sign_open() for signed messages as crypto_sign() returns them. Only
+	 * verifies; the messages are the bytes after the first SIGNATURE_SIZE_BYTES.
+	 *
+	 * @return for each entry, whether its signature is valid
+	 * @see #crypto_sign_verify_batch(byte[][], byte[][], byte[][])
+	 */
+	public boolean[] crypto_sign_open_batch(byte[][] signedMessages, byte[][] publicKeys) {
+		int n = signedMessages.length;
+		if (publicKeys.length != n)
+			throw new IllegalArgumentException("Batch arrays differ in length");
+		int[] sigOff = new int[n], mOff = new int[n], mLen = new int[n];
+		byte[][] sigs = new byte[n][];
+		for (int i = 0; i < n; i++) {
+			if (signedMessages[i].length >= SIGNATURE_SIZE_BYTES && publicKeys[i].length == SIGN_PUBLIC_KEY_BYTES) {
+				sigs[i] = signedMessages[i];
+				mOff[i] = SIGNATURE_SIZE_BYTES;
+				mLen[i] = signedMessages[i].length - SIGNATURE_SIZE_BYTES;
+			}
+		}
+		boolean[] valid = new boolean[n];
+		curve().crypto_sign_verify_batch(sigs, sigOff, signedMessages, mOff, mLen, publicKeys, valid, random);
+		return valid;
 	}
 
 	public byte[] crypto_box(byte[] message, byte[] nonce,
 			byte[] theirPublicBoxingKey, byte[] ourSecretBoxingKey) {
-		if (nonce.length != BOX_NONCE_BYTES)
-			throw new IllegalStateException("Illegal nonce length: "
-					+ nonce.length);
-		byte[] cipherText = new byte[SECRETBOX_INTERNAL_OVERHEAD_BYTES
-				+ message.length];
-		byte[] paddedMessage = new byte[SECRETBOX_INTERNAL_OVERHEAD_BYTES
-				+ message.length];
-		System.arraycopy(message, 0, paddedMessage,
-				SECRETBOX_INTERNAL_OVERHEAD_BYTES, message.length);
-		this.crypto_box(cipherText, paddedMessage, paddedMessage.length,
-				nonce, theirPublicBoxingKey, ourSecretBoxingKey);
-		return Arrays.copyOfRange(cipherText, 16, cipherText.length);
+		byte[] cipherText = new byte[BOX_OVERHEAD_BYTES + message.length];
+		this.crypto_box(cipherText, 0, message, 0, message.length, nonce,
+				theirPublicBoxingKey, ourSecretBoxingKey);
+		return cipherText;
 	}
 
 	public byte[] crypto_box_open(byte[] cipher, byte[] nonce,
 			byte[] theirPublicBoxingKey, byte[] secretBoxingKey) {
-		byte[] paddedCipher = new byte[cipher.length + 16];
-		System.arraycopy(cipher, 0, paddedCipher, 16, cipher.length);
-		byte[] rawText = new byte[paddedCipher.length];
-		int res = this.crypto_box_open(rawText, paddedCipher,
-				paddedCipher.length, nonce, theirPublicBoxingKey,
-				secretBoxingKey);
-		if (res != 0)
+		if (cipher.length < BOX_OVERHEAD_BYTES)
+			throw new InvalidCipherTextException();
+		byte[] rawText = new byte[cipher.length - BOX_OVERHEAD_BYTES];
+		this.crypto_box_open(rawText, 0, cipher, 0, cipher.length, nonce,
+				theirPublicBoxingKey, secretBoxingKey);
+		return rawText;
+	}
+
+	/**
+	 * Box mLen bytes of m starting at mOff into c starting at cOff. The output is the 16 byte
+	 * authenticator followed by the cipher text, exactly as crypto_box(byte[],...) returns it, so c must
+	 * have room for mLen + BOX_OVERHEAD_BYTES. Nothing is copied or padded along the way.
+	 *
+	 * Encryption in place works: c may be the same array as m as long as cOff + BOX_OVERHEAD_BYTES <= mOff
+	 *
+	 * @return the number of bytes written to c
+	 */
+	public int crypto_box(byte[] c, int cOff, byte[] m, int mOff, int mLen, byte[] nonce,
+			byte[] theirPublicBoxingKey, byte[] ourSecretBoxingKey) {
+		byte[] k = new byte[BOX_SHARED_KEY_BYTES];
+		crypto_box_beforenm(k, theirPublicBoxingKey, ourSecretBoxingKey);
+		return secretbox_xsalsa20poly1305(c, cOff, m, mOff, mLen, nonce, k);
+	}
+
+	/**
+	 * Unbox cLen bytes of c (authenticator then cipher text) into m at mOff. m needs room for
+	 * cLen - BOX_OVERHEAD_BYTES. Decryption in place works as long as mOff <= cOff + BOX_OVERHEAD_BYTES.
+	 * Nothing is written to m unless the authenticator verifies.
+	 *
+	 * @return the number of bytes written to m
+	 * @throws InvalidCipherTextException if the authenticator does not verify
+	 */
+	public int crypto_box_open(byte[] m, int mOff, byte[] c, int cOff, int cLen, byte[] nonce,
+			byte[] theirPublicBoxingKey, byte[] secretBoxingKey) {
+		byte[] k = new byte[BOX_SHARED_KEY_BYTES];
+		crypto_box_beforenm(k, theirPublicBoxingKey, secretBoxingKey);
+		int res = secretbox_xsalsa20poly1305_open(m, mOff, c, cOff, cLen, nonce, k);
+		if (res < 0)
+			throw new InvalidCipherTextException();
+		return res;
+	}
+
+	/**
+	 * ByteBuffer form of crypto_box. All remaining bytes of m are boxed into c, and the positions of both
+	 * buffers are advanced. Heap buffers are worked on directly, direct buffers are streamed through a
+	 * small fixed-size scratch array, so large payloads are never copied whole.
+	 *
+	 * @return the number of bytes written to c
+	 * @throws BufferOverflowException if c does not have room for m.remaining() + BOX_OVERHEAD_BYTES
+	 */
+	public int crypto_box(ByteBuffer c, ByteBuffer m, byte[] nonce,
+			byte[] theirPublicBoxingKey, byte[] ourSecretBoxingKey) {
+		byte[] k = new byte[BOX_SHARED_KEY_BYTES];
+		crypto_box_beforenm(k, theirPublicBoxingKey, ourSecretBoxingKey);
+		return secretbox_xsalsa20poly1305(c, m, nonce, k);
+	}
+
+	/**
+	 * ByteBuffer form of crypto_box_open. All remaining bytes of c are unboxed into m. If the
+	 * authenticator fails, neither buffer is modified.
+	 *
+	 * @return the number of bytes written to m
+	 * @throws InvalidCipherTextException if the authenticator does not verify
+	 * @throws BufferOverflowException if m does not have room for c.remaining() - BOX_OVERHEAD_BYTES
+	 */
+	public int crypto_box_open(ByteBuffer m, ByteBuffer c, byte[] nonce,
+			byte[] theirPublicBoxingKey, byte[] secretBoxingKey) {
+		byte[] k = new byte[BOX_SHARED_KEY_BYTES];
+		crypto_box_beforenm(k, theirPublicBoxingKey, secretBoxingKey);
+		int res = secretbox_xsalsa20poly1305_open(m, c, nonce, k);
+		if (res < 0)
+			throw new InvalidCipherTextException();
+		return res;
+	}
+
+	/**
+	 * Do the expensive part of crypto_box once per pair of keys: the X25519 scalar multiplication
+	 * and the HSalsa20 hash of its result. The returned key can be passed to crypto_box_afternm() and
+	 * crypto_box_open_afternm() as many times as required. Both sides of the conversation compute the
+	 * same shared key from their own secret key and the other party's public key.
+	 *
+	 * @param theirPublicBoxingKey
+	 * @param ourSecretBoxingKey
+	 * @return an opaque shared key
+	 */
+	public SharedKey crypto_box_beforenm(byte[] theirPublicBoxingKey, byte[] ourSecretBoxingKey) {
+		byte[] k = new byte[BOX_SHARED_KEY_BYTES];
+		crypto_box_beforenm(k, theirPublicBoxingKey, ourSecretBoxingKey);
+		return new SharedKey(k);
+	}
+
+	/**
+	 * Same output as crypto_box(), but using a precomputed shared key
+	 *
+	 * @param message
+	 * @param nonce
+	 * @param key from crypto_box_beforenm()
+	 * @return the boxed message
+	 */
+	public byte[] crypto_box_afternm(byte[] message, byte[] nonce, SharedKey key) {
+		byte[] cipherText = new byte[BOX_OVERHEAD_BYTES + message.length];
+		secretbox_xsalsa20poly1305(cipherText, 0, message, 0, message.length, nonce, key.bytes());
+		return cipherText;
+	}
+
+	/**
+	 * Same as crypto_box_open(), but using a precomputed shared key
+	 *
+	 * @param cipher
+	 * @param nonce
+	 * @param key from crypto_box_beforenm()
+	 * @return the unboxed message
+	 * @throws InvalidCipherTextException if the authenticator does not verify
+	 */
+	public byte[] crypto_box_open_afternm(byte[] cipher, byte[] nonce, SharedKey key) {
+		if (cipher.length < BOX_OVERHEAD_BYTES)
 			throw new InvalidCipherTextException();
-		return Arrays.copyOfRange(rawText, 32, rawText.length);
+		byte[] rawText = new byte[cipher.length - BOX_OVERHEAD_BYTES];
+		crypto_box_open_afternm(rawText, 0, cipher, 0, cipher.length, nonce, key);
+		return rawText;
+	}
+
+	/**
+	 * Offset form of crypto_box_afternm(), same layout and in-place rules as the offset form of crypto_box()
+	 *
+	 * @return the number of bytes written to c
+	 */
+	public int crypto_box_afternm(byte[] c, int cOff, byte[] m, int mOff, int mLen, byte[] nonce, SharedKey key) {
+		return secretbox_xsalsa20poly1305(c, cOff, m, mOff, mLen, nonce, key.bytes());
+	}
+
+	/**
+	 * Offset form of crypto_box_open_afternm(), same layout and in-place rules as the offset form of crypto_box_open()
+	 *
+	 * @return the number of bytes written to m
+	 * @throws InvalidCipherTextException if the authenticator does not verify
+	 */
+	public int crypto_box_open_afternm(byte[] m, int mOff, byte[] c, int cOff, int cLen, byte[] nonce, SharedKey key) {
+		int res = secretbox_xsalsa20poly1305_open(m, mOff, c, cOff, cLen, nonce, key.bytes());
+		if (res < 0)
+			throw new InvalidCipherTextException();
+		return res;
+	}
+
+	/**
+	 * ByteBuffer form of crypto_box_afternm()
+	 *
+	 * @return the number of bytes written to c
+	 */
+	public int crypto_box_afternm(ByteBuffer c, ByteBuffer m, byte[] nonce, SharedKey key) {
+		return secretbox_xsalsa20poly1305(c, m, nonce, key.bytes());
+	}
+
+	/**
+	 * ByteBuffer form of crypto_box_open_afternm()
+	 *
+	 * @return the number of bytes written to m
+	 * @throws InvalidCipherTextException if the authenticator does not verify
+	 */
+	public int crypto_box_open_afternm(ByteBuffer m, ByteBuffer c, byte[] nonce, SharedKey key) {
+		int res = secretbox_xsalsa20poly1305_open(m, c, nonce, key.bytes());
+		if (res < 0)
+			throw new InvalidCipherTextException();
+		return res;
 	}
 
 	public byte[] secretbox(byte[] mesage, byte[] nonce, byte[] key) {
-		byte[] m = new byte[SECRETBOX_INTERNAL_OVERHEAD_BYTES + mesage.length];
-		byte[] c = new byte[m.length];
-		System.arraycopy(mesage, 0, m, SECRETBOX_INTERNAL_OVERHEAD_BYTES,
-				mesage.length);
-		crypto_secretbox(c, m, m.length, nonce, key);
-		return Arrays.copyOfRange(c, SECRETBOX_OVERHEAD_BYTES, c.length);
+		byte[] c = new byte[SECRETBOX_OVERHEAD_BYTES + mesage.length];
+		secretbox(c, 0, mesage, 0, mesage.length, nonce, key);
+		return c;
 	}
 
 	public byte[] secretbox_open(byte[] cipher, byte[] nonce, byte[] key) {
-		byte[] c = new byte[SECRETBOX_OVERHEAD_BYTES + cipher.length];
-		byte[] m = new byte[c.length];
-		System.arraycopy(cipher, 0, c, SECRETBOX_OVERHEAD_BYTES, cipher.length);
-		if (c.length < 32)
+		if (cipher.length < SECRETBOX_OVERHEAD_BYTES)
 			throw new IllegalStateException("Cipher too small!");
-		if (crypto_secretbox_open(m, c, c.length, nonce, key) != 0)
+		byte[] m = new byte[cipher.length - SECRETBOX_OVERHEAD_BYTES];
+		secretbox_open(m, 0, cipher, 0, cipher.length, nonce, key);
+		return m;
+	}
+
+	/**
+	 * Offset form of secretbox(). Writes the authenticator and then the cipher text, mLen + SECRETBOX_OVERHEAD_BYTES
+	 * bytes in all, to c at cOff. c may be the same array as m as long as cOff + SECRETBOX_OVERHEAD_BYTES <= mOff
+	 *
+	 * @return the number of bytes written to c
+	 */
+	public int secretbox(byte[] c, int cOff, byte[] m, int mOff, int mLen, byte[] nonce, byte[] key) {
+		checkSecretBoxKey(key);
+		return secretbox_xsalsa20poly1305(c, cOff, m, mOff, mLen, nonce, key);
+	}
+
+	/**
+	 * Offset form of secretbox_open(). c may be the same array as m as long as mOff <= cOff + SECRETBOX_OVERHEAD_BYTES
+	 *
+	 * @return the number of bytes written to m
+	 */
+	public int secretbox_open(byte[] m, int mOff, byte[] c, int cOff, int cLen, byte[] nonce, byte[] key) {
+		checkSecretBoxKey(key);
+		if (cLen < SECRETBOX_OVERHEAD_BYTES)
+			throw new IllegalStateException("Cipher too small!");
+		int res = secretbox_xsalsa20poly1305_open(m, mOff, c, cOff, cLen, nonce, key);
+		if (res < 0)
 			throw new IllegalStateException("Invalid encryption!");
-		return Arrays.copyOfRange(m, SECRETBOX_INTERNAL_OVERHEAD_BYTES,
-				m.length);
-	}
-
-	private static final byte[] _0 = new byte[16], _9 = new byte[32];
-	static {
-		_9[0] = 9;
-	}
-	private static final int GF_LEN = 16;
-	private static final long[] gf0 = new long[GF_LEN];
-	private static final long[] gf1 = new long[GF_LEN];
-	static {
-		gf1[0] = 1;
-	}
-	private static final long[] _121665 = new long[GF_LEN];
-	static {
-		_121665[0] = 0xDB41;
-		_121665[1] = 1;
-	}
-	private final static long[] 
-			D = new long[] { 0x78a3, 0x1359, 0x4dca, 0x75eb,
-					0xd8ab, 0x4141, 0x0a4d, 0x0070, 0xe898, 0x7779, 0x4079, 0x8cc7,
-					0xfe73, 0x2b6f, 0x6cee, 0x5203 }, 
-			D2 = new long[] { 0xf159, 0x26b2,
-					0x9b94, 0xebd6, 0xb156, 0x8283, 0x149a, 0x00e0, 0xd130, 0xeef3,
-					0x80f2, 0x198e, 0xfce7, 0x56df, 0xd9dc, 0x2406 }, 
-			X = new long[] {
-					0xd51a, 0x8f25, 0x2d60, 0xc956, 0xa7b2, 0x9525, 0xc760, 0x692c,
-					0xdc5c, 0xfdd6, 0xe231, 0xc0a4, 0x53fe, 0xcd6e, 0x36d3, 0x2169 },
-			Y = new long[] { 0x6658, 0x6666, 0x6666, 0x6666, 0x6666, 0x6666,
-					0x6666, 0x6666, 0x6666, 0x6666, 0x6666, 0x6666, 0x6666,
-					0x6666, 0x6666, 0x6666 }, 
-			I = new long[] { 0xa0b0, 0x4a0e,
-					0x1b27, 0xc4ee, 0xe478, 0xad2f, 0x1806, 0x2f43, 0xd7a7,
-					0x3dfb, 0x0099, 0x2b4d, 0xdf0b, 0x4fc1, 0x2480, 0x2b83 };
-
-	private int L32(int x, int c) {
-		return (x << c) | (x >>> (32 - c));
-	}
-
+		return res;
+	}
+
+	/**
+	 * ByteBuffer form of secretbox(). All remaining bytes of m are boxed into c and both positions advance.
+	 *
+	 * @return the number of bytes written to c
+	 * @throws BufferOverflowException if c does not have room for m.remaining() + SECRETBOX_OVERHEAD_BYTES
+	 */
+	public int secretbox(ByteBuffer c, ByteBuffer m, byte[] nonce, byte[] key) {
+		checkSecretBoxKey(key);
+		return secretbox_xsalsa20poly1305(c, m, nonce, key);
+	}
+
+	/**
+	 * ByteBuffer form of secretbox_open(). If the authenticator fails, neither buffer is modified.
+	 *
+	 * @return the number of bytes written to m
+	 * @throws BufferOverflowException if m does not have room for c.remaining() - SECRETBOX_OVERHEAD_BYTES
+	 */
+	public int secretbox_open(ByteBuffer m, ByteBuffer c, byte[] nonce, byte[] key) {
+		checkSecretBoxKey(key);
+		if (c.remaining() < SECRETBOX_OVERHEAD_BYTES)
+			throw new IllegalStateException("Cipher too small!");
+		int res = secretbox_xsalsa20poly1305_open(m, c, nonce, key);
+		if (res < 0)
+			throw new IllegalStateException("Invalid encryption!");
+		return res;
+	}
+
+	/**
+	 * crypto_auth: the 32 byte HMAC-SHA-512-256 tag on message under a 32 byte key. For many messages
+	 * under the same key, an HmacSHA512256 object kept for the key is cheaper.
+	 */
+	public byte[] crypto_auth(byte[] message, byte[] key) {
+		checkAuthKey(key);
+		byte[] tag = new byte[crypto_auth_hmacsha512256_tweet_BYTES];
+		HmacSHA512256 mac = new HmacSHA512256(key);
+		mac.update(message, 0, message.length);
+		mac.doFinal(tag, 0);
+		return tag;
+	}
+
+	/**
+	 * crypto_auth_verify: whether tag is the crypto_auth tag on message under key. Constant time.
+	 */
+	public boolean crypto_auth_verify(byte[] tag, byte[] message, byte[] key) {
+		checkAuthKey(key);
+		if (tag.length != crypto_auth_hmacsha512256_tweet_BYTES)
+			return false;
+		HmacSHA512256 mac = new HmacSHA512256(key);
+		mac.update(message, 0, message.length);
+		return mac.verify(tag, 0);
+	}
+
+	private static final byte[] _0 = new byte[16];
+
+	/**
+	 * An instance method as it always was, so code compiled against earlier versions links; new code
+	 * can call LittleEndian.ld32 directly
+	 */
 	public int ld32(byte[] x, int off) {
-		int u = x[off + 3] & 0xff;
-		u = (u << 8) | (x[off + 2] & 0xff);
-		u = (u << 8) | (x[off + 1] & 0xff);
-		return (u << 8) | (x[off + 0] & 0xff);
+		return LittleEndian.ld32(x, off);
 	}
 
-	private void st32(byte[] x, int off, int u) {
-		int i;
-		for (i = 0; i < 4; ++i) {
-			x[off + i] = (byte) u;
-			u >>= 8;
-		}
-	}
-
-	private int vn(byte[] x, int xOff, byte[] y, int n) {
+	private static int vn(byte[] x, int xOff, byte[] y, int n) {
 		int i, d = 0;
 		for (i = 0; i < n; ++i)
 			d |= 0xff & (x[xOff + i] ^ y[i]);
 		return (1 & ((d - 1) >> 8)) - 1;
 	}
 
-	private int crypto_verify_16(byte[] x, int xOff, byte[] y) {
+	private static int crypto_verify_16(byte[] x, int xOff, byte[] y) {
 		return vn(x, xOff, y, 16);
 	}
 
-	private int crypto_verify_32(byte[] x, byte[] y) {
-		return vn(x, 0, y, 32);
-	}
-
-	private void core(byte[] out, byte[] in, byte[] k, byte[] c, int h) {
-		int[] w = new int[16], x = new int[16], y = new int[16], t = new int[4];
-		int i, j, m;
-
-		for (i = 0; i < 4; ++i) {
-			x[5 * i] = ld32(c, 4 * i);
-			x[1 + i] = ld32(k, 4 * i);
-			x[6 + i] = ld32(in, 4 * i);
-			x[11 + i] = ld32(k, 16 + 4 * i);
-		}
-
-		for (i = 0; i < 16; ++i)
-			y[i] = x[i];
-
-		for (i = 0; i < 20; ++i) {
-			for (j = 0; j < 4; ++j) {
-				for (m = 0; m < 4; ++m)
-					t[m] = x[(5 * j + 4 * m) % 16];
-				t[1] ^= L32(t[0] + t[3], 7);
-				t[2] ^= L32(t[1] + t[0], 9);
-				t[3] ^= L32(t[2] + t[1], 13);
-				t[0] ^= L32(t[3] + t[2], 18);
-				for (m = 0; m < 4; ++m)
-					w[4 * j + (j + m) % 4] = t[m];
-			}
-			for (m = 0; m < 16; ++m)
-				x[m] = w[m];
-		}
-
-		if (h != 0) {
-			for (i = 0; i < 16; ++i)
-				x[i] += y[i];
-			for (i = 0; i < 4; ++i) {
-				x[5 * i] -= ld32(c, 4 * i);
-				x[6 + i] -= ld32(in, 4 * i);
-			}
-			for (i = 0; i < 4; ++i) {
-				st32(out, 4 * i, x[5 * i]);
-				st32(out, 16 + 4 * i, x[6 + i]);
-			}
-		} else
-			for (i = 0; i < 16; ++i)
-				st32(out, 4 * i, x[i] + y[i]);
-	}
-
-	private int crypto_core_salsa20(byte[] out, byte[] in, byte[] k,
-			byte[] c) {
-		core(out, in, k, c, 0);
-		return 0;
-	}
-
-	private int crypto_core_hsalsa20(byte[] out, byte[] in, byte[] k,
-			byte[] c) {
-		core(out, in, k, c, 1);
-		return 0;
-	}
-
-	private byte[] sigma = { 101, 120, 112, 97, 110, 100, 32, 51, 50,
-			45, 98, 121, 116, 101, 32, 107 };
-
-	private int crypto_stream_salsa20_xor(byte[] c, byte[] m, long b,
-			byte[] n, int nOff, byte[] k) {
-		byte[] z = new byte[16], x = new byte[64];
-		int u, i;
-		if (b == 0)
-			return 0;
-		for (i = 0; i < 16; ++i)
-			z[i] = 0;
-		for (i = 0; i < 8; ++i)
-			z[i] = n[nOff + i];
-		int cOff = 0;
-		int mOff = 0;
-		while (b >= 64) {
-			crypto_core_salsa20(x, z, k, sigma);
-			for (i = 0; i < 64; ++i)
-				c[cOff + i] = (byte) ((m != null ? m[mOff + i] : 0) ^ x[i]);
-			u = 1;
-			for (i = 8; i < 16; ++i) {
-				u += 0xff & z[i];
-				z[i] = (byte) u;
-				u >>= 8;
-			}
-			b -= 64;
-			cOff += 64;
-			if (m != null)
-				mOff += 64;
-		}
-		if (b != 0) {
-			crypto_core_salsa20(x, z, k, sigma);
-			for (i = 0; i < b; i++)
-				c[cOff + i] = (byte) ((m != null ? m[mOff + i] : 0) ^ x[i]);
-		}
-		return 0;
-	}
-
-	private int crypto_stream_salsa20(byte[] c, long d, byte[] n,
-			int nOff, byte[] k) {
-		return crypto_stream_salsa20_xor(c, null, d, n, nOff, k);
-	}
-
-	private int crypto_stream(byte[] c, long d, byte[] n, byte[] k) {
+	/*
+	 * The XSalsa20 keystream for the 24 byte nonce n under k, its first block already taken into block0:
+	 * the Poly1305 key, then the keystream for the first 32 message bytes
+	 */
+	private static SalsaEngine xsalsa20(byte[] n, byte[] k, byte[] block0) {
 		byte[] s = new byte[32];
-		crypto_core_hsalsa20(s, n, k, sigma);
-		return crypto_stream_salsa20(c, d, n, 16, s);
+		SalsaEngine.hsalsa20(s, 0, k, 0, n, 0);
+		SalsaEngine salsa = new SalsaEngine().init(s, 0, n, 16);
+		Arrays.fill(s, (byte) 0);
+		salsa.xor(block0, 0, null, 0, 64);
+		return salsa;
 	}
 
-	private int crypto_stream_xor(byte[] c, byte[] m, long d, byte[] n,
-			byte[] k) {
-		byte[] s = new byte[32];
-		crypto_core_hsalsa20(s, n, k, sigma);
-		return crypto_stream_salsa20_xor(c, m, d, n, 16, s);
-	}
-
-	private void add1305(int[] h, int[] c) {
-		int j, u = 0;
-		for (j = 0; j < 17; ++j) {
-			u += h[j] + c[j];
-			h[j] = u & 255;
-			u >>= 8;
-		}
-	}
-
-	private final static int[] minusp = new int[] { 5, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 252 };
-
-	private int crypto_onetimeauth(byte[] out, int outOff, byte[] m, int mOff, long n, byte[] k) {
-		int s, i, j, u;
-		int[] x = new int[17], r = new int[17], h = new int[17], c = new int[17], g = new int[17];
-
-		for (j = 0; j < 17; ++j)
-			r[j] = h[j] = 0;
-		for (j = 0; j < 16; ++j)
-			r[j] = 0xff & k[j];
-		r[3] &= 15;
-		r[4] &= 252;
-		r[7] &= 15;
-		r[8] &= 252;
-		r[11] &= 15;
-		r[12] &= 252;
-		r[15] &= 15;
-
-		while (n > 0) {
-			for (j = 0; j < 17; ++j)
-				c[j] = 0;
-			for (j = 0; (j < 16) && (j < n); ++j)
-				c[j] = 0xff & m[mOff + j];
-			c[j] = 1;
-			mOff += j;
-			n -= j;
-			add1305(h, c);
-			for (i = 0; i < 17; ++i) {
-				x[i] = 0;
-				for (j = 0; j < 17; ++j)
-					x[i] += h[j] * ((j <= i) ? r[i - j] : 320 * r[i + 17 - j]);
-			}
-			for (i = 0; i < 17; ++i)
-				h[i] = x[i];
-			u = 0;
-			for (j = 0; j < 16; ++j) {
-				u += h[j];
-				h[j] = u & 255;
-				u >>= 8;
-			}
-			u += h[16];
-			h[16] = u & 3;
-			u = 5 * (u >> 2);
-			for (j = 0; j < 16; ++j) {
-				u += h[j];
-				h[j] = u & 255;
-				u >>= 8;
-			}
-			u += h[16];
-			h[16] = u;
-		}
-
-		for (j = 0; j < 17; ++j)
-			g[j] = h[j];
-		add1305(h, minusp);
-		s = -(h[16] >> 7);
-		for (j = 0; j < 17; ++j)
-			h[j] ^= s & (g[j] ^ h[j]);
-
-		for (j = 0; j < 16; ++j)
-			c[j] = 0xff & k[j + 16];
-		c[16] = 0;
-		add1305(h, c);
-		for (j = 0; j < 16; ++j)
-			out[outOff + j] = (byte) h[j];
+	private static int crypto_onetimeauth(byte[] out, int outOff, byte[] m, int mOff, int n, byte[] k) {
+		Poly1305 poly = new Poly1305(k);
+		poly.update(m, mOff, n);
+		poly.doFinal(out, outOff);
 		return 0;
 	}
 
-	private int crypto_onetimeauth_verify(byte[] h, int hOff, byte[] m, int mOff, long n, byte[] k) {
+	private static int crypto_onetimeauth_verify(byte[] h, int hOff, byte[] m, int mOff, int n, byte[] k) {
 		byte[] x = new byte[16];
 		crypto_onetimeauth(x, 0, m, mOff, n, k);
 		return crypto_verify_16(h, hOff, x);
 	}
 
-	private int crypto_secretbox(byte[] c, byte[] m, long d, byte[] n, byte[] k) {
-		int i;
-		if (d < 32)
-			return -1;
-		crypto_stream_xor(c, m, d, n, k);
-		crypto_onetimeauth(c, 16, c, 32, d - 32, c);
-		for (i = 0; i < 16; ++i)
-			c[i] = 0;
-		return 0;
-	}
-
-	private int crypto_secretbox_open(byte[] m, byte[] c, long d, byte[] n, byte[] k) {
-		int i;
-		byte[] x = new byte[32];
-		if (d < 32)
+	/*
+	 * Buffers larger than this are streamed through a scratch array of this size. A multiple of
+	 * both the Salsa20 block and the Poly1305 block.
+	 */
+	private static final int SECRETBOX_CHUNK_BYTES = 4096;
+
+	/*
+	 * crypto_secretbox without the 32 zero bytes of padding the C API wants in front of the message.
+	 * The first Salsa20 block under the HSalsa20 subkey supplies the one-time Poly1305 key in its first
+	 * half and encrypts the first 32 bytes of the message with its second half; the rest of the message
+	 * continues from block 1. Output is the 16 byte tag followed by the cipher text.
+	 */
+	private int secretbox_xsalsa20poly1305(byte[] c, int cOff, byte[] m, int mOff, int mLen, byte[] n, byte[] k) {
+		checkNonce(n);
+		checkBounds(m, mOff, mLen);
+		checkBounds(c, cOff, mLen + 16);
+		byte[] block0 = new byte[64];
+		SalsaEngine salsa = xsalsa20(n, k, block0);
+		secretbox_xor(c, cOff + 16, m, mOff, mLen, 0, block0, salsa);
+		crypto_onetimeauth(c, cOff, c, cOff + 16, mLen, block0);
+		return mLen + 16;
+	}
+
+	private int secretbox_xsalsa20poly1305_open(byte[] m, int mOff, byte[] c, int cOff, int cLen, byte[] n, byte[] k) {
+		checkNonce(n);
+		if (cLen < 16)
 			return -1;
-		crypto_stream(x, 32, n, k);
-		if (crypto_onetimeauth_verify(c, 16, c, 32, d - 32, x) != 0)
+		checkBounds(c, cOff, cLen);
+		checkBounds(m, mOff, cLen - 16);
+		byte[] block0 = new byte[64];
+		SalsaEngine salsa = xsalsa20(n, k, block0);
+		if (crypto_onetimeauth_verify(c, cOff, c, cOff + 16, cLen - 16, block0) != 0)
 			return -1;
-		crypto_stream_xor(m, c, d, n, k);
-		for (i = 0; i < 32; ++i)
-			m[i] = 0;
-		return 0;
-	}
-
-	private void set25519(long[] /* gf */r, long[] /* gf */a) {
-		int i;
-		for (i = 0; i < 16; ++i)
-			r[i] = a[i];
-	}
-
-	private void car25519(long[] /* gf */o, int oOff) {
-		for (int i = 0; i < 16; ++i) {
-			o[oOff + i] += (1 << 16);
-			long c = o[oOff + i] >> 16;
-			o[oOff + (i + 1) * (i < 15 ? 1 : 0)] += c - 1 + 37 * (c - 1)
-					* (i == 15 ? 1 : 0);
-			o[oOff + i] -= c << 16;
+		secretbox_xor(m, mOff, c, cOff + 16, cLen - 16, 0, block0, salsa);
+		return cLen - 16;
+	}
+
+	private int secretbox_xsalsa20poly1305(ByteBuffer c, ByteBuffer m, byte[] n, byte[] k) {
+		int i, l, chunk, tagPos, mLen = m.remaining();
+		long p;
+		if (c.isReadOnly())
+			throw new ReadOnlyBufferException();
+		if (c.remaining() < mLen + 16)
+			throw new BufferOverflowException();
+		if (c.hasArray() && m.hasArray()) {
+			int res = secretbox_xsalsa20poly1305(c.array(), c.arrayOffset() + c.position(),
+					m.array(), m.arrayOffset() + m.position(), mLen, n, k);
+			m.position(m.limit());
+			c.position(c.position() + res);
+			return res;
 		}
-	}
 
-	private void sel25519(long[] /* gf */p, long[] /* gf */q, int b) {
-		long t, c = ~(b - 1);
-		int i;
-		for (i = 0; i < 16; ++i) {
-			t = c & (p[i] ^ q[i]);
-			p[i] ^= t;
-			q[i] ^= t;
+		checkNonce(n);
+		byte[] block0 = new byte[64], tag = new byte[16];
+		byte[] buf = new byte[SECRETBOX_CHUNK_BYTES];
+		SalsaEngine salsa = xsalsa20(n, k, block0);
+		Poly1305 poly = new Poly1305(block0);
+
+		tagPos = c.position();
+		c.position(tagPos + 16);
+		// the first chunk is short by 32 so that the later ones start on a Salsa20 block
+		chunk = SECRETBOX_CHUNK_BYTES - 32;
+		p = 0;
+		while (m.hasRemaining()) {
+			l = Math.min(chunk, m.remaining());
+			m.get(buf, 0, l);
+			secretbox_xor(buf, 0, buf, 0, l, p, block0, salsa);
+			poly.update(buf, 0, l);
+			c.put(buf, 0, l);
+			p += l;
+			chunk = SECRETBOX_CHUNK_BYTES;
 		}
+		poly.doFinal(tag, 0);
+		for (i = 0; i < 16; ++i)
+			c.put(tagPos + i, tag[i]);
+		return mLen + 16;
 	}
 
-	private void pack25519(byte[] o, long[] /* gf */n, int nOff) {
-		int i, j, b;
-		long[] /* gf */m = new long[GF_LEN], t = new long[GF_LEN];
-		for (i = 0; i < 16; ++i)
-			t[i] = n[nOff + i];
-		car25519(t, 0);
-		car25519(t, 0);
-		car25519(t, 0);
-		for (j = 0; j < 2; ++j) {
-			m[0] = t[0] - 0xffed;
-			for (i = 1; i < 15; i++) {
-				m[i] = t[i] - 0xffff - ((m[i - 1] >> 16) & 1);
-				m[i - 1] &= 0xffff;
+	private int secretbox_xsalsa20poly1305_open(ByteBuffer m, ByteBuffer c, byte[] n, byte[] k) {
+		int l, chunk, cLen = c.remaining();
+		long p;
+		if (cLen < 16)
+			return -1;
+		if (m.isReadOnly())
+			throw new ReadOnlyBufferException();
+		if (m.remaining() < cLen - 16)
+			throw new BufferOverflowException();
+		if (c.hasArray() && m.hasArray()) {
+			int res = secretbox_xsalsa20poly1305_open(m.array(), m.arrayOffset() + m.position(),
+					c.array(), c.arrayOffset() + c.position(), cLen, n, k);
+			if (res >= 0) {
+				c.position(c.limit());
+				m.position(m.position() + res);
 			}
-			m[15] = t[15] - 0x7fff - ((m[14] >> 16) & 1);
-			b = (int) ((m[15] >> 16) & 1);
-			m[14] &= 0xffff;
-			sel25519(t, m, 1 - b);
+			return res;
 		}
-		for (i = 0; i < 16; ++i) {
-			o[2 * i] = (byte) t[i];
-			o[2 * i + 1] = (byte) (t[i] >> 8);
-		}
-	}
 
-	private int neq25519(long[] /* gf */a, long[] /* gf */b) {
-		byte[] c = new byte[32], d = new byte[32];
-		pack25519(c, a, 0);
-		pack25519(d, b, 0);
-		return crypto_verify_32(c, d);
+		checkNonce(n);
+		byte[] block0 = new byte[64], tag = new byte[16], x = new byte[16];
+		byte[] buf = new byte[SECRETBOX_CHUNK_BYTES];
+		SalsaEngine salsa = xsalsa20(n, k, block0);
+
+		// authenticate everything before a single byte of plain text is released
+		ByteBuffer in = c.duplicate();
+		in.get(tag);
+		Poly1305 poly = new Poly1305(block0);
+		poly.update(in);
+		poly.doFinal(x, 0);
+		if (crypto_verify_16(tag, 0, x) != 0)
+			return -1;
+
+		c.position(c.position() + 16);
+		chunk = SECRETBOX_CHUNK_BYTES - 32;
+		p = 0;
+		while (c.hasRemaining()) {
+			l = Math.min(chunk, c.remaining());
+			c.get(buf, 0, l);
+			secretbox_xor(buf, 0, buf, 0, l, p, block0, salsa);
+			m.put(buf, 0, l);
+			p += l;
+			chunk = SECRETBOX_CHUNK_BYTES;
+		}
+		return cLen - 16;
 	}
 
-	private byte par25519(long[] /* gf */a) {
-		byte[] d = new byte[32];
-		pack25519(d, a, 0);
-		return (byte) (d[0] & 1);
+	/*
+	 * xor len bytes at message position p with the secretbox keystream. Message byte p sits at byte
+	 * 32 + p of the Salsa20 keystream; the first 32 of those came in block0, the rest come from salsa,
+	 * which is called in message order and so is always at the right place.
+	 */
+	private static void secretbox_xor(byte[] out, int outOff, byte[] in, int inOff, int len, long p,
+			byte[] block0, SalsaEngine salsa) {
+		int i = 0;
+		for (; i < len && p + i < 32; ++i)
+			out[outOff + i] = (byte) (in[inOff + i] ^ block0[32 + (int) p + i]);
+		salsa.xor(out, outOff + i, in, inOff + i, len - i);
 	}
 
-	private void unpack25519(long[] /* gf */o, byte[] n) {
-		int i;
-		for (i = 0; i < 16; ++i)
-			o[i] = (0xff & n[2 * i]) + ((0xffL & n[2 * i + 1]) << 8);
-		o[15] &= 0x7fff;
+	private static void checkNonce(byte[] n) {
+		if (n.length != SECRETBOX_NONCE_BYTES)
+			throw new IllegalStateException("Illegal nonce length: " + n.length);
 	}
 
-	private void A(long[] /* gf */o, long[] /* gf */a, long[] /* gf */b) {
-		int i;
-		for (i = 0; i < 16; ++i)
-			o[i] = a[i] + b[i];
+	private static void checkSecretBoxKey(byte[] k) {
+		if (k.length != SECRETBOX_KEY_BYTES)
+			throw new IllegalStateException("Illegal key length: " + k.length);
 	}
 
-	private void Z(long[] /* gf */o, long[] /* gf */a, long[] /* gf */b) {
-		int i;
-		for (i = 0; i < 16; ++i)
-			o[i] = a[i] - b[i];
-	}
-
-	private void M(long[] /* gf */o, int oOff, long[] /* gf */a,
-			int aOff, long[] /* gf */b, int bOff) {
-		long[] t = new long[31];
-		for (int i = 0; i < 31; ++i)
-			t[i] = 0;
-		for (int i = 0; i < 16; ++i)
-			for (int j = 0; j < 16; ++j)
-				t[i + j] += a[aOff + i] * b[bOff + j];
-		for (int i = 0; i < 15; ++i)
-			t[i] += 38 * t[i + 16];
-		for (int i = 0; i < 16; ++i)
-			o[oOff + i] = t[i];
-		car25519(o, oOff);
-		car25519(o, oOff);
-	}
-
-	private void S(long[] /* gf */o, long[] /* gf */a) {
-		M(o, 0, a, 0, a, 0);
-	}
-
-	private void inv25519(long[] /* gf */o, int oOff, long[] /* gf */i,
-			int iOff) {
-		long[] /* gf */c = new long[GF_LEN];
-		int a;
-		for (a = 0; a < 16; ++a)
-			c[a] = i[iOff + a];
-		for (a = 253; a >= 0; a--) {
-			S(c, c);
-			if (a != 2 && a != 4)
-				M(c, 0, c, 0, i, iOff);
-		}
-		for (a = 0; a < 16; ++a)
-			o[oOff + a] = c[a];
-	}
-
-	private void pow2523(long[] /* gf */o, long[] /* gf */i) {
-		long[] /* gf */c = new long[GF_LEN];
-		int a;
-		for (a = 0; a < 16; ++a)
-			c[a] = i[a];
-		for (a = 250; a >= 0; a--) {
-			S(c, c);
-			if (a != 1)
-				M(c, 0, c, 0, i, 0);
+	private static void checkKeypairArrays(byte[][] pk, int pkLen, byte[][] sk, int skLen) {
+		if (pk.length != sk.length)
+			throw new IllegalArgumentException("Key arrays differ in length");
+		for (int i = 0; i < pk.length; ++i) {
+			if (pk[i].length != pkLen)
+				throw new IllegalStateException("Illegal public key length: " + pk[i].length);
+			if (sk[i].length != skLen)
+				throw new IllegalStateException("Illegal secret key length: " + sk[i].length);
 		}
-		for (a = 0; a < 16; ++a)
-			o[a] = c[a];
-	}
-
-	private int crypto_scalarmult(byte[] q, byte[] n, byte[] p) {
-		byte[] z = new byte[32];
-		long[] x = new long[80];
-		int r;
-		int i;
-		long[] /* gf */a = new long[GF_LEN], b = new long[GF_LEN], c = new long[GF_LEN], d = new long[GF_LEN], e = new long[GF_LEN], f = new long[GF_LEN];
-		for (i = 0; i < 31; ++i)
-			z[i] = n[i];
-		z[31] = (byte) ((n[31] & 127) | 64);
-		z[0] &= 248;
-		unpack25519(x, p);
-		for (i = 0; i < 16; ++i) {
-			b[i] = x[i];
-			d[i] = a[i] = c[i] = 0;
-		}
-		a[0] = d[0] = 1;
-
-		for (i = 254; i >= 0; --i) {
-			r = ((0xff & z[i >> 3]) >> (i & 7)) & 1;
-			sel25519(a, b, r);
-			sel25519(c, d, r);
-			A(e, a, c);
-			Z(a, a, c);
-			A(c, b, d);
-			Z(b, b, d);
-			S(d, e);
-			S(f, a);
-			M(a, 0, c, 0, a, 0);
-			M(c, 0, b, 0, e, 0);
-			A(e, a, c);
-			Z(a, a, c);
-			S(b, a);
-			Z(c, d, f);
-			M(a, 0, c, 0, _121665, 0);
-			A(a, a, d);
-			M(c, 0, c, 0, a, 0);
-			M(a, 0, d, 0, f, 0);
-			M(d, 0, b, 0, x, 0);
-			S(b, e);
-			sel25519(a, b, r);
-			sel25519(c, d, r);
-		}
-		for (i = 0; i < 16; ++i) {
-			x[i + 16] = a[i];
-			x[i + 32] = c[i];
-			x[i + 48] = b[i];
-			x[i + 64] = d[i];
-		}
-
-		inv25519(x, 32, x, 32);
-
-		M(x, 16, x, 16, x, 32);
-
-		pack25519(q, x, 16);
-		return 0;
 	}
 
-	private int crypto_box_beforenm(byte[] k, byte[] y, byte[] x) {
-		byte[] s = new byte[32];
-		crypto_scalarmult(s, x, y);
-		return crypto_core_hsalsa20(k, _0, s, sigma);
+	private static void checkAuthKey(byte[] k) {
+		if (k.length != crypto_auth_hmacsha512256_tweet_KEYBYTES)
+			throw new IllegalStateException("Illegal key length: " + k.length);
 	}
 
-	private int crypto_box_afternm(byte[] c, byte[] m, long d, byte[] n,
-			byte[] k) {
-		return crypto_secretbox(c, m, d, n, k);
+	private static void checkSigningKey(byte[] key, int len) {
+		if (key.length != len)
+			throw new IllegalStateException("Illegal signing key length: " + key.length);
 	}
 
-	private int crypto_box_open_afternm(byte[] m, byte[] c, long d,
-			byte[] n, byte[] k) {
-		return crypto_secretbox_open(m, c, d, n, k);
+	private static void checkBounds(byte[] a, int off, int len) {
+		if (off < 0 || len < 0 || off > a.length - len)
+			throw new IndexOutOfBoundsException("offset " + off + ", length " + len + ", array length " + a.length);
 	}
 
-	private int crypto_box(byte[] c, byte[] m, long d, byte[] nonce,
-			byte[] theirPublicBoxingKey, byte[] ourSecretBoxingKey) {
-		byte[] k = new byte[32];
-		crypto_box_beforenm(k, theirPublicBoxingKey, ourSecretBoxingKey);
-		return crypto_box_afternm(c, m, d, nonce, k);
-	}
-
-	private int crypto_box_open(byte[] m, byte[] c, long d, byte[] n,
-			byte[] y, byte[] x) {
-		byte[] k = new byte[32];
-		crypto_box_beforenm(k, y, x);
-		return crypto_box_open_afternm(m, c, d, n, k);
-	}
-
-	private int crypto_hash(byte[] out, byte[] m, int n) {
-		int[] hh = new int[8], hl = new int[8];
-		byte[] x = new byte[256];
-		int i, b = n;
-
-		hh[0] = 0x6a09e667;
-		hh[1] = 0xbb67ae85;
-		hh[2] = 0x3c6ef372;
-		hh[3] = 0xa54ff53a;
-		hh[4] = 0x510e527f;
-		hh[5] = 0x9b05688c;
-		hh[6] = 0x1f83d9ab;
-		hh[7] = 0x5be0cd19;
-
-		hl[0] = 0xf3bcc908;
-		hl[1] = 0x84caa73b;
-		hl[2] = 0xfe94f82b;
-		hl[3] = 0x5f1d36f1;
-		hl[4] = 0xade682d1;
-		hl[5] = 0x2b3e6c1f;
-		hl[6] = 0xfb41bd6b;
-		hl[7] = 0x137e2179;
-
-		crypto_hashblocks_hl(hh, hl, m, n);
-		n %= 128;
-
-		for (i = 0; i < n; i++)
-			x[i] = m[b - n + i];
-		x[n] = (byte) 128;
-
-		n = 256 - 128 * (n < 112 ? 1 : 0);
-		x[n - 9] = 0;
-		jsts64(x, n - 8, (b / 0x20000000), b << 3);
-		crypto_hashblocks_hl(hh, hl, x, n);
-
-		for (i = 0; i < 8; i++)
-			jsts64(out, 8 * i, hh[i], hl[i]);
-
+	private int crypto_box_beforenm(byte[] k, byte[] y, byte[] x) {
+		if (y.length != BOX_PUBLIC_KEY_BYTES)
+			throw new IllegalStateException("Illegal public key length: " + y.length);
+		if (x.length != BOX_SECRET_KEY_BYTES)
+			throw new IllegalStateException("Illegal secret key length: " + x.length);
+		byte[] s = new byte[32];
+		curve().crypto_scalarmult(s, x, y);
+		SalsaEngine.hsalsa20(k, 0, s, 0, _0, 0);
+		Arrays.fill(s, (byte) 0);
 		return 0;
 	}
 
-	private void jsts64(byte[] x, int i, int h, int l) {
-		x[i] = (byte) (h >> 24);
-		x[i + 1] = (byte) (h >> 16);
-		x[i + 2] = (byte) (h >> 8);
-		x[i + 3] = (byte) h;
-		x[i + 4] = (byte) (l >> 24);
-		x[i + 5] = (byte) (l >> 16);
-		x[i + 6] = (byte) (l >> 8);
-		x[i + 7] = (byte) l;
-	}
-
-	private int[] jsK = new int[] { 0x428a2f98, 0xd728ae22, 0x71374491,
-			0x23ef65cd, 0xb5c0fbcf, 0xec4d3b2f, 0xe9b5dba5, 0x8189dbbc,
-			0x3956c25b, 0xf348b538, 0x59f111f1, 0xb605d019, 0x923f82a4,
-			0xaf194f9b, 0xab1c5ed5, 0xda6d8118, 0xd807aa98, 0xa3030242,
-			0x12835b01, 0x45706fbe, 0x243185be, 0x4ee4b28c, 0x550c7dc3,
-			0xd5ffb4e2, 0x72be5d74, 0xf27b896f, 0x80deb1fe, 0x3b1696b1,
-			0x9bdc06a7, 0x25c71235, 0xc19bf174, 0xcf692694, 0xe49b69c1,
-			0x9ef14ad2, 0xefbe4786, 0x384f25e3, 0x0fc19dc6, 0x8b8cd5b5,
-			0x240ca1cc, 0x77ac9c65, 0x2de92c6f, 0x592b0275, 0x4a7484aa,
-			0x6ea6e483, 0x5cb0a9dc, 0xbd41fbd4, 0x76f988da, 0x831153b5,
-			0x983e5152, 0xee66dfab, 0xa831c66d, 0x2db43210, 0xb00327c8,
-			0x98fb213f, 0xbf597fc7, 0xbeef0ee4, 0xc6e00bf3, 0x3da88fc2,
-			0xd5a79147, 0x930aa725, 0x06ca6351, 0xe003826f, 0x14292967,
-			0x0a0e6e70, 0x27b70a85, 0x46d22ffc, 0x2e1b2138, 0x5c26c926,
-			0x4d2c6dfc, 0x5ac42aed, 0x53380d13, 0x9d95b3df, 0x650a7354,
-			0x8baf63de, 0x766a0abb, 0x3c77b2a8, 0x81c2c92e, 0x47edaee6,
-			0x92722c85, 0x1482353b, 0xa2bfe8a1, 0x4cf10364, 0xa81a664b,
-			0xbc423001, 0xc24b8b70, 0xd0f89791, 0xc76c51a3, 0x0654be30,
-			0xd192e819, 0xd6ef5218, 0xd6990624, 0x5565a910, 0xf40e3585,
-			0x5771202a, 0x106aa070, 0x32bbd1b8, 0x19a4c116, 0xb8d2d0c8,
-			0x1e376c08, 0x5141ab53, 0x2748774c, 0xdf8eeb99, 0x34b0bcb5,
-			0xe19b48a8, 0x391c0cb3, 0xc5c95a63, 0x4ed8aa4a, 0xe3418acb,
-			0x5b9cca4f, 0x7763e373, 0x682e6ff3, 0xd6b2b8a3, 0x748f82ee,
-			0x5defb2fc, 0x78a5636f, 0x43172f60, 0x84c87814, 0xa1f0ab72,
-			0x8cc70208, 0x1a6439ec, 0x90befffa, 0x23631e28, 0xa4506ceb,
-			0xde82bde9, 0xbef9a3f7, 0xb2c67915, 0xc67178f2, 0xe372532b,
-			0xca273ece, 0xea26619c, 0xd186b8c7, 0x21c0c207, 0xeada7dd6,
-			0xcde0eb1e, 0xf57d4f7f, 0xee6ed178, 0x06f067aa, 0x72176fba,
-			0x0a637dc5, 0xa2c898a6, 0x113f9804, 0xbef90dae, 0x1b710b35,
-			0x131c471b, 0x28db77f5, 0x23047d84, 0x32caab7b, 0x40c72493,
-			0x3c9ebe0a, 0x15c9bebc, 0x431d67c4, 0x9c100d4c, 0x4cc5d4be,
-			0xcb3e42b6, 0x597f299c, 0xfc657e2a, 0x5fcb6fab, 0x3ad6faec,
-			0x6c44198c, 0x4a475817 };
-
-	private int crypto_hashblocks_hl(int[] hh, int[] hl, byte[] m, int n) {
-		int[] wh = new int[16], wl = new int[16];
-		int bh0, bh1, bh2, bh3, bh4, bh5, bh6, bh7, bl0, bl1, bl2, bl3, bl4, bl5, bl6, bl7, th, tl, i, j, h, l, a, b, c, d;
-
-		int ah0 = hh[0], ah1 = hh[1], ah2 = hh[2], ah3 = hh[3], ah4 = hh[4], ah5 = hh[5], ah6 = hh[6], ah7 = hh[7],
-
-		al0 = hl[0], al1 = hl[1], al2 = hl[2], al3 = hl[3], al4 = hl[4], al5 = hl[5], al6 = hl[6], al7 = hl[7];
-
-		int pos = 0;
-		while (n >= 128) {
-			for (i = 0; i < 16; i++) {
-				j = 8 * i + pos;
-				wh[i] = ((m[j + 0] & 0xff) << 24) | ((m[j + 1] & 0xff) << 16)
-						| ((m[j + 2] & 0xff) << 8) | (m[j + 3] & 0xff);
-				wl[i] = ((m[j + 4] & 0xff) << 24) | ((m[j + 5] & 0xff) << 16)
-						| ((m[j + 6] & 0xff) << 8) | (m[j + 7] & 0xff);
-			}
-			for (i = 0; i < 80; i++) {
-				bh0 = ah0;
-				bh1 = ah1;
-				bh2 = ah2;
-				bh3 = ah3;
-				bh4 = ah4;
-				bh5 = ah5;
-				bh6 = ah6;
-				bh7 = ah7;
-
-				bl0 = al0;
-				bl1 = al1;
-				bl2 = al2;
-				bl3 = al3;
-				bl4 = al4;
-				bl5 = al5;
-				bl6 = al6;
-				bl7 = al7;
-
-				// add
-				h = ah7;
-				l = al7;
-
-				a = l & 0xffff;
-				b = l >>> 16;
-				c = h & 0xffff;
-				d = h >>> 16;
-
-				// Sigma1
-				h = ((ah4 >>> 14) | (al4 << (32 - 14)))
-						^ ((ah4 >>> 18) | (al4 << (32 - 18)))
-						^ ((al4 >>> (41 - 32)) | (ah4 << (32 - (41 - 32))));
-				l = ((al4 >>> 14) | (ah4 << (32 - 14)))
-						^ ((al4 >>> 18) | (ah4 << (32 - 18)))
-						^ ((ah4 >>> (41 - 32)) | (al4 << (32 - (41 - 32))));
-
-				a += l & 0xffff;
-				b += l >>> 16;
-				c += h & 0xffff;
-				d += h >>> 16;
-
-				// Ch
-				h = (ah4 & ah5) ^ (~ah4 & ah6);
-				l = (al4 & al5) ^ (~al4 & al6);
-
-				a += l & 0xffff;
-				b += l >>> 16;
-				c += h & 0xffff;
-				d += h >>> 16;
-
-				// K
-				h = jsK[i * 2];
-				l = jsK[i * 2 + 1];
-
-				a += l & 0xffff;
-				b += l >>> 16;
-				c += h & 0xffff;
-				d += h >>> 16;
-
-				// w
-				h = wh[i % 16];
-				l = wl[i % 16];
-
-				a += l & 0xffff;
-				b += l >>> 16;
-				c += h & 0xffff;
-				d += h >>> 16;
-
-				b += a >>> 16;
-				c += b >>> 16;
-				d += c >>> 16;
-
-				th = c & 0xffff | d << 16;
-				tl = a & 0xffff | b << 16;
-
-				// add
-				h = th;
-				l = tl;
-
-				a = l & 0xffff;
-				b = l >>> 16;
-				c = h & 0xffff;
-				d = h >>> 16;
-
-				// Sigma0
-				h = ((ah0 >>> 28) | (al0 << (32 - 28)))
-						^ ((al0 >>> (34 - 32)) | (ah0 << (32 - (34 - 32))))
-						^ ((al0 >>> (39 - 32)) | (ah0 << (32 - (39 - 32))));
-				l = ((al0 >>> 28) | (ah0 << (32 - 28)))
-						^ ((ah0 >>> (34 - 32)) | (al0 << (32 - (34 - 32))))
-						^ ((ah0 >>> (39 - 32)) | (al0 << (32 - (39 - 32))));
-
-				a += l & 0xffff;
-				b += l >>> 16;
-				c += h & 0xffff;
-				d += h >>> 16;
-
-				// Maj
-				h = (ah0 & ah1) ^ (ah0 & ah2) ^ (ah1 & ah2);
-				l = (al0 & al1) ^ (al0 & al2) ^ (al1 & al2);
-
-				a += l & 0xffff;
-				b += l >>> 16;
-				c += h & 0xffff;
-				d += h >>> 16;
-
-				b += a >>> 16;
-				c += b >>> 16;
-				d += c >>> 16;
-
-				bh7 = (c & 0xffff) | (d << 16);
-				bl7 = (a & 0xffff) | (b << 16);
-
-				// add
-				h = bh3;
-				l = bl3;
-
-				a = l & 0xffff;
-				b = l >>> 16;
-				c = h & 0xffff;
-				d = h >>> 16;
-
-				h = th;
-				l = tl;
-
-				a += l & 0xffff;
-				b += l >>> 16;
-				c += h & 0xffff;
-				d += h >>> 16;
-
-				b += a >>> 16;
-				c += b >>> 16;
-				d += c >>> 16;
-
-				bh3 = (c & 0xffff) | (d << 16);
-				bl3 = (a & 0xffff) | (b << 16);
-
-				ah1 = bh0;
-				ah2 = bh1;
-				ah3 = bh2;
-				ah4 = bh3;
-				ah5 = bh4;
-				ah6 = bh5;
-				ah7 = bh6;
-				ah0 = bh7;
-
-				al1 = bl0;
-				al2 = bl1;
-				al3 = bl2;
-				al4 = bl3;
-				al5 = bl4;
-				al6 = bl5;
-				al7 = bl6;
-				al0 = bl7;
-
-				if (i % 16 == 15) {
-					for (j = 0; j < 16; j++) {
-						// add
-						h = wh[j];
-						l = wl[j];
-
-						a = l & 0xffff;
-						b = l >>> 16;
-						c = h & 0xffff;
-						d = h >>> 16;
-
-						h = wh[(j + 9) % 16];
-						l = wl[(j + 9) % 16];
-
-						a += l & 0xffff;
-						b += l >>> 16;
-						c += h & 0xffff;
-						d += h >>> 16;
-
-						// sigma0
-						th = wh[(j + 1) % 16];
-						tl = wl[(j + 1) % 16];
-						h = ((th >>> 1) | (tl << (32 - 1)))
-								^ ((th >>> 8) | (tl << (32 - 8))) ^ (th >>> 7);
-						l = ((tl >>> 1) | (th << (32 - 1)))
-								^ ((tl >>> 8) | (th << (32 - 8)))
-								^ ((tl >>> 7) | (th << (32 - 7)));
-
-						a += l & 0xffff;
-						b += l >>> 16;
-						c += h & 0xffff;
-						d += h >>> 16;
-
-						// sigma1
-						th = wh[(j + 14) % 16];
-						tl = wl[(j + 14) % 16];
-						h = ((th >>> 19) | (tl << (32 - 19)))
-								^ ((tl >>> (61 - 32)) | (th << (32 - (61 - 32))))
-								^ (th >>> 6);
-						l = ((tl >>> 19) | (th << (32 - 19)))
-								^ ((th >>> (61 - 32)) | (tl << (32 - (61 - 32))))
-								^ ((tl >>> 6) | (th << (32 - 6)));
-
-						a += l & 0xffff;
-						b += l >>> 16;
-						c += h & 0xffff;
-						d += h >>> 16;
-
-						b += a >>> 16;
-						c += b >>> 16;
-						d += c >>> 16;
-
-						wh[j] = (c & 0xffff) | (d << 16);
-						wl[j] = (a & 0xffff) | (b << 16);
-					}
-				}
-			}
-
-			// add
-			h = ah0;
-			l = al0;
-
-			a = l & 0xffff;
-			b = l >>> 16;
-			c = h & 0xffff;
-			d = h >>> 16;
-
-			h = hh[0];
-			l = hl[0];
-
-			a += l & 0xffff;
-			b += l >>> 16;
-			c += h & 0xffff;
-			d += h >>> 16;
-
-			b += a >>> 16;
-			c += b >>> 16;
-			d += c >>> 16;
-
-			hh[0] = ah0 = (c & 0xffff) | (d << 16);
-			hl[0] = al0 = (a & 0xffff) | (b << 16);
-
-			h = ah1;
-			l = al1;
-
-			a = l & 0xffff;
-			b = l >>> 16;
-			c = h & 0xffff;
-			d = h >>> 16;
-
-			h = hh[1];
-			l = hl[1];
-
-			a += l & 0xffff;
-			b += l >>> 16;
-			c += h & 0xffff;
-			d += h >>> 16;
-
-			b += a >>> 16;
-			c += b >>> 16;
-			d += c >>> 16;
-
-			hh[1] = ah1 = (c & 0xffff) | (d << 16);
-			hl[1] = al1 = (a & 0xffff) | (b << 16);
-
-			h = ah2;
-			l = al2;
-
-			a = l & 0xffff;
-			b = l >>> 16;
-			c = h & 0xffff;
-			d = h >>> 16;
-
-			h = hh[2];
-			l = hl[2];
-
-			a += l & 0xffff;
-			b += l >>> 16;
-			c += h & 0xffff;
-			d += h >>> 16;
-
-			b += a >>> 16;
-			c += b >>> 16;
-			d += c >>> 16;
-
-			hh[2] = ah2 = (c & 0xffff) | (d << 16);
-			hl[2] = al2 = (a & 0xffff) | (b << 16);
-
-			h = ah3;
-			l = al3;
-
-			a = l & 0xffff;
-			b = l >>> 16;
-			c = h & 0xffff;
-			d = h >>> 16;
-
-			h = hh[3];
-			l = hl[3];
-
-			a += l & 0xffff;
-			b += l >>> 16;
-			c += h & 0xffff;
-			d += h >>> 16;
-
-			b += a >>> 16;
-			c += b >>> 16;
-			d += c >>> 16;
-
-			hh[3] = ah3 = (c & 0xffff) | (d << 16);
-			hl[3] = al3 = (a & 0xffff) | (b << 16);
-
-			h = ah4;
-			l = al4;
-
-			a = l & 0xffff;
-			b = l >>> 16;
-			c = h & 0xffff;
-			d = h >>> 16;
-
-			h = hh[4];
-			l = hl[4];
-
-			a += l & 0xffff;
-			b += l >>> 16;
-			c += h & 0xffff;
-			d += h >>> 16;
-
-			b += a >>> 16;
-			c += b >>> 16;
-			d += c >>> 16;
-
-			hh[4] = ah4 = (c & 0xffff) | (d << 16);
-			hl[4] = al4 = (a & 0xffff) | (b << 16);
-
-			h = ah5;
-			l = al5;
-
-			a = l & 0xffff;
-			b = l >>> 16;
-			c = h & 0xffff;
-			d = h >>> 16;
-
-			h = hh[5];
-			l = hl[5];
-
-			a += l & 0xffff;
-			b += l >>> 16;
-			c += h & 0xffff;
-			d += h >>> 16;
-
-			b += a >>> 16;
-			c += b >>> 16;
-			d += c >>> 16;
-
-			hh[5] = ah5 = (c & 0xffff) | (d << 16);
-			hl[5] = al5 = (a & 0xffff) | (b << 16);
-
-			h = ah6;
-			l = al6;
-
-			a = l & 0xffff;
-			b = l >>> 16;
-			c = h & 0xffff;
-			d = h >>> 16;
-
-			h = hh[6];
-			l = hl[6];
-
-			a += l & 0xffff;
-			b += l >>> 16;
-			c += h & 0xffff;
-			d += h >>> 16;
-
-			b += a >>> 16;
-			c += b >>> 16;
-			d += c >>> 16;
-
-			hh[6] = ah6 = (c & 0xffff) | (d << 16);
-			hl[6] = al6 = (a & 0xffff) | (b << 16);
-
-			h = ah7;
-			l = al7;
-
-			a = l & 0xffff;
-			b = l >>> 16;
-			c = h & 0xffff;
-			d = h >>> 16;
-
-			h = hh[7];
-			l = hl[7];
-
-			a += l & 0xffff;
-			b += l >>> 16;
-			c += h & 0xffff;
-			d += h >>> 16;
-
-			b += a >>> 16;
-			c += b >>> 16;
-			d += c >>> 16;
-
-			hh[7] = ah7 = (c & 0xffff) | (d << 16);
-			hl[7] = al7 = (a & 0xffff) | (b << 16);
-
-			pos += 128;
-			n -= 128;
-		}
-
-		return n;
-	}
-
-	private void add(long[][] /* gf */p/* [4] */, long[][] /* gf */q/* [4] */) {
-		long[] /* gf */a = new long[GF_LEN], b = new long[GF_LEN], c = new long[GF_LEN], d = new long[GF_LEN], t = new long[GF_LEN], e = new long[GF_LEN], f = new long[GF_LEN], g = new long[GF_LEN], h = new long[GF_LEN];
-
-		Z(a, p[1], p[0]);
-		Z(t, q[1], q[0]);
-		M(a, 0, a, 0, t, 0);
-		A(b, p[0], p[1]);
-		A(t, q[0], q[1]);
-		M(b, 0, b, 0, t, 0);
-		M(c, 0, p[3], 0, q[3], 0);
-		M(c, 0, c, 0, D2, 0);
-		M(d, 0, p[2], 0, q[2], 0);
-		A(d, d, d);
-		Z(e, b, a);
-		Z(f, d, c);
-		A(g, d, c);
-		A(h, b, a);
-
-		M(p[0], 0, e, 0, f, 0);
-		M(p[1], 0, h, 0, g, 0);
-		M(p[2], 0, g, 0, f, 0);
-		M(p[3], 0, e, 0, h, 0);
-	}
-
-	private void cswap(long[][] /* gf */p/* [4] */,
-			long[][] /* gf */q/* [4] */, byte b) {
-		int i;
-		for (i = 0; i < 4; i++)
-			sel25519(p[i], q[i], b & 0xff);
-	}
-
-	private void pack(byte[] r, long[][] /* gf */p/* [4] */) {
-		long[] /* gf */tx = new long[GF_LEN], ty = new long[GF_LEN], zi = new long[GF_LEN];
-		inv25519(zi, 0, p[2], 0);
-		M(tx, 0, p[0], 0, zi, 0);
-		M(ty, 0, p[1], 0, zi, 0);
-		pack25519(r, ty, 0);
-		r[31] ^= par25519(tx) << 7;
-	}
-
-	private void scalarmult(long[][] /* gf */p/* [4] */,
-			long[][] /* gf */q/* [4] */, byte[] s, int sOff) {
-		int i;
-		set25519(p[0], gf0);
-		set25519(p[1], gf1);
-		set25519(p[2], gf1);
-		set25519(p[3], gf0);
-		for (i = 255; i >= 0; --i) {
-			byte b = (byte) (((0xff & s[sOff + i / 8]) >> (i & 7)) & 1);
-			cswap(p, q, b);
-			add(q, p);
-			add(p, p);
-			cswap(p, q, b);
-		}
-	}
-
-	private void scalarbase(long[][] /* gf */p/* [4] */, byte[] s, int sOff) {
-		long[][] /* gf */q = new long[4][16];
-		set25519(q[0], X);
-		set25519(q[1], Y);
-		set25519(q[2], gf1);
-		M(q[3], 0, X, 0, Y, 0);
-		scalarmult(p, q, s, sOff);
-	}
-
-	private static final long[] L = { 0xed, 0xd3, 0xf5, 0x5c, 0x1a, 0x63, 0x12, 0x58,
-			0xd6, 0x9c, 0xf7, 0xa2, 0xde, 0xf9, 0xde, 0x14, 0, 0, 0, 0, 0, 0,
-			0, 0, 0, 0, 0, 0, 0, 0, 0, 0x10 };
-
-	private void modL(byte[] r, int rOff, long[] x/* [64] */) {
-		long carry;
-		int i, j;
-		for (i = 63; i >= 32; --i) {
-			carry = 0;
-			for (j = i - 32; j < i - 12; ++j) {
-				x[j] += carry - 16 * x[i] * L[j - (i - 32)];
-				carry = (x[j] + 128) >> 8;
-				x[j] -= carry << 8;
-			}
-			x[j] += carry;
-			x[i] = 0;
-		}
-		carry = 0;
-		for (j = 0; j < 32; ++j) {
-			x[j] += carry - (x[31] >> 4) * L[j];
-			carry = x[j] >> 8;
-			x[j] &= 255;
-		}
-		for (j = 0; j < 32; ++j)
-			x[j] -= carry * L[j];
-		for (i = 0; i < 32; ++i) {
-			x[i + 1] += x[i] >> 8;
-			r[rOff + i] = (byte) (x[i] & 255);
-		}
-	}
-
-	private void reduce(byte[] r) {
-		long[] x = new long[64];
-		for (int i = 0; i < 64; i++)
-			x[i] = 0xff & r[i];
-		for (int i = 0; i < 64; ++i)
-			r[i] = 0;
-		modL(r, 0, x);
-	}
-
 	private int crypto_sign(byte[] sm, byte[] m, int n, byte[] sk) {
-		byte[] d = new byte[64], h = new byte[64], r = new byte[64];
-		long[] x = new long[64];
-		long[][] /* gf */p/* [4] */= new long[4][GF_LEN];
-
-		crypto_hash(d, sk, 32);
-		d[0] &= 248;
-		d[31] &= 127;
-		d[31] |= 64;
-
+		checkSigningKey(sk, SIGN_SECRET_KEY_BYTES);
+		curve().crypto_sign_detached(sm, 0, m, 0, n, sk);
 		// smlen[0] = n+64;
-		for (int i = 0; i < n; ++i)
-			sm[64 + i] = m[i];
-		for (int i = 0; i < 32; ++i)
-			sm[32 + i] = d[32 + i];
-		crypto_hash(r, Arrays.copyOfRange(sm, 32, sm.length), n + 32);
-		reduce(r);
-		scalarbase(p, r, 0);
-		pack(sm, p);
-
-		for (int i = 0; i < 32; ++i)
-			sm[i + 32] = sk[i + 32];
-		crypto_hash(h, sm, n + 64);
-		reduce(h);
-
-		for (int i = 0; i < 64; ++i)
-			x[i] = 0;
-		for (int i = 0; i < 32; ++i)
-			x[i] = 0xff & r[i];
-		for (int i = 0; i < 32; ++i)
-			for (int j = 0; j < 32; ++j)
-				x[i + j] += (0xff & h[i]) * (0xff & d[j]);
-		modL(sm, 32, x);
-
-		return 0;
-	}
-
-	private int unpackneg(long[][] /* gf */r/* [4] */, byte[] p/* [32] */) {
-		long[] /* gf */t = new long[GF_LEN], chk = new long[GF_LEN], num = new long[GF_LEN], den = new long[GF_LEN], den2 = new long[GF_LEN], den4 = new long[GF_LEN], den6 = new long[GF_LEN];
-		set25519(r[2], gf1);
-		unpack25519(r[1], p);
-		S(num, r[1]);
-		M(den, 0, num, 0, D, 0);
-		Z(num, num, r[2]);
-		A(den, r[2], den);
-
-		S(den2, den);
-		S(den4, den2);
-		M(den6, 0, den4, 0, den2, 0);
-		M(t, 0, den6, 0, num, 0);
-		M(t, 0, t, 0, den, 0);
-
-		pow2523(t, t);
-		M(t, 0, t, 0, num, 0);
-		M(t, 0, t, 0, den, 0);
-		M(t, 0, t, 0, den, 0);
-		M(r[0], 0, t, 0, den, 0);
-
-		S(chk, r[0]);
-		M(chk, 0, chk, 0, den, 0);
-		if (neq25519(chk, num) != 0)
-			M(r[0], 0, r[0], 0, I, 0);
-
-		S(chk, r[0]);
-		M(chk, 0, chk, 0, den, 0);
-		if (neq25519(chk, num) != 0)
-			return -1;
-
-		if (par25519(r[0]) == ((0xff & p[31]) >> 7))
-			Z(r[0], gf0, r[0]);
-
-		M(r[3], 0, r[0], 0, r[1], 0);
+		System.arraycopy(m, 0, sm, 64, n);
 		return 0;
 	}
 
+	/*
+	 * On success the n - 64 message bytes of sm are written to m; nothing is written otherwise
+	 */
 	private int crypto_sign_open(byte[] m, byte[] sm, int n, byte[] pk) {
-		int i;
-		byte[] t = new byte[32], h = new byte[64];
-		long[][] /* gf */p = new long[4][GF_LEN], q = new long[4][GF_LEN];
-
 		// mlen[0] = -1;
 		if (n < 64)
 			return -1;
-
-		if (unpackneg(q, pk) != 0)
-			return -1;
-
-		for (i = 0; i < n; ++i)
-			m[i] = sm[i];
-		for (i = 0; i < 32; ++i)
-			m[i + 32] = pk[i];
-		crypto_hash(h, m, n);
-		reduce(h);
-		scalarmult(p, q, h, 0);
-
-		scalarbase(q, sm, 32);
-		add(p, q);
-		pack(t, p);
-
-		n -= 64;
-		if (crypto_verify_32(sm, t) != 0) {
-			for (i = 0; i < n; ++i)
-				m[i] = 0;
+		if (curve().crypto_sign_verify_detached(sm, 0, sm, 64, n - 64, pk) != 0)
 			return -1;
-		}
 
-		for (i = 0; i < n; ++i)
-			m[64 + i] = sm[i + 64];
+		System.arraycopy(sm, 64, m, 0, n - 64);
 		// mlen[0] = n;
 		return 0;
 	}
 
-	private static SecureRandom getStrongCSPRNG() {
-		try {
-			return SecureRandom.getInstanceStrong(); // java 8 construct and bit of a honey trap, but that's OK for now (DRS)
-		} catch (NoSuchAlgorithmException e) {
-			throw new IllegalStateException(e);
-		}
-	}
-
-	private static final Random prng = getStrongCSPRNG();
-
 	private void randombytes(byte[] b, int len) {
-		byte[] r = new byte[len];
-		prng.nextBytes(r);
-		System.arraycopy(r, 0, b, 0, len);
+		random.nextBytes(b, 0, len);
 	}
 	
 	public byte [] gen_rand(int len){
 		byte[] r = new byte[len];
-		prng.nextBytes(r);
+		random.nextBytes(r, 0, len);
 		return r;
 	}
 	
@@ -0,0 +1,301 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt.stream;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Salsa20 and XSalsa20 over large buffers, and memory-mapped files, on a ForkJoin pool. Salsa20/12
+ * and Salsa20/8 are instances with 12 or 8 rounds.
+ *
+ * The keystream is counter mode, so any block of it can be made without the ones before. A buffer of
+ * at least the threshold is split in halves, on block boundaries of the keystream, down to segments of
+ * at most SEGMENT_BYTES, and each segment is xored by its own SalsaEngine seeked to its place. The
+ * output is the same as the sequential crypto_stream_xor, byte for byte. Below the threshold, or on a
+ * pool of one thread, the calling thread does the work alone.
+ *
+ * Instances hold no state and may be shared by any number of threads.
+ *
+ * @author Dave
+ */
+public final class ParallelSalsa {
+
+	/**
+	 * Buffers shorter than this are done sequentially
+	 */
+	public static final int DEFAULT_THRESHOLD = 1 << 20;
+
+	/**
+	 * The largest piece of a buffer one task does; a multiple of the Salsa20 block
+	 */
+	public static final int SEGMENT_BYTES = 1 << 16;
+
+	/**
+	 * A file is mapped this much at a time by xor(Path, Path, ...); a multiple of SEGMENT_BYTES
+	 */
+	public static final int MAP_WINDOW_BYTES = 1 << 26;
+
+	private static final ParallelSalsa INSTANCE = new ParallelSalsa();
+
+	private final ForkJoinPool pool;
+	private final int threshold;
+	private final int rounds;
+
+	/**
+	 * The common pool, DEFAULT_THRESHOLD, 20 rounds
+	 */
+	public static ParallelSalsa getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * The common pool, DEFAULT_THRESHOLD, and rounds: 20, or 12 or 8 for Salsa20/12 and Salsa20/8
+	 */
+	public static ParallelSalsa getInstance(int rounds) {
+		return rounds == Salsa20.ROUNDS ? INSTANCE : new ParallelSalsa(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD, rounds);
+	}
+
+	public ParallelSalsa() {
+		this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * @param threshold the length below which a buffer is done sequentially
+	 */
+	public ParallelSalsa(ForkJoinPool pool, int threshold) {
+		this(pool, threshold, Salsa20.ROUNDS);
+	}
+
+	/**
+	 * @param threshold the length below which a buffer is done sequentially
+	 * @param rounds 20, or 12 or 8 for Salsa20/12 and Salsa20/8
+	 */
+	public ParallelSalsa(ForkJoinPool pool, int threshold, int rounds) {
+		if (threshold < 0)
+			throw new IllegalArgumentException("Negative threshold: " + threshold);
+		new SalsaEngine(rounds); // checks them
+		this.pool = pool;
+		this.threshold = threshold;
+		this.rounds = rounds;
+	}
+
+	public int getThreshold() {
+		return threshold;
+	}
+
+	public int getRounds() {
+		return rounds;
+	}
+
+	/**
+	 * out[outOff..] = in[inOff..] xor len bytes of the Salsa20 keystream for the 8 byte nonce at n[nOff]
+	 * and the 32 byte key k, starting at byte pos of it; in == null gives the keystream. out and in may
+	 * be the same array at the same offset.
+	 */
+	public void xor(byte[] out, int outOff, byte[] in, int inOff, int len, byte[] n, int nOff, byte[] k, long pos) {
+		checkBounds(out, outOff, len);
+		if (in != null)
+			checkBounds(in, inOff, len);
+		run(new XorTask(rounds, k, n, nOff, pos, out, outOff, in, inOff, null, null, 0, len));
+	}
+
+	/**
+	 * As xor(byte[], int, byte[], int, int, byte[], int, byte[], long), with XSalsa20 and its 24 byte
+	 * nonce n. XSalsa20 is only defined with 20 rounds.
+	 */
+	public void xorXSalsa20(byte[] out, int outOff, byte[] in, int inOff, int len, byte[] n, byte[] k, long pos) {
+		checkXSalsa20();
+		byte[] subkey = new byte[SalsaEngine.KEY_BYTES];
+		SalsaEngine.hsalsa20(subkey, 0, k, 0, n, 0);
+		try {
+			xor(out, outOff, in, inOff, len, n, 16, subkey, pos);
+		} finally {
+			Arrays.fill(subkey, (byte) 0);
+		}
+	}
+
+	/**
+	 * ByteBuffer form: out = in xor in.remaining() bytes of the Salsa20 keystream from byte pos of it,
+	 * and both positions advance by that many. in == null gives out.remaining() bytes of keystream.
+	 * Either buffer may be direct or mapped; out and in may be views of the same memory at the same place.
+	 *
+	 * @throws BufferOverflowException if out has less room than in has remaining
+	 */
+	public void xor(ByteBuffer out, ByteBuffer in, byte[] n, int nOff, byte[] k, long pos) {
+		int len = in != null ? in.remaining() : out.remaining();
+		if (out.isReadOnly())
+			throw new ReadOnlyBufferException();
+		if (out.remaining() < len)
+			throw new BufferOverflowException();
+		run(new XorTask(rounds, k, n, nOff, pos, null, 0, null, 0, out, in, 0, len));
+		out.position(out.position() + len);
+		if (in != null)
+			in.position(in.limit());
+	}
+
+	/**
+	 * As xor(ByteBuffer, ByteBuffer, byte[], int, byte[], long), with XSalsa20 and its 24 byte nonce n.
+	 * XSalsa20 is only defined with 20 rounds.
+	 */
+	public void xorXSalsa20(ByteBuffer out, ByteBuffer in, byte[] n, byte[] k, long pos) {
+		checkXSalsa20();
+		byte[] subkey = new byte[SalsaEngine.KEY_BYTES];
+		SalsaEngine.hsalsa20(subkey, 0, k, 0, n, 0);
+		try {
+			xor(out, in, n, 16, subkey, pos);
+		} finally {
+			Arrays.fill(subkey, (byte) 0);
+		}
+	}
+
+	/**
+	 * File form: the file out = the file in xor the Salsa20 keystream from byte 0. Both files are mapped
+	 * into memory MAP_WINDOW_BYTES at a time and the keystream is xored straight from one mapping into
+	 * the other, so nothing is copied through the heap and files over 2 GB are no different. out is
+	 * created or truncated, and ends up the length of in; if out is in itself, the file is encrypted in
+	 * place.
+	 *
+	 * Each window is forced to the device once it is done, and out is forced again before returning, so
+	 * out is durable when this returns. In-place encryption is still not crash-safe: a crash part way
+	 * leaves a file that is part plain text and part cipher text, with no record of where one ends. Write
+	 * to a separate file and move it over in when that matters.
+	 *
+	 * Before Java 9 a mapping is only released when its buffer is garbage collected, so the files may stay
+	 * mapped, and on Windows cannot be deleted or renamed, for a while after this returns.
+	 *
+	 * @return the length of in
+	 */
+	public long xor(Path out, Path in, byte[] n, int nOff, byte[] k) throws IOException {
+		boolean inPlace = Files.exists(out) && Files.isSameFile(in, out);
+		try (FileChannel src = inPlace ? FileChannel.open(in, READ, WRITE) : FileChannel.open(in, READ);
+				FileChannel dst = inPlace ? null : FileChannel.open(out, CREATE, TRUNCATE_EXISTING, READ, WRITE)) {
+			long size = src.size();
+			for (long pos = 0; pos < size; pos += MAP_WINDOW_BYTES) {
+				int len = (int) Math.min(MAP_WINDOW_BYTES, size - pos);
+				MappedByteBuffer from = src.map(inPlace ? MapMode.READ_WRITE : MapMode.READ_ONLY, pos, len);
+				MappedByteBuffer to = inPlace ? from : dst.map(MapMode.READ_WRITE, pos, len);
+				xor(to, from.duplicate(), n, nOff, k, pos);
+				to.force();
+			}
+			(inPlace ? src : dst).force(true);
+			return size;
+		}
+	}
+
+	private void checkXSalsa20() {
+		if (rounds != Salsa20.ROUNDS)
+			throw new IllegalStateException("XSalsa20 has 20 rounds, not " + rounds);
+	}
+
+	private void run(XorTask task) {
+		if (task.to < threshold || pool.getParallelism() == 1)
+			task.segment(0, task.to);
+		else
+			pool.invoke(task);
+	}
+
+	/*
+	 * Bytes [from, to) of the request; arrays or buffers, whichever are not null
+	 */
+	private static final class XorTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final int rounds;
+		final byte[] k, n;
+		final int nOff;
+		final long pos;
+		final byte[] out, in;
+		final int outOff, inOff;
+		final ByteBuffer outBuf, inBuf;
+		final int from, to;
+
+		XorTask(int rounds, byte[] k, byte[] n, int nOff, long pos, byte[] out, int outOff, byte[] in, int inOff,
+				ByteBuffer outBuf, ByteBuffer inBuf, int from, int to) {
+			this.rounds = rounds;
+			this.k = k;
+			this.n = n;
+			this.nOff = nOff;
+			this.pos = pos;
+			this.out = out;
+			this.outOff = outOff;
+			this.in = in;
+			this.inOff = inOff;
+			this.outBuf = outBuf;
+			this.inBuf = inBuf;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > SEGMENT_BYTES) {
+				// split where the keystream starts a block, so no segment makes a block twice
+				int mid = (int) (((pos + from + (to - from) / 2) & ~63L) - pos);
+				if (mid > from && mid < to) {
+					invokeAll(new XorTask(rounds, k, n, nOff, pos, out, outOff, in, inOff, outBuf, inBuf, from, mid),
+							new XorTask(rounds, k, n, nOff, pos, out, outOff, in, inOff, outBuf, inBuf, mid, to));
+					return;
+				}
+			}
+			segment(from, to);
+		}
+
+		void segment(int from, int to) {
+			if (from == to)
+				return;
+			SalsaEngine salsa = new SalsaEngine(rounds).init(k, 0, n, nOff);
+			salsa.seek(pos + from);
+			if (out != null) {
+				salsa.xor(out, outOff + from, in, inOff + from, to - from);
+			} else {
+				salsa.xor(slice(outBuf, from, to), inBuf != null ? slice(inBuf, from, to) : null);
+			}
+			salsa.clear();
+		}
+
+		private static ByteBuffer slice(ByteBuffer b, int from, int to) {
+			ByteBuffer d = b.duplicate();
+			d.limit(b.position() + to);
+			d.position(b.position() + from);
+			return d;
+		}
+	}
+
+	private static void checkBounds(byte[] a, int off, int len) {
+		if (off < 0 || len < 0 || off > a.length - len)
+			throw new IndexOutOfBoundsException("offset " + off + ", length " + len + ", array length " + a.length);
+	}
+}
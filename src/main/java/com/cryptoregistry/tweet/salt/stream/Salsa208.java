@@ -0,0 +1,36 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt.stream;
+
+/**
+ * Salsa20/8, libsodium's crypto_stream_salsa208: Salsa20 with 8 rounds. The fastest and least
+ * conservative of the variants; only for data of low sensitivity. Same key, nonce and keystream layout
+ * as Salsa20.
+ *
+ * @author Dave
+ */
+public class Salsa208 extends Salsa20 {
+
+	public final static int ROUNDS = 8;
+
+	public Salsa208() {
+		super(ROUNDS);
+	}
+}
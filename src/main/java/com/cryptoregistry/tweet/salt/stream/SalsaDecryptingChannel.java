@@ -0,0 +1,95 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * The channel form of SalsaDecryptingInputStream: the XSalsa20 cipher text read from the underlying
+ * channel is decrypted in place in the destination buffer, with one keystream across all reads. Works
+ * with blocking and non-blocking channels alike, and with direct buffers.
+ *
+ * Not thread-safe.
+ *
+ * @author Dave
+ * @see SalsaEncryptingChannel
+ */
+public class SalsaDecryptingChannel implements ReadableByteChannel {
+
+	private final ReadableByteChannel channel;
+	private final SalsaEngine salsa = new SalsaEngine();
+	private boolean open = true;
+
+	/**
+	 * @param nonce the 24 byte XSalsa20 nonce
+	 * @param key the 32 byte key
+	 */
+	public SalsaDecryptingChannel(ReadableByteChannel channel, byte[] nonce, byte[] key) {
+		this(channel, nonce, key, 0);
+	}
+
+	/**
+	 * The underlying channel starts at byte pos of the cipher text, to resume an interrupted transfer
+	 */
+	public SalsaDecryptingChannel(ReadableByteChannel channel, byte[] nonce, byte[] key, long pos) {
+		SalsaEncryptingOutputStream.checkLengths(nonce, key);
+		this.channel = channel;
+		salsa.initXSalsa20(key, 0, nonce, 0).seek(pos);
+	}
+
+	public long position() {
+		return salsa.position();
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		if (!open)
+			throw new ClosedChannelException();
+		int start = dst.position();
+		int n = channel.read(dst);
+		if (n > 0) {
+			ByteBuffer got = dst.duplicate();
+			got.limit(start + n);
+			got.position(start);
+			salsa.xor(got, got.duplicate());
+		}
+		return n;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open && channel.isOpen();
+	}
+
+	/**
+	 * Closes the underlying channel and wipes the key schedule
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!open)
+			return;
+		open = false;
+		salsa.clear();
+		channel.close();
+	}
+}
@@ -0,0 +1,123 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt.stream;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decrypts the XSalsa20 cipher text read from the underlying stream, as written by
+ * SalsaEncryptingOutputStream.
+ *
+ * Bytes are decrypted in place in the caller's array as they are read, with one keystream across all
+ * reads. skip() moves the keystream along with the underlying stream, so a range of a long stream can
+ * be read without decrypting what comes before it. mark() and reset() are not supported.
+ *
+ * Not thread-safe.
+ *
+ * @author Dave
+ * @see SalsaEncryptingOutputStream
+ */
+public class SalsaDecryptingInputStream extends FilterInputStream {
+
+	private final SalsaEngine salsa = new SalsaEngine();
+	private final byte[] one = new byte[1];
+	private boolean closed;
+
+	/**
+	 * @param nonce the 24 byte XSalsa20 nonce
+	 * @param key the 32 byte key
+	 */
+	public SalsaDecryptingInputStream(InputStream in, byte[] nonce, byte[] key) {
+		this(in, nonce, key, 0);
+	}
+
+	/**
+	 * The underlying stream starts at byte pos of the cipher text, to resume an interrupted transfer
+	 */
+	public SalsaDecryptingInputStream(InputStream in, byte[] nonce, byte[] key, long pos) {
+		super(in);
+		SalsaEncryptingOutputStream.checkLengths(nonce, key);
+		salsa.initXSalsa20(key, 0, nonce, 0).seek(pos);
+	}
+
+	/**
+	 * The number of bytes of the stream read or skipped so far, including the pos it was started at
+	 */
+	public long position() {
+		return salsa.position();
+	}
+
+	@Override
+	public int read() throws IOException {
+		int n = read(one, 0, 1);
+		return n == -1 ? -1 : one[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		int n = in.read(b, off, len);
+		if (n > 0)
+			salsa.xor(b, off, b, off, n);
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		ensureOpen();
+		long skipped = in.skip(n);
+		if (skipped > 0)
+			salsa.seek(salsa.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	/**
+	 * Closes the underlying stream and wipes the key schedule
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		salsa.clear();
+		super.close();
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed)
+			throw new IOException("Stream closed");
+	}
+}
@@ -0,0 +1,117 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * The channel form of SalsaEncryptingOutputStream: everything written is encrypted with XSalsa20 on its
+ * way to the underlying channel, with one keystream across all writes.
+ *
+ * The source buffer is not modified; bytes are encrypted into a fixed-size buffer of this channel's own.
+ * src and the keystream only advance by what the underlying channel actually took, so position() stays
+ * right for resuming after a failed write. On a non-blocking channel write() may return a partial count,
+ * or zero, and the rest of src is left for the next call.
+ *
+ * A (key, nonce) pair must never encrypt two different streams. Not thread-safe.
+ *
+ * @author Dave
+ * @see SalsaDecryptingChannel
+ */
+public class SalsaEncryptingChannel implements WritableByteChannel {
+
+	private final WritableByteChannel channel;
+	private final SalsaEngine salsa = new SalsaEngine();
+	private final ByteBuffer buf = ByteBuffer.allocate(SalsaEncryptingOutputStream.BUFFER_BYTES);
+	private boolean open = true;
+
+	/**
+	 * @param nonce the 24 byte XSalsa20 nonce
+	 * @param key the 32 byte key
+	 */
+	public SalsaEncryptingChannel(WritableByteChannel channel, byte[] nonce, byte[] key) {
+		this(channel, nonce, key, 0);
+	}
+
+	/**
+	 * Continue a stream from byte pos, to resume an interrupted transfer or to append
+	 */
+	public SalsaEncryptingChannel(WritableByteChannel channel, byte[] nonce, byte[] key, long pos) {
+		SalsaEncryptingOutputStream.checkLengths(nonce, key);
+		this.channel = channel;
+		salsa.initXSalsa20(key, 0, nonce, 0).seek(pos);
+	}
+
+	public long position() {
+		return salsa.position();
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		if (!open)
+			throw new ClosedChannelException();
+		int total = 0;
+		while (src.hasRemaining()) {
+			int n = Math.min(src.remaining(), buf.capacity());
+			long pos = salsa.position();
+			ByteBuffer in = src.duplicate();
+			in.limit(in.position() + n);
+			buf.clear();
+			salsa.xor(buf, in);
+			buf.flip();
+			try {
+				while (buf.hasRemaining() && channel.write(buf) > 0)
+					;
+			} finally {
+				// buf.position() is what the channel took, even if it threw part way
+				int done = buf.position();
+				src.position(src.position() + done);
+				total += done;
+				if (done < n)
+					salsa.seek(pos + done);
+			}
+			if (buf.hasRemaining())
+				break;
+		}
+		return total;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open && channel.isOpen();
+	}
+
+	/**
+	 * Closes the underlying channel and wipes the key schedule
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!open)
+			return;
+		open = false;
+		salsa.clear();
+		Arrays.fill(buf.array(), (byte) 0);
+		channel.close();
+	}
+}
@@ -0,0 +1,118 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt.stream;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Encrypts everything written to it with XSalsa20 on its way to the underlying stream.
+ *
+ * One keystream runs across all writes, partial blocks included, so the output is the same as
+ * XSalsa20.crypto_stream_xor over the concatenation of the writes however they are split. Bytes go
+ * through a fixed-size buffer; the caller's arrays are never modified. There is no authenticator:
+ * pair the stream with a MAC or a signature where the cipher text could be tampered with.
+ *
+ * A (key, nonce) pair must never encrypt two different streams. Not thread-safe.
+ *
+ * @author Dave
+ * @see SalsaDecryptingInputStream
+ */
+public class SalsaEncryptingOutputStream extends FilterOutputStream {
+
+	static final int BUFFER_BYTES = 8192;
+
+	private final SalsaEngine salsa = new SalsaEngine();
+	private final byte[] buf = new byte[BUFFER_BYTES];
+	private boolean closed;
+
+	/**
+	 * @param nonce the 24 byte XSalsa20 nonce
+	 * @param key the 32 byte key
+	 */
+	public SalsaEncryptingOutputStream(OutputStream out, byte[] nonce, byte[] key) {
+		this(out, nonce, key, 0);
+	}
+
+	/**
+	 * Continue a stream from byte pos, to resume an interrupted transfer or to append
+	 */
+	public SalsaEncryptingOutputStream(OutputStream out, byte[] nonce, byte[] key, long pos) {
+		super(out);
+		checkLengths(nonce, key);
+		salsa.initXSalsa20(key, 0, nonce, 0).seek(pos);
+	}
+
+	/**
+	 * The number of bytes of the stream so far, including the pos it was started at
+	 */
+	public long position() {
+		return salsa.position();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		buf[0] = (byte) b;
+		salsa.xor(buf, 0, buf, 0, 1);
+		out.write(buf, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if (off < 0 || len < 0 || off > b.length - len)
+			throw new IndexOutOfBoundsException("offset " + off + ", length " + len + ", array length " + b.length);
+		while (len > 0) {
+			int n = Math.min(len, BUFFER_BYTES);
+			salsa.xor(buf, 0, b, off, n);
+			out.write(buf, 0, n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Flushes and closes the underlying stream, and wipes the key schedule
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		salsa.clear();
+		Arrays.fill(buf, (byte) 0);
+		super.close();
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed)
+			throw new IOException("Stream closed");
+	}
+
+	static void checkLengths(byte[] nonce, byte[] key) {
+		if (nonce.length != SalsaEngine.XNONCE_BYTES)
+			throw new IllegalArgumentException("Illegal nonce length: " + nonce.length);
+		if (key.length != SalsaEngine.KEY_BYTES)
+			throw new IllegalArgumentException("Illegal key length: " + key.length);
+	}
+}
@@ -0,0 +1,367 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.tweet.salt.stream;
+
+import static com.cryptoregistry.util.LittleEndian.ld32;
+import static com.cryptoregistry.util.LittleEndian.st32;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+
+/**
+ * The one Salsa20 implementation behind secretbox, box, the stream package and SalsaDRBG.
+ *
+ * The key, nonce and constants are expanded once, by init(), into the sixteen word input block; after
+ * that a block costs the rounds plus a counter increment, and its words are xored straight into the
+ * output. The engine keeps its place in the keystream, so successive calls to xor() continue where
+ * the last one stopped, partial blocks included.
+ *
+ * HSalsa20, which derives the XSalsa20 subkey and the crypto_box shared key, is here as well, as
+ * hsalsa20().
+ *
+ * Not thread-safe; an engine is cheap, use one per stream.
+ *
+ * @author Dave
+ */
+public final class SalsaEngine {
+
+	public static final int KEY_BYTES = 32;
+	public static final int NONCE_BYTES = 8;
+	public static final int XNONCE_BYTES = 24;
+	public static final int BLOCK_BYTES = 64;
+
+	// "expand 32-byte k"
+	static final int SIGMA0 = 0x61707865, SIGMA1 = 0x3320646e, SIGMA2 = 0x79622d32, SIGMA3 = 0x6b206574;
+
+	// the scratch array for buffers without an accessible array
+	private static final int CHUNK_BYTES = 4096;
+
+	private final int rounds;
+	private final int[] j = new int[16];
+	// the state after the rounds, before the feed-forward
+	private final int[] x = new int[16];
+	// keystream left over from the last partial block, ks[ksPos..63]
+	private final byte[] ks = new byte[BLOCK_BYTES];
+	private int ksPos = BLOCK_BYTES;
+
+	public SalsaEngine() {
+		this(20);
+	}
+
+	/**
+	 * @param rounds 20 for Salsa20, or 12 or 8 for the reduced-round variants
+	 */
+	public SalsaEngine(int rounds) {
+		if (rounds <= 0 || (rounds & 1) != 0)
+			throw new IllegalArgumentException("Rounds must be even and positive: " + rounds);
+		this.rounds = rounds;
+	}
+
+	public int getRounds() {
+		return rounds;
+	}
+
+	/**
+	 * Start the keystream for the 32 byte key at key[keyOff] and the 8 byte nonce at nonce[nonceOff],
+	 * at block 0
+	 */
+	public SalsaEngine init(byte[] key, int keyOff, byte[] nonce, int nonceOff) {
+		if (keyOff < 0 || keyOff > key.length - KEY_BYTES)
+			throw new IllegalArgumentException("Salsa20 key needs " + KEY_BYTES + " bytes");
+		if (nonceOff < 0 || nonceOff > nonce.length - NONCE_BYTES)
+			throw new IllegalArgumentException("Salsa20 nonce needs " + NONCE_BYTES + " bytes");
+		j[0] = SIGMA0;
+		j[1] = ld32(key, keyOff);
+		j[2] = ld32(key, keyOff + 4);
+		j[3] = ld32(key, keyOff + 8);
+		j[4] = ld32(key, keyOff + 12);
+		j[5] = SIGMA1;
+		j[6] = ld32(nonce, nonceOff);
+		j[7] = ld32(nonce, nonceOff + 4);
+		j[8] = 0;
+		j[9] = 0;
+		j[10] = SIGMA2;
+		j[11] = ld32(key, keyOff + 16);
+		j[12] = ld32(key, keyOff + 20);
+		j[13] = ld32(key, keyOff + 24);
+		j[14] = ld32(key, keyOff + 28);
+		j[15] = SIGMA3;
+		ksPos = BLOCK_BYTES;
+		return this;
+	}
+
+	/**
+	 * Start the XSalsa20 keystream for the 32 byte key at key[keyOff] and the 24 byte nonce at
+	 * nonce[nonceOff], at block 0: Salsa20 under the HSalsa20 subkey of the key and the first 16 nonce
+	 * bytes, with the last 8 as its nonce
+	 */
+	public SalsaEngine initXSalsa20(byte[] key, int keyOff, byte[] nonce, int nonceOff) {
+		if (keyOff < 0 || keyOff > key.length - KEY_BYTES)
+			throw new IllegalArgumentException("XSalsa20 key needs " + KEY_BYTES + " bytes");
+		if (nonceOff < 0 || nonceOff > nonce.length - XNONCE_BYTES)
+			throw new IllegalArgumentException("XSalsa20 nonce needs " + XNONCE_BYTES + " bytes");
+		byte[] subkey = new byte[KEY_BYTES];
+		hsalsa20(subkey, 0, key, keyOff, nonce, nonceOff);
+		init(subkey, 0, nonce, nonceOff + 16);
+		Arrays.fill(subkey, (byte) 0);
+		return this;
+	}
+
+	/**
+	 * Move to byte pos of the keystream
+	 */
+	public void seek(long pos) {
+		if (pos < 0)
+			throw new IllegalArgumentException("Negative keystream position: " + pos);
+		setCounter(pos >>> 6);
+		ksPos = BLOCK_BYTES;
+		int skip = (int) (pos & 63);
+		if (skip != 0) {
+			block(ks, 0, null, 0);
+			ksPos = skip;
+		}
+	}
+
+	/**
+	 * The byte position in the keystream
+	 */
+	public long position() {
+		long next = (0xffffffffL & j[8]) | ((long) j[9] << 32);
+		return ksPos == BLOCK_BYTES ? next << 6 : ((next - 1) << 6) + ksPos;
+	}
+
+	private void setCounter(long blocks) {
+		j[8] = (int) blocks;
+		j[9] = (int) (blocks >>> 32);
+	}
+
+	/**
+	 * out[outOff..] = in[inOff..] xor the next len bytes of keystream. in == null gives the keystream
+	 * itself. out and in may be the same array at the same offset.
+	 */
+	public void xor(byte[] out, int outOff, byte[] in, int inOff, int len) {
+		if (len < 0 || outOff < 0 || outOff > out.length - len || (in != null && (inOff < 0 || inOff > in.length - len)))
+			throw new IndexOutOfBoundsException("offset " + outOff + ", length " + len + ", array length " + out.length);
+		while (len > 0 && ksPos < BLOCK_BYTES) {
+			out[outOff++] = (byte) ((in != null ? in[inOff++] : 0) ^ ks[ksPos++]);
+			len--;
+		}
+		while (len >= BLOCK_BYTES) {
+			block(out, outOff, in, inOff);
+			outOff += BLOCK_BYTES;
+			inOff += BLOCK_BYTES;
+			len -= BLOCK_BYTES;
+		}
+		if (len > 0) {
+			block(ks, 0, null, 0);
+			for (int i = 0; i < len; i++)
+				out[outOff + i] = (byte) ((in != null ? in[inOff + i] : 0) ^ ks[i]);
+			ksPos = len;
+		}
+	}
+
+	/**
+	 * ByteBuffer form of xor(): out = in xor the next in.remaining() bytes of keystream, and both
+	 * positions advance by that many. in == null gives out.remaining() bytes of keystream. out and in
+	 * may be views of the same memory at the same place, such as a mapped file encrypted in place.
+	 * Buffers without an accessible array are streamed through a small scratch array.
+	 *
+	 * @throws BufferOverflowException if out has less room than in has remaining
+	 */
+	public void xor(ByteBuffer out, ByteBuffer in) {
+		int len = in != null ? in.remaining() : out.remaining();
+		if (out.isReadOnly())
+			throw new ReadOnlyBufferException();
+		if (out.remaining() < len)
+			throw new BufferOverflowException();
+		if (out.hasArray() && (in == null || in.hasArray())) {
+			xor(out.array(), out.arrayOffset() + out.position(), in != null ? in.array() : null,
+					in != null ? in.arrayOffset() + in.position() : 0, len);
+			out.position(out.position() + len);
+			if (in != null)
+				in.position(in.limit());
+			return;
+		}
+		byte[] buf = new byte[Math.min(len, CHUNK_BYTES)];
+		while (len > 0) {
+			int n = Math.min(len, buf.length);
+			if (in != null)
+				in.get(buf, 0, n);
+			xor(buf, 0, in != null ? buf : null, 0, n);
+			out.put(buf, 0, n);
+			len -= n;
+		}
+		Arrays.fill(buf, (byte) 0);
+	}
+
+	/*
+	 * One 64 byte block of keystream, xored with in if it is not null, to out; then the counter moves on
+	 */
+	private void block(byte[] out, int outOff, byte[] in, int inOff) {
+		int[] j = this.j, x = this.x;
+		permute(x, j, rounds);
+		if (in == null) {
+			st32(out, outOff, x[0] + j[0]);
+			st32(out, outOff + 4, x[1] + j[1]);
+			st32(out, outOff + 8, x[2] + j[2]);
+			st32(out, outOff + 12, x[3] + j[3]);
+			st32(out, outOff + 16, x[4] + j[4]);
+			st32(out, outOff + 20, x[5] + j[5]);
+			st32(out, outOff + 24, x[6] + j[6]);
+			st32(out, outOff + 28, x[7] + j[7]);
+			st32(out, outOff + 32, x[8] + j[8]);
+			st32(out, outOff + 36, x[9] + j[9]);
+			st32(out, outOff + 40, x[10] + j[10]);
+			st32(out, outOff + 44, x[11] + j[11]);
+			st32(out, outOff + 48, x[12] + j[12]);
+			st32(out, outOff + 52, x[13] + j[13]);
+			st32(out, outOff + 56, x[14] + j[14]);
+			st32(out, outOff + 60, x[15] + j[15]);
+		} else {
+			st32(out, outOff, ld32(in, inOff) ^ (x[0] + j[0]));
+			st32(out, outOff + 4, ld32(in, inOff + 4) ^ (x[1] + j[1]));
+			st32(out, outOff + 8, ld32(in, inOff + 8) ^ (x[2] + j[2]));
+			st32(out, outOff + 12, ld32(in, inOff + 12) ^ (x[3] + j[3]));
+			st32(out, outOff + 16, ld32(in, inOff + 16) ^ (x[4] + j[4]));
+			st32(out, outOff + 20, ld32(in, inOff + 20) ^ (x[5] + j[5]));
+			st32(out, outOff + 24, ld32(in, inOff + 24) ^ (x[6] + j[6]));
+			st32(out, outOff + 28, ld32(in, inOff + 28) ^ (x[7] + j[7]));
+			st32(out, outOff + 32, ld32(in, inOff + 32) ^ (x[8] + j[8]));
+			st32(out, outOff + 36, ld32(in, inOff + 36) ^ (x[9] + j[9]));
+			st32(out, outOff + 40, ld32(in, inOff + 40) ^ (x[10] + j[10]));
+			st32(out, outOff + 44, ld32(in, inOff + 44) ^ (x[11] + j[11]));
+			st32(out, outOff + 48, ld32(in, inOff + 48) ^ (x[12] + j[12]));
+			st32(out, outOff + 52, ld32(in, inOff + 52) ^ (x[13] + j[13]));
+			st32(out, outOff + 56, ld32(in, inOff + 56) ^ (x[14] + j[14]));
+			st32(out, outOff + 60, ld32(in, inOff + 60) ^ (x[15] + j[15]));
+		}
+		if (++j[8] == 0)
+			++j[9];
+	}
+
+	/**
+	 * HSalsa20: the 32 byte hash to out[outOff] of the 32 byte key at key[keyOff] and the 16 byte input
+	 * at in[inOff]. XSalsa20 takes its subkey from the first 16 nonce bytes this way, and crypto_box
+	 * its shared key from a zero input.
+	 */
+	public static void hsalsa20(byte[] out, int outOff, byte[] key, int keyOff, byte[] in, int inOff) {
+		int[] x = new int[16];
+		x[0] = SIGMA0;
+		x[5] = SIGMA1;
+		x[10] = SIGMA2;
+		x[15] = SIGMA3;
+		hsalsa20(out, outOff, x, key, keyOff, in, inOff);
+	}
+
+	/*
+	 * hsalsa20() with the constants already in x[0], x[5], x[10] and x[15]; in may be null for zeros.
+	 * x is overwritten.
+	 */
+	static void hsalsa20(byte[] out, int outOff, int[] x, byte[] key, int keyOff, byte[] in, int inOff) {
+		for (int i = 0; i < 4; i++) {
+			x[1 + i] = ld32(key, keyOff + 4 * i);
+			x[11 + i] = ld32(key, keyOff + 16 + 4 * i);
+			x[6 + i] = in == null ? 0 : ld32(in, inOff + 4 * i);
+		}
+		permute(x, x, 20);
+		// the diagonal and the input words, without the feed-forward
+		st32(out, outOff, x[0]);
+		st32(out, outOff + 4, x[5]);
+		st32(out, outOff + 8, x[10]);
+		st32(out, outOff + 12, x[15]);
+		st32(out, outOff + 16, x[6]);
+		st32(out, outOff + 20, x[7]);
+		st32(out, outOff + 24, x[8]);
+		st32(out, outOff + 28, x[9]);
+		Arrays.fill(x, 0);
+	}
+
+	/*
+	 * The Salsa20 rounds on the sixteen words of in, to out, without the feed-forward; out may be in.
+	 * The one round implementation, behind the keystream, hsalsa20() and the crypto_core of Salsa20
+	 * and HSalsa20.
+	 */
+	static void permute(int[] out, int[] in, int rounds) {
+		int x0 = in[0], x1 = in[1], x2 = in[2], x3 = in[3], x4 = in[4], x5 = in[5], x6 = in[6], x7 = in[7];
+		int x8 = in[8], x9 = in[9], x10 = in[10], x11 = in[11], x12 = in[12], x13 = in[13], x14 = in[14], x15 = in[15];
+		for (int i = rounds; i > 0; i -= 2) {
+			x4 ^= Integer.rotateLeft(x0 + x12, 7);
+			x8 ^= Integer.rotateLeft(x4 + x0, 9);
+			x12 ^= Integer.rotateLeft(x8 + x4, 13);
+			x0 ^= Integer.rotateLeft(x12 + x8, 18);
+			x9 ^= Integer.rotateLeft(x5 + x1, 7);
+			x13 ^= Integer.rotateLeft(x9 + x5, 9);
+			x1 ^= Integer.rotateLeft(x13 + x9, 13);
+			x5 ^= Integer.rotateLeft(x1 + x13, 18);
+			x14 ^= Integer.rotateLeft(x10 + x6, 7);
+			x2 ^= Integer.rotateLeft(x14 + x10, 9);
+			x6 ^= Integer.rotateLeft(x2 + x14, 13);
+			x10 ^= Integer.rotateLeft(x6 + x2, 18);
+			x3 ^= Integer.rotateLeft(x15 + x11, 7);
+			x7 ^= Integer.rotateLeft(x3 + x15, 9);
+			x11 ^= Integer.rotateLeft(x7 + x3, 13);
+			x15 ^= Integer.rotateLeft(x11 + x7, 18);
+			x1 ^= Integer.rotateLeft(x0 + x3, 7);
+			x2 ^= Integer.rotateLeft(x1 + x0, 9);
+			x3 ^= Integer.rotateLeft(x2 + x1, 13);
+			x0 ^= Integer.rotateLeft(x3 + x2, 18);
+			x6 ^= Integer.rotateLeft(x5 + x4, 7);
+			x7 ^= Integer.rotateLeft(x6 + x5, 9);
+			x4 ^= Integer.rotateLeft(x7 + x6, 13);
+			x5 ^= Integer.rotateLeft(x4 + x7, 18);
+			x11 ^= Integer.rotateLeft(x10 + x9, 7);
+			x8 ^= Integer.rotateLeft(x11 + x10, 9);
+			x9 ^= Integer.rotateLeft(x8 + x11, 13);
+			x10 ^= Integer.rotateLeft(x9 + x8, 18);
+			x12 ^= Integer.rotateLeft(x15 + x14, 7);
+			x13 ^= Integer.rotateLeft(x12 + x15, 9);
+			x14 ^= Integer.rotateLeft(x13 + x12, 13);
+			x15 ^= Integer.rotateLeft(x14 + x13, 18);
+		}
+		out[0] = x0;
+		out[1] = x1;
+		out[2] = x2;
+		out[3] = x3;
+		out[4] = x4;
+		out[5] = x5;
+		out[6] = x6;
+		out[7] = x7;
+		out[8] = x8;
+		out[9] = x9;
+		out[10] = x10;
+		out[11] = x11;
+		out[12] = x12;
+		out[13] = x13;
+		out[14] = x14;
+		out[15] = x15;
+	}
+
+	/**
+	 * Wipe the key from the engine. It must be given a new one with init() before it is used again.
+	 */
+	public void clear() {
+		Arrays.fill(j, 0);
+		Arrays.fill(x, 0);
+		Arrays.fill(ks, (byte) 0);
+		ksPos = BLOCK_BYTES;
+	}
+}
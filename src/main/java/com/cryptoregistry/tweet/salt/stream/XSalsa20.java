@@ -27,6 +27,8 @@
 
 package com.cryptoregistry.tweet.salt.stream;
 
+import java.util.Arrays;
+
 public class XSalsa20 extends HSalsa20 {
 	
 	public final int CRYPTO_STREAM_XSALSA20_REF_KEYBYTES = 32;
@@ -38,18 +40,45 @@ public class XSalsa20 extends HSalsa20 {
 			(byte) 'e', (byte) ' ', (byte) 'k' };
 
 	
+	/**
+	 * The first clen bytes of the XSalsa20 keystream for the 24 byte nonce n and the key k, to c
+	 */
 	public int crypto_stream(byte[] c, int clen, byte[] n, byte[] k) {
-		byte[] subkey = new byte[32];
-
-		super.crypto_core(subkey, n, k, sigma);
-		return super.crypto_stream(c, clen, n, 16, subkey);
+		return crypto_stream_xor(c, null, clen, n, k);
 	}
 
+	/**
+	 * c = m xor the XSalsa20 keystream, for the first mlen bytes; m == null gives the keystream
+	 */
 	public int crypto_stream_xor(byte[] c, byte[] m, long mlen, byte[] n,
 			byte[] k) {
+		if (mlen == 0)
+			return 0;
 		byte[] subkey = new byte[32];
+		SalsaEngine.hsalsa20(subkey, 0, k, 0, n, 0);
+		SalsaEngine salsa = new SalsaEngine().init(subkey, 0, n, 16);
+		salsa.xor(c, 0, m, 0, (int) mlen);
+		salsa.clear();
+		Arrays.fill(subkey, (byte) 0);
+		return 0;
+	}
 
-		super.crypto_core(subkey, n, k, sigma);
-		return super.crypto_stream_xor(c, m, (int) mlen, n, 16, subkey);
+	/**
+	 * c[cOff..] = m[mOff..] xor len bytes of the XSalsa20 keystream starting at byte pos of it; m == null
+	 * gives the keystream
+	 *
+	 * @see Salsa20#crypto_stream_xor(byte[], int, byte[], int, int, byte[], int, byte[], long)
+	 */
+	public int crypto_stream_xor(byte[] c, int cOff, byte[] m, int mOff, int len, byte[] n, byte[] k, long pos) {
+		if (len == 0)
+			return 0;
+		byte[] subkey = new byte[32];
+		SalsaEngine.hsalsa20(subkey, 0, k, 0, n, 0);
+		SalsaEngine salsa = new SalsaEngine().init(subkey, 0, n, 16);
+		salsa.seek(pos);
+		salsa.xor(c, cOff, m, mOff, len);
+		salsa.clear();
+		Arrays.fill(subkey, (byte) 0);
+		return 0;
 	}
 }
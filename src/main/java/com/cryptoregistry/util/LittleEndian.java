@@ -0,0 +1,57 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.util;
+
+/**
+ * Little-endian loads and stores of 32 and 64 bit words in byte arrays, for the Salsa20, Poly1305,
+ * CubeHash and Keccak cores.
+ *
+ * This is the Java 8 version, which assembles each word a byte at a time. The jar is multi-release:
+ * on Java 9 and later the class under META-INF/versions/9 is loaded instead, which does the same
+ * through a byte array view VarHandle, a single (possibly unaligned) memory access. Both versions
+ * throw IndexOutOfBoundsException for a word which does not fit in the array.
+ *
+ * @author Dave
+ */
+public final class LittleEndian {
+
+	private LittleEndian() {
+	}
+
+	public static int ld32(byte[] b, int off) {
+		return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | b[off + 3] << 24;
+	}
+
+	public static void st32(byte[] b, int off, int u) {
+		b[off] = (byte) u;
+		b[off + 1] = (byte) (u >>> 8);
+		b[off + 2] = (byte) (u >>> 16);
+		b[off + 3] = (byte) (u >>> 24);
+	}
+
+	public static long ld64(byte[] b, int off) {
+		return (ld32(b, off) & 0xffffffffL) | (long) ld32(b, off + 4) << 32;
+	}
+
+	public static void st64(byte[] b, int off, long u) {
+		st32(b, off, (int) u);
+		st32(b, off + 4, (int) (u >>> 32));
+	}
+}
@@ -0,0 +1,60 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+package com.cryptoregistry.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Little-endian loads and stores of 32 and 64 bit words in byte arrays, for the Salsa20, Poly1305,
+ * CubeHash and Keccak cores.
+ *
+ * This is the Java 9 version, found under META-INF/versions/9 of the multi-release jar. Each word
+ * is one access through a byte array view VarHandle, which the JIT compiles to a plain (possibly
+ * unaligned) load or store on x86 and aarch64. It must keep the same public signatures as the
+ * Java 8 version in src/main/java.
+ *
+ * @author Dave
+ */
+public final class LittleEndian {
+
+	private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private LittleEndian() {
+	}
+
+	public static int ld32(byte[] b, int off) {
+		return (int) INT.get(b, off);
+	}
+
+	public static void st32(byte[] b, int off, int u) {
+		INT.set(b, off, u);
+	}
+
+	public static long ld64(byte[] b, int off) {
+		return (long) LONG.get(b, off);
+	}
+
+	public static void st64(byte[] b, int off, long u) {
+		LONG.set(b, off, u);
+	}
+}
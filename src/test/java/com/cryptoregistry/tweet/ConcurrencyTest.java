@@ -0,0 +1,192 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+package com.cryptoregistry.tweet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cryptoregistry.tweet.pepper.CryptoBatchExecutor;
+import com.cryptoregistry.tweet.pepper.CryptoBatchExecutor.Batch;
+import com.cryptoregistry.tweet.pepper.CryptoBatchExecutor.BatchStats;
+import com.cryptoregistry.tweet.pepper.CryptoBatchExecutor.Job;
+import com.cryptoregistry.tweet.salt.Ed25519PublicKey;
+import com.cryptoregistry.tweet.salt.Ed25519SigningKey;
+import com.cryptoregistry.tweet.salt.SharedKey;
+import com.cryptoregistry.tweet.salt.TweetNaCl;
+
+public class ConcurrencyTest {
+
+	static final int THREADS = 16;
+	static final int ROUNDS = 200;
+
+	@Test
+	public void testSharedInstance() throws Exception {
+		final TweetNaCl salt = TweetNaCl.getInstance();
+		Assert.assertSame(salt, TweetNaCl.getInstance());
+
+		// expected results, worked out on this thread alone
+		final byte[] signPk = new byte[TweetNaCl.SIGN_PUBLIC_KEY_BYTES], signSk = new byte[TweetNaCl.SIGN_SECRET_KEY_BYTES];
+		salt.crypto_sign_keypair(signPk, signSk, false);
+		final byte[] peerPk = new byte[TweetNaCl.BOX_PUBLIC_KEY_BYTES], peerSk = new byte[TweetNaCl.BOX_SECRET_KEY_BYTES];
+		salt.crypto_box_keypair(peerPk, peerSk, false);
+		final byte[][] messages = new byte[ROUNDS][], signatures = new byte[ROUNDS][];
+		for (int i = 0; i < ROUNDS; i++) {
+			messages[i] = salt.gen_rand(i % 97 + 1);
+			signatures[i] = salt.crypto_sign_detached(messages[i], signSk);
+		}
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final int id = t;
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						start.await();
+						byte[] pk = new byte[TweetNaCl.BOX_PUBLIC_KEY_BYTES], sk = new byte[TweetNaCl.BOX_SECRET_KEY_BYTES];
+						for (int i = 0; i < ROUNDS; i++) {
+							int r = (i + id) % ROUNDS;
+							// signatures are deterministic, so every thread must get the same bytes
+							Assert.assertTrue(Arrays.equals(signatures[r], salt.crypto_sign_detached(messages[r], signSk)));
+							salt.crypto_sign_verify_detached(signatures[r], messages[r], signPk);
+
+							salt.crypto_box_keypair(pk, sk, false);
+							byte[] nonce = salt.gen_rand(TweetNaCl.BOX_NONCE_BYTES);
+							byte[] cipher = salt.crypto_box(messages[r], nonce, peerPk, sk);
+							Assert.assertTrue(Arrays.equals(messages[r], salt.crypto_box_open(cipher, nonce, pk, peerSk)));
+						}
+					} catch (Throwable x) {
+						failure.compareAndSet(null, x);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Thread t : threads)
+			t.join();
+		long ms = (System.nanoTime() - begin) / 1000000;
+		if (failure.get() != null)
+			throw new AssertionError(failure.get());
+		System.err.println(THREADS + " threads x " + ROUNDS + " rounds of sign, verify, keypair, box and open on one instance: "
+				+ ms + "ms on " + Runtime.getRuntime().availableProcessors() + " cores");
+	}
+
+	@Test
+	public void testBatchExecutor() throws Exception {
+		final TweetNaCl salt = TweetNaCl.getInstance();
+		byte[] signPk = new byte[TweetNaCl.SIGN_PUBLIC_KEY_BYTES], signSk = new byte[TweetNaCl.SIGN_SECRET_KEY_BYTES];
+		salt.crypto_sign_keypair(signPk, signSk, false);
+		Ed25519SigningKey signingKey = new Ed25519SigningKey(signSk);
+		Ed25519PublicKey publicKey = new Ed25519PublicKey(signPk);
+		byte[] pk = new byte[TweetNaCl.BOX_PUBLIC_KEY_BYTES], sk = new byte[TweetNaCl.BOX_SECRET_KEY_BYTES];
+		salt.crypto_box_keypair(pk, sk, false);
+		SharedKey shared = salt.crypto_box_beforenm(pk, sk);
+
+		int n = 1000;
+		byte[][] messages = new byte[n][], nonces = new byte[n][];
+		List<Job<byte[]>> boxes = new ArrayList<Job<byte[]>>(), signs = new ArrayList<Job<byte[]>>();
+		for (int i = 0; i < n; i++) {
+			messages[i] = salt.gen_rand(i % 200);
+			nonces[i] = salt.gen_rand(TweetNaCl.BOX_NONCE_BYTES);
+			boxes.add(CryptoBatchExecutor.box(messages[i], nonces[i], shared));
+			signs.add(CryptoBatchExecutor.sign(messages[i], signingKey));
+		}
+
+		// a small executor, so that submit() has to wait for room
+		final CryptoBatchExecutor executor = new CryptoBatchExecutor(new ForkJoinPool(2), salt, 40);
+		Batch<byte[]> boxed = executor.submit(boxes);
+		Batch<byte[]> signed = executor.submit(signs);
+		Assert.assertTrue(executor.pendingJobs() <= 40);
+		List<byte[]> ciphers = boxed.all().get();
+		List<byte[]> signatures = signed.all().get();
+
+		List<Job<byte[]>> opens = new ArrayList<Job<byte[]>>();
+		List<Job<Boolean>> verifies = new ArrayList<Job<Boolean>>();
+		for (int i = 0; i < n; i++) {
+			byte[] c = ciphers.get(i);
+			byte[] sig = signatures.get(i);
+			if (i % 10 == 3) {
+				c = c.clone();
+				c[0] ^= 1;
+				sig = sig.clone();
+				sig[5] ^= 1;
+			}
+			opens.add(CryptoBatchExecutor.unbox(c, nonces[i], shared));
+			verifies.add(i % 2 == 0 ? CryptoBatchExecutor.verify(sig, messages[i], publicKey)
+					: CryptoBatchExecutor.verify(sig, messages[i], signPk));
+		}
+		Batch<byte[]> opened = executor.submit(opens);
+		Batch<Boolean> verified = executor.submit(verifies);
+		for (int i = 0; i < n; i++) {
+			boolean tampered = i % 10 == 3;
+			Assert.assertEquals(!tampered, verified.result(i).get());
+			try {
+				Assert.assertTrue(Arrays.equals(messages[i], opened.result(i).get()));
+				Assert.assertFalse(tampered);
+			} catch (ExecutionException x) {
+				Assert.assertTrue(tampered);
+				Assert.assertTrue(x.getCause() instanceof TweetNaCl.InvalidCipherTextException);
+			}
+		}
+		BatchStats stats = opened.stats().get();
+		Assert.assertEquals(n, stats.jobs);
+		Assert.assertEquals(n / 10, stats.failed);
+		Assert.assertEquals(0, verified.stats().get().failed);
+		Assert.assertEquals(0, executor.pendingJobs());
+		Assert.assertEquals(0, executor.submit(new ArrayList<Job<byte[]>>()).stats().get().jobs);
+
+		System.err.println("boxes: " + boxed.stats().get() + "; signatures: " + signed.stats().get() + "; opens: " + stats
+				+ "; verifies: " + verified.stats().get());
+	}
+	
+	@Test
+	public void testBatchExecutorRejected() throws Exception {
+		TweetNaCl salt = TweetNaCl.getInstance();
+		byte[] key = salt.gen_rand(TweetNaCl.SECRETBOX_KEY_BYTES);
+		List<Job<byte[]>> jobs = new ArrayList<Job<byte[]>>();
+		for (int i = 0; i < 100; i++)
+			jobs.add(CryptoBatchExecutor.secretbox(salt.gen_rand(i), salt.gen_rand(TweetNaCl.SECRETBOX_NONCE_BYTES), key));
+		
+		ForkJoinPool pool = new ForkJoinPool(1);
+		pool.shutdown();
+		CryptoBatchExecutor executor = new CryptoBatchExecutor(pool, salt, 40);
+		Batch<byte[]> batch = executor.submit(jobs);
+		Assert.assertEquals(100, batch.stats().get().failed);
+		try {
+			batch.result(99).get();
+			Assert.fail();
+		} catch (ExecutionException x) {
+			Assert.assertTrue(x.getCause() instanceof RejectedExecutionException);
+		}
+		Assert.assertEquals(0, executor.pendingJobs());
+	}
+}
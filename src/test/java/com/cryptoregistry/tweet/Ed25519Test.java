@@ -0,0 +1,631 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+package com.cryptoregistry.tweet;
+
+import static com.cryptoregistry.tweet.SHA512Test.hex;
+import static com.cryptoregistry.tweet.SHA512Test.unhex;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cryptoregistry.tweet.pepper.TweetPepper;
+import com.cryptoregistry.tweet.pepper.key.Key;
+import com.cryptoregistry.tweet.pepper.key.SigningKeyContents;
+import com.cryptoregistry.tweet.salt.Ed25519PublicKey;
+import com.cryptoregistry.tweet.salt.Ed25519PublicKeyCache;
+import com.cryptoregistry.tweet.salt.Ed25519SigningKey;
+import com.cryptoregistry.tweet.salt.Ed25519ph;
+import com.cryptoregistry.tweet.salt.TweetNaCl;
+
+public class Ed25519Test {
+
+	// RFC 8032, 7.1, TEST 2 and TEST 3: secret key, public key, message, signature
+	static final String[][] VECTORS = {
+			{ "4ccd089b28ff96da9db6c346ec114e0f5b8a319f35aba624da8cf6ed4fb8a6fb",
+					"3d4017c3e843895a92b70aa74d1b7ebc9c982ccf2ec4968cc0cd55f12af4660c",
+					"72",
+					"92a009a9f0d4cab8720e820b5f642540a2b27b5416503f8fb3762223ebdb69da"
+							+ "085ac1e43e15996e458f3613d0f11d8c387b2eaeb4302aeeb00d291612bb0c00" },
+			{ "c5aa8df43f9f837bedb7442f31dcb7b166d38535076f094b85ce3a2e0b4458f7",
+					"fc51cd8e6218a1a38da47ed00230f0580816ed13ba3303ac5deb911548908025",
+					"af82",
+					"6291d657deec24024827e69c3abe01a30ce548a284743a445e3680d7db5ac3ac"
+							+ "18ff9b538d16f290ae67f760984dc6594a7c15e9716ed28dc027beceea1ec40a" } };
+
+	@Test
+	public void testVectors() {
+		TweetNaCl salt = new TweetNaCl();
+		for (String[] v : VECTORS) {
+			byte[] sk = new byte[TweetNaCl.SIGN_SECRET_KEY_BYTES];
+			byte[] pk = new byte[TweetNaCl.SIGN_PUBLIC_KEY_BYTES];
+			System.arraycopy(unhex(v[0]), 0, sk, 0, 32);
+			salt.crypto_sign_keypair(pk, sk, true);
+			Assert.assertEquals(v[1], hex(pk));
+
+			byte[] msg = unhex(v[2]);
+			byte[] signed = salt.crypto_sign(msg, sk);
+			Assert.assertEquals(v[3], hex(Arrays.copyOf(signed, 64)));
+			Assert.assertTrue(Arrays.equals(msg, salt.crypto_sign_open(signed, pk)));
+		}
+	}
+
+	@Test
+	public void testRoundTrips() {
+		TweetNaCl salt = new TweetNaCl();
+		for (int i = 0; i < 64; i++) {
+			byte[] sk = new byte[TweetNaCl.SIGN_SECRET_KEY_BYTES];
+			byte[] pk = new byte[TweetNaCl.SIGN_PUBLIC_KEY_BYTES];
+			salt.crypto_sign_keypair(pk, sk, false);
+			byte[] msg = salt.gen_rand(i * 7);
+			byte[] signed = salt.crypto_sign(msg, sk);
+			Assert.assertTrue(Arrays.equals(msg, salt.crypto_sign_open(signed, pk)));
+
+			// S with any of its top three bits set is never accepted
+			signed[63] |= 0x20 << (i % 3);
+			try {
+				salt.crypto_sign_open(signed, pk);
+				Assert.fail();
+			} catch (TweetNaCl.InvalidSignatureException x) {}
+		}
+	}
+
+	@Test
+	public void testBatchVerify() {
+		TweetNaCl salt = new TweetNaCl();
+		int n = 64;
+		byte[][] msgs = new byte[n][], sigs = new byte[n][], pks = new byte[n][];
+		for (int i = 0; i < n; i++) {
+			byte[] sk = new byte[TweetNaCl.SIGN_SECRET_KEY_BYTES];
+			pks[i] = new byte[TweetNaCl.SIGN_PUBLIC_KEY_BYTES];
+			salt.crypto_sign_keypair(pks[i], sk, false);
+			msgs[i] = salt.gen_rand(i);
+			sigs[i] = Arrays.copyOf(salt.crypto_sign(msgs[i], sk), 64);
+		}
+		boolean[] valid = salt.crypto_sign_verify_batch(msgs, sigs, pks);
+		for (boolean b : valid)
+			Assert.assertTrue(b);
+
+		// the RFC vectors as signed messages
+		byte[][] signed = new byte[VECTORS.length][], vpks = new byte[VECTORS.length][];
+		for (int i = 0; i < VECTORS.length; i++) {
+			byte[] msg = unhex(VECTORS[i][2]);
+			signed[i] = Arrays.copyOf(unhex(VECTORS[i][3]), 64 + msg.length);
+			System.arraycopy(msg, 0, signed[i], 64, msg.length);
+			vpks[i] = unhex(VECTORS[i][1]);
+		}
+		for (boolean b : salt.crypto_sign_open_batch(signed, vpks))
+			Assert.assertTrue(b);
+
+		// a bad R, a bad S, a wrong message, a wrong key and a short signature
+		sigs[3][5] ^= 1;
+		sigs[17][40] ^= 1;
+		msgs[29] = salt.gen_rand(29);
+		pks[41] = pks[42];
+		sigs[55] = new byte[10];
+		valid = salt.crypto_sign_verify_batch(msgs, sigs, pks);
+		for (int i = 0; i < n; i++) {
+			boolean bad = i == 3 || i == 17 || i == 29 || i == 41 || i == 55;
+			Assert.assertEquals(!bad, valid[i]);
+		}
+	}
+
+	/**
+	 * A signature whose R is off by a point of order 4 (made here with BigInteger arithmetic, since
+	 * crypto_sign never makes one) gets the same answer from single and batch verification, whatever
+	 * else is in the batch
+	 */
+	@Test
+	public void testSmallOrderAgreement() throws Exception {
+		TweetNaCl salt = new TweetNaCl();
+		BigInteger a = new BigInteger(1, salt.gen_rand(31)), r = new BigInteger(1, salt.gen_rand(31));
+		byte[] pk = encode(mul(a, BASE));
+		byte[] msg = salt.gen_rand(100);
+		BigInteger[] torsion = { SQRT_M1, BigInteger.ZERO };
+		byte[] rEnc = encode(edAdd(mul(r, BASE), torsion));
+		MessageDigest sha = MessageDigest.getInstance("SHA-512");
+		sha.update(rEnc);
+		sha.update(pk);
+		BigInteger h = new BigInteger(1, reverse(sha.digest(msg))).mod(ORDER);
+		byte[] sig = Arrays.copyOf(rEnc, 64);
+		System.arraycopy(Arrays.copyOf(reverse(r.add(h.multiply(a)).mod(ORDER).toByteArray()), 32), 0, sig, 32, 32);
+
+		// a batch of good signatures, then one with a bad entry which forces the one by one check
+		int n = 8;
+		byte[][] msgs = new byte[n][], sigs = new byte[n][], pks = new byte[n][];
+		for (int i = 0; i < n; i++) {
+			byte[] sk = new byte[TweetNaCl.SIGN_SECRET_KEY_BYTES];
+			pks[i] = new byte[TweetNaCl.SIGN_PUBLIC_KEY_BYTES];
+			salt.crypto_sign_keypair(pks[i], sk, false);
+			msgs[i] = salt.gen_rand(i);
+			sigs[i] = salt.crypto_sign_detached(msgs[i], sk);
+		}
+		msgs[2] = msg;
+		sigs[2] = sig;
+		pks[2] = pk;
+		for (int round = 0; round < 2; round++) {
+			if (round == 1)
+				sigs[5][40] ^= 1;
+			boolean[] valid = salt.crypto_sign_verify_batch(msgs, sigs, pks);
+			for (int i = 0; i < n; i++)
+				Assert.assertEquals(verifies(salt, sigs[i], msgs[i], pks[i]), valid[i]);
+		}
+		Assert.assertTrue(verifies(salt, sig, msg, pk));
+		salt.crypto_sign_verify_detached(sig, msg, new Ed25519PublicKey(pk));
+
+		// the same R with an S for the untweaked one fails both ways
+		sha.update(encode(mul(r, BASE)));
+		sha.update(pk);
+		BigInteger h0 = new BigInteger(1, reverse(sha.digest(msg))).mod(ORDER);
+		System.arraycopy(Arrays.copyOf(reverse(r.add(h0.multiply(a)).mod(ORDER).toByteArray()), 32), 0, sig, 32, 32);
+		Assert.assertFalse(verifies(salt, sig, msg, pk));
+		Assert.assertFalse(salt.crypto_sign_verify_batch(new byte[][] { msg }, new byte[][] { sig }, new byte[][] { pk })[0]);
+	}
+
+	private static boolean verifies(TweetNaCl salt, byte[] sig, byte[] msg, byte[] pk) {
+		try {
+			salt.crypto_sign_verify_detached(sig, msg, pk);
+			return true;
+		} catch (TweetNaCl.InvalidSignatureException x) {
+			return false;
+		}
+	}
+
+	// affine Edwards arithmetic for testSmallOrderAgreement
+	private static final BigInteger P = BigInteger.ONE.shiftLeft(255).subtract(BigInteger.valueOf(19));
+	private static final BigInteger ORDER = BigInteger.ONE.shiftLeft(252)
+			.add(new BigInteger("27742317777372353535851937790883648493"));
+	private static final BigInteger CURVE_D = BigInteger.valueOf(-121665)
+			.multiply(BigInteger.valueOf(121666).modInverse(P)).mod(P);
+	private static final BigInteger SQRT_M1 = BigInteger.valueOf(2).modPow(P.subtract(BigInteger.ONE).shiftRight(2), P);
+	private static final BigInteger[] BASE = {
+			new BigInteger("15112221349535400772501151409588531511454012693041857206046113283949847762202"),
+			new BigInteger("46316835694926478169428394003475163141307993866256225615783033603165251855960") };
+
+	private static BigInteger[] edAdd(BigInteger[] p, BigInteger[] q) {
+		BigInteger t = CURVE_D.multiply(p[0]).multiply(q[0]).multiply(p[1]).multiply(q[1]).mod(P);
+		BigInteger x = p[0].multiply(q[1]).add(p[1].multiply(q[0])).multiply(BigInteger.ONE.add(t).modInverse(P));
+		BigInteger y = p[1].multiply(q[1]).add(p[0].multiply(q[0])).multiply(BigInteger.ONE.subtract(t).modInverse(P));
+		return new BigInteger[] { x.mod(P), y.mod(P) };
+	}
+
+	private static BigInteger[] mul(BigInteger k, BigInteger[] p) {
+		BigInteger[] q = { BigInteger.ZERO, BigInteger.ONE };
+		for (int i = k.bitLength() - 1; i >= 0; i--) {
+			q = edAdd(q, q);
+			if (k.testBit(i))
+				q = edAdd(q, p);
+		}
+		return q;
+	}
+
+	private static byte[] encode(BigInteger[] p) {
+		byte[] e = Arrays.copyOf(reverse(p[1].toByteArray()), 32);
+		if (p[0].testBit(0))
+			e[31] |= (byte) 0x80;
+		return e;
+	}
+
+	private static byte[] reverse(byte[] b) {
+		byte[] r = new byte[b.length];
+		for (int i = 0; i < b.length; i++)
+			r[i] = b[b.length - 1 - i];
+		return r;
+	}
+
+	@Test
+	public void testBatchThroughput() {
+		TweetNaCl salt = new TweetNaCl();
+		int n = 128;
+		byte[][] msgs = new byte[n][], sigs = new byte[n][], pks = new byte[n][];
+		for (int i = 0; i < n; i++) {
+			byte[] sk = new byte[TweetNaCl.SIGN_SECRET_KEY_BYTES];
+			pks[i] = new byte[TweetNaCl.SIGN_PUBLIC_KEY_BYTES];
+			salt.crypto_sign_keypair(pks[i], sk, false);
+			msgs[i] = salt.gen_rand(100);
+			sigs[i] = Arrays.copyOf(salt.crypto_sign(msgs[i], sk), 64);
+		}
+		salt.crypto_sign_verify_batch(msgs, sigs, pks); // warm up
+
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++) {
+			byte[] signed = Arrays.copyOf(sigs[i], 64 + msgs[i].length);
+			System.arraycopy(msgs[i], 0, signed, 64, msgs[i].length);
+			salt.crypto_sign_open(signed, pks[i]);
+		}
+		long single = (System.nanoTime() - start) / 1000000;
+		start = System.nanoTime();
+		salt.crypto_sign_verify_batch(msgs, sigs, pks);
+		long batch = (System.nanoTime() - start) / 1000000;
+		System.err.println(n + " signatures: one at a time " + single + "ms, batch " + batch + "ms");
+	}
+
+	@Test
+	public void testScratchPerThread() throws Exception {
+		final TweetNaCl salt = new TweetNaCl();
+		final byte[] sk = new byte[TweetNaCl.SIGN_SECRET_KEY_BYTES];
+		final byte[] pk = new byte[TweetNaCl.SIGN_PUBLIC_KEY_BYTES];
+		System.arraycopy(unhex(VECTORS[0][0]), 0, sk, 0, 32);
+		salt.crypto_sign_keypair(pk, sk, true);
+		final byte[] msg = unhex(VECTORS[0][2]);
+
+		// the curve temporaries are reused between calls, but never shared between threads
+		final AtomicInteger failures = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < 50; j++) {
+						byte[] signed = salt.crypto_sign(msg, sk);
+						if (!hex(Arrays.copyOf(signed, 64)).equals(VECTORS[0][3]))
+							failures.incrementAndGet();
+						if (!Arrays.equals(msg, salt.crypto_sign_open(signed, pk)))
+							failures.incrementAndGet();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		Assert.assertEquals(0, failures.get());
+	}
+
+	@Test
+	public void testX25519Vectors() {
+		// RFC 7748, 6.1
+		String aliceSk = "77076d0a7318a57d3c16c17251b26645df4c2f87ebc0992ab177fba51db92c2a";
+		String alicePk = "8520f0098930a754748b7ddcb43ef75a0dbf3a0d26381af4eba4a98eaa9b4e6a";
+		String bobSk = "5dab087e624a8a4b79e17f8b83800ee66f3bb1292618b6fd1c2f8b27ff88e0eb";
+		String bobPk = "de9edb7d7b7dc1b4d35b61c2ece435373f8343c85b78674dadfc7e146f882b4f";
+
+		TweetNaCl salt = new TweetNaCl();
+		byte[] pk = new byte[TweetNaCl.BOX_PUBLIC_KEY_BYTES];
+		salt.crypto_scalarmult_base(pk, unhex(aliceSk));
+		Assert.assertEquals(alicePk, hex(pk));
+		salt.crypto_scalarmult_base(pk, unhex(bobSk));
+		Assert.assertEquals(bobPk, hex(pk));
+
+		// both ends arrive at the same shared key
+		byte[] nonce = salt.gen_rand(TweetNaCl.BOX_NONCE_BYTES);
+		byte[] msg = salt.gen_rand(100);
+		byte[] cipher = salt.crypto_box_afternm(msg, nonce, salt.crypto_box_beforenm(unhex(bobPk), unhex(aliceSk)));
+		Assert.assertTrue(Arrays.equals(msg,
+				salt.crypto_box_open_afternm(cipher, nonce, salt.crypto_box_beforenm(unhex(alicePk), unhex(bobSk)))));
+	}
+
+	@Test
+	public void testDetached() {
+		TweetNaCl salt = new TweetNaCl();
+		byte[] sk = new byte[TweetNaCl.SIGN_SECRET_KEY_BYTES];
+		byte[] pk = new byte[TweetNaCl.SIGN_PUBLIC_KEY_BYTES];
+		salt.crypto_sign_keypair(pk, sk, false);
+		for (int len : new int[] { 0, 1, 127, 128, 129, 1000, 100000 }) {
+			byte[] msg = salt.gen_rand(len);
+			byte[] sig = salt.crypto_sign_detached(msg, sk);
+			Assert.assertTrue(Arrays.equals(Arrays.copyOf(salt.crypto_sign(msg, sk), 64), sig));
+			salt.crypto_sign_verify_detached(sig, msg, pk);
+
+			// the message in the middle of a larger array, the signature too
+			byte[] big = new byte[len + 20];
+			System.arraycopy(msg, 0, big, 7, len);
+			byte[] sigs = new byte[80];
+			salt.crypto_sign_detached(sigs, 9, big, 7, len, sk);
+			Assert.assertTrue(Arrays.equals(sig, Arrays.copyOfRange(sigs, 9, 73)));
+			salt.crypto_sign_verify_detached(sigs, 9, big, 7, len, pk);
+
+			// heap and direct buffers
+			ByteBuffer heap = ByteBuffer.wrap(big, 7, len);
+			Assert.assertTrue(Arrays.equals(sig, salt.crypto_sign_detached(heap, sk)));
+			Assert.assertEquals(0, heap.remaining());
+			ByteBuffer direct = ByteBuffer.allocateDirect(len + 3);
+			direct.position(3);
+			direct.put(msg);
+			direct.position(3);
+			Assert.assertTrue(Arrays.equals(sig, salt.crypto_sign_detached(direct, sk)));
+			Assert.assertEquals(0, direct.remaining());
+			direct.position(3);
+			salt.crypto_sign_verify_detached(sig, direct, pk);
+
+			if (len > 0) {
+				direct.put(3 + len / 2, (byte) (msg[len / 2] ^ 1));
+				direct.position(3);
+				try {
+					salt.crypto_sign_verify_detached(sig, direct, pk);
+					Assert.fail();
+				} catch (TweetNaCl.InvalidSignatureException x) {}
+			}
+			sig[len % 64] ^= 4;
+			try {
+				salt.crypto_sign_verify_detached(sig, msg, pk);
+				Assert.fail();
+			} catch (TweetNaCl.InvalidSignatureException x) {}
+		}
+	}
+
+	@Test
+	public void testPrehashed() throws Exception {
+		// RFC 8032, 7.3, TEST abc
+		byte[] sk = new byte[TweetNaCl.SIGN_SECRET_KEY_BYTES];
+		byte[] pk = new byte[TweetNaCl.SIGN_PUBLIC_KEY_BYTES];
+		System.arraycopy(unhex("833fe62409237b9d62ec77587520911e9a759cec1d19755b7da901b96dca3d42"), 0, sk, 0, 32);
+		TweetNaCl salt = new TweetNaCl();
+		salt.crypto_sign_keypair(pk, sk, true);
+		Assert.assertEquals("ec172b93ad5e563bf4932c70e1245034c35467ef2efd4d64ebf819683467e2bf", hex(pk));
+		String expected = "98a70222f0b8121aa9d30f813d683f809e462b469c7ff87639499bb94e6dae41"
+				+ "31f85042463c2a355a2003d062adf5aaa10b8c61e636062aaad11c2a26083406";
+
+		Ed25519ph signer = Ed25519ph.signer(sk);
+		signer.update(unhex("616263"), 0, 3);
+		byte[] sig = signer.sign();
+		Assert.assertEquals(expected, hex(sig));
+		Ed25519ph verifier = Ed25519ph.verifier(pk);
+		Assert.assertTrue(verifier.update(unhex("616263"), 0, 3).verify(sig));
+		// sign() reset the signer
+		Assert.assertEquals(expected, hex(signer.update((byte) 'a').update((byte) 'b').update((byte) 'c').sign()));
+
+		// not a plain Ed25519 signature, and bound to its context
+		try {
+			salt.crypto_sign_verify_detached(sig, unhex("616263"), pk);
+			Assert.fail();
+		} catch (TweetNaCl.InvalidSignatureException x) {}
+		byte[] ctx = "tweetpepper".getBytes(StandardCharsets.US_ASCII);
+		byte[] msg = salt.gen_rand(300000);
+		Ed25519ph ctxSigner = Ed25519ph.signer(sk, ctx);
+		Assert.assertEquals(msg.length, ctxSigner.update(new ByteArrayInputStream(msg)));
+		sig = ctxSigner.sign();
+		Assert.assertTrue(Ed25519ph.verifier(pk, ctx).update(ByteBuffer.wrap(msg)).verify(sig));
+		Assert.assertFalse(Ed25519ph.verifier(pk).update(ByteBuffer.wrap(msg)).verify(sig));
+		msg[1000] ^= 1;
+		Assert.assertFalse(Ed25519ph.verifier(pk, ctx).update(ByteBuffer.wrap(msg)).verify(sig));
+	}
+
+	@Test
+	public void testBulkKeypairs() {
+		TweetNaCl salt = new TweetNaCl();
+		int n = 201;
+		byte[][] pk = new byte[n][TweetNaCl.SIGN_PUBLIC_KEY_BYTES], sk = new byte[n][TweetNaCl.SIGN_SECRET_KEY_BYTES];
+		byte[][] y = new byte[n][TweetNaCl.BOX_PUBLIC_KEY_BYTES], x = new byte[n][TweetNaCl.BOX_SECRET_KEY_BYTES];
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(salt.gen_rand(32), 0, sk[i], 0, 32);
+			x[i] = salt.gen_rand(32);
+		}
+		salt.crypto_sign_keypair(pk, sk, true);
+		salt.crypto_box_keypair(y, x, true);
+		// the same keys as one at a time
+		for (int i = 0; i < n; i++) {
+			byte[] p = new byte[TweetNaCl.SIGN_PUBLIC_KEY_BYTES], s = Arrays.copyOf(sk[i], 64);
+			salt.crypto_sign_keypair(p, s, true);
+			Assert.assertTrue(Arrays.equals(p, pk[i]));
+			Assert.assertTrue(Arrays.equals(s, sk[i]));
+			salt.crypto_scalarmult_base(p, x[i]);
+			Assert.assertTrue(Arrays.equals(p, y[i]));
+		}
+
+		TweetPepper pepper = new TweetPepper();
+		Assert.assertEquals(70, pepper.generateBoxingKeys(70).size());
+		List<SigningKeyContents> keys = pepper.generateSigningKeys(70);
+		Assert.assertEquals(70, keys.size());
+		byte[] msg = salt.gen_rand(40);
+		for (SigningKeyContents k : keys)
+			salt.crypto_sign_verify_detached(salt.crypto_sign_detached(msg, k.privateSigningKey.getBytes()), msg,
+					k.publicKey.getBytes());
+	}
+
+	@Test
+	public void testBulkThroughput() {
+		TweetNaCl salt = new TweetNaCl();
+		int n = 4000;
+		byte[][] pk = new byte[n][TweetNaCl.SIGN_PUBLIC_KEY_BYTES], sk = new byte[n][TweetNaCl.SIGN_SECRET_KEY_BYTES];
+		salt.crypto_sign_keypair(pk, sk, false); // warm up
+		for (int i = 0; i < n; i++)
+			salt.crypto_sign_keypair(pk[i], sk[i], false);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			salt.crypto_sign_keypair(pk[i], sk[i], false);
+		long single = (System.nanoTime() - start) / 1000000;
+		start = System.nanoTime();
+		salt.crypto_sign_keypair(pk, sk, false);
+		long bulk = (System.nanoTime() - start) / 1000000;
+		System.err.println(n + " signing key pairs: one at a time " + single + "ms, bulk " + bulk + "ms on "
+				+ Runtime.getRuntime().availableProcessors() + " cores");
+	}
+
+	@Test
+	public void testDecodedPublicKey() {
+		TweetNaCl salt = new TweetNaCl();
+		byte[] pk = new byte[TweetNaCl.SIGN_PUBLIC_KEY_BYTES], sk = new byte[TweetNaCl.SIGN_SECRET_KEY_BYTES];
+		salt.crypto_sign_keypair(pk, sk, false);
+		Ed25519PublicKeyCache cache = new Ed25519PublicKeyCache(4);
+		Ed25519PublicKey key = cache.get(pk);
+		Assert.assertSame(key, cache.get(pk.clone()));
+		Assert.assertTrue(Arrays.equals(pk, key.getBytes()));
+
+		for (int len = 0; len < 200; len += 7) {
+			byte[] msg = salt.gen_rand(len);
+			byte[] signed = salt.crypto_sign(msg, sk);
+			Assert.assertTrue(Arrays.equals(msg, salt.crypto_sign_open(signed, key)));
+			byte[] sig = Arrays.copyOf(signed, TweetNaCl.SIGNATURE_SIZE_BYTES);
+			salt.crypto_sign_verify_detached(sig, msg, key);
+			for (int i : new int[] { 0, 31, 32, 63, 64 + len / 2 }) {
+				if (i >= signed.length)
+					continue;
+				byte[] bad = signed.clone();
+				bad[i] ^= 0x10;
+				try {
+					salt.crypto_sign_open(bad, key);
+					Assert.fail("tampered byte " + i);
+				} catch (TweetNaCl.InvalidSignatureException x) {
+				}
+			}
+		}
+
+		// not every y is on the curve
+		int rejected = 0;
+		for (int i = 2; i < 40; i++) {
+			byte[] y = new byte[TweetNaCl.SIGN_PUBLIC_KEY_BYTES];
+			y[0] = (byte) i;
+			try {
+				new Ed25519PublicKey(y);
+			} catch (IllegalArgumentException x) {
+				rejected++;
+				Assert.assertEquals(1, cache.size());
+			}
+		}
+		Assert.assertTrue(rejected > 0);
+
+		for (int i = 0; i < 10; i++) {
+			byte[] p = new byte[TweetNaCl.SIGN_PUBLIC_KEY_BYTES], s = new byte[TweetNaCl.SIGN_SECRET_KEY_BYTES];
+			salt.crypto_sign_keypair(p, s, false);
+			cache.get(p);
+			Assert.assertTrue(cache.size() <= 4);
+		}
+
+		byte[] msg = salt.gen_rand(64);
+		byte[] sig = salt.crypto_sign_detached(msg, sk);
+		int n = 1000;
+		for (int i = 0; i < n; i++) {
+			salt.crypto_sign_verify_detached(sig, msg, pk);
+			salt.crypto_sign_verify_detached(sig, msg, key);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			salt.crypto_sign_verify_detached(sig, msg, pk);
+		long plain = (System.nanoTime() - start) / 1000000;
+		start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			salt.crypto_sign_verify_detached(sig, msg, key);
+		long decoded = (System.nanoTime() - start) / 1000000;
+		System.err.println(n + " verifies: byte[] key " + plain + "ms, decoded key " + decoded + "ms");
+	}
+
+	@Test
+	public void testExpandedSigningKey() {
+		TweetNaCl salt = new TweetNaCl();
+		byte[] pk = new byte[TweetNaCl.SIGN_PUBLIC_KEY_BYTES], sk = new byte[TweetNaCl.SIGN_SECRET_KEY_BYTES];
+		salt.crypto_sign_keypair(pk, sk, false);
+		Ed25519SigningKey key = new Ed25519SigningKey(sk);
+		Assert.assertTrue(Arrays.equals(pk, key.getPublicKey()));
+		for (int len = 0; len < 300; len += 13) {
+			byte[] msg = salt.gen_rand(len);
+			Assert.assertTrue(Arrays.equals(salt.crypto_sign(msg, sk), salt.crypto_sign(msg, key)));
+			Assert.assertTrue(Arrays.equals(salt.crypto_sign_detached(msg, sk), salt.crypto_sign_detached(msg, key)));
+		}
+
+		SigningKeyContents contents = new TweetPepper().generateSigningKeys();
+		Ed25519SigningKey expanded = contents.expandedSigningKey();
+		Assert.assertSame(expanded, contents.expandedSigningKey());
+		byte[] msg = salt.gen_rand(32);
+		Assert.assertTrue(Arrays.equals(msg, salt.crypto_sign_open(contents.sign(msg), contents.publicKey.getBytes())));
+		
+		// the expanded key goes with the private key
+		contents.privateSigningKey.selfDestruct();
+		Assert.assertFalse(expanded.isAlive());
+		try {
+			contents.sign(msg);
+			Assert.fail("destroyed key signed");
+		} catch (Key.DeadKeyException x) {
+		}
+		contents = new TweetPepper().generateSigningKeys();
+		expanded = contents.expandedSigningKey();
+		contents.selfDestruct();
+		Assert.assertFalse(expanded.isAlive());
+		Assert.assertFalse(contents.privateSigningKey.isAlive());
+
+		// a short key is refused up front, and leaves nothing behind for the next signature
+		byte[] expected = salt.crypto_sign(msg, key);
+		try {
+			salt.crypto_sign(msg, Arrays.copyOf(sk, 32));
+			Assert.fail("short key signed");
+		} catch (IllegalStateException x) {
+		}
+		Assert.assertTrue(Arrays.equals(expected, salt.crypto_sign(msg, key)));
+
+		key.selfDestruct();
+		try {
+			salt.crypto_sign(msg, key);
+			Assert.fail("destroyed key signed");
+		} catch (IllegalStateException x) {
+		}
+
+		key = new Ed25519SigningKey(sk);
+		int n = 2000;
+		for (int i = 0; i < n; i++) {
+			salt.crypto_sign_detached(msg, sk);
+			salt.crypto_sign_detached(msg, key);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			salt.crypto_sign_detached(msg, sk);
+		long plain = (System.nanoTime() - start) / 1000000;
+		start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			salt.crypto_sign_detached(msg, key);
+		long expandedMs = (System.nanoTime() - start) / 1000000;
+		System.err.println(n + " signatures: seed " + plain + "ms, expanded key " + expandedMs + "ms");
+	}
+
+	@Test
+	public void testX25519FixedBase() {
+		TweetNaCl salt = new TweetNaCl();
+		byte[] nonce = salt.gen_rand(TweetNaCl.BOX_NONCE_BYTES);
+		byte[] msg = salt.gen_rand(50);
+
+		// public keys from the Edwards table agree with shared keys from the ladder
+		byte[][] edge = { new byte[32], unhex("ffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff") };
+		for (int i = 0; i < 100; i++) {
+			byte[] a = i < edge.length ? edge[i] : salt.gen_rand(32), b = salt.gen_rand(32);
+			byte[] pa = new byte[TweetNaCl.BOX_PUBLIC_KEY_BYTES], pb = new byte[TweetNaCl.BOX_PUBLIC_KEY_BYTES];
+			salt.crypto_scalarmult_base(pa, a);
+			salt.crypto_scalarmult_base(pb, b);
+			byte[] cipher = salt.crypto_box_afternm(msg, nonce, salt.crypto_box_beforenm(pb, a));
+			Assert.assertTrue(Arrays.equals(msg, salt.crypto_box_open_afternm(cipher, nonce, salt.crypto_box_beforenm(pa, b))));
+		}
+
+		// an ephemeral handshake: a fresh key pair, then the shared key with the peer
+		byte[] peer = new byte[TweetNaCl.BOX_PUBLIC_KEY_BYTES];
+		salt.crypto_box_keypair(peer, new byte[TweetNaCl.BOX_SECRET_KEY_BYTES], false);
+		byte[] y = new byte[TweetNaCl.BOX_PUBLIC_KEY_BYTES], x = new byte[TweetNaCl.BOX_SECRET_KEY_BYTES];
+		int n = 2000;
+		for (int i = 0; i < n; i++) {
+			salt.crypto_box_keypair(y, x, false);
+			salt.crypto_box_beforenm(peer, x);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			salt.crypto_box_keypair(y, x, false);
+		long keypair = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			salt.crypto_box_beforenm(peer, x);
+		long shared = System.nanoTime() - start;
+		System.err.println(String.format("X25519 handshake: key pair %.1fus (fixed base), shared key %.1fus (ladder), total %.1fus",
+				keypair / 1000.0 / n, shared / 1000.0 / n, (keypair + shared) / 1000.0 / n));
+	}
+}
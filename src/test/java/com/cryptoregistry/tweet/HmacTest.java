@@ -0,0 +1,97 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+package com.cryptoregistry.tweet;
+
+import static com.cryptoregistry.tweet.SHA512Test.hex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cryptoregistry.tweet.salt.HmacSHA512256;
+import com.cryptoregistry.tweet.salt.TweetNaCl;
+
+public class HmacTest {
+
+	@Test
+	public void testCryptoAuth() {
+		// RFC 4231, test case 2, cut to 32 bytes; "Jefe" padded with zeros is the same HMAC key
+		byte[] key = Arrays.copyOf("Jefe".getBytes(StandardCharsets.US_ASCII), 32);
+		byte[] msg = "what do ya want for nothing?".getBytes(StandardCharsets.US_ASCII);
+		TweetNaCl salt = new TweetNaCl();
+		byte[] tag = salt.crypto_auth(msg, key);
+		Assert.assertEquals("164b7a7bfcf819e2e395fbe73b56e0a387bd64222e831fd610270cd7ea250554", hex(tag));
+		Assert.assertTrue(salt.crypto_auth_verify(tag, msg, key));
+		tag[31] ^= 1;
+		Assert.assertFalse(salt.crypto_auth_verify(tag, msg, key));
+		Assert.assertFalse(salt.crypto_auth_verify(new byte[31], msg, key));
+	}
+
+	@Test
+	public void testAgainstJDK() throws Exception {
+		TweetNaCl salt = new TweetNaCl();
+		Mac jdk = Mac.getInstance("HmacSHA512");
+		for (int keyLen : new int[] { 1, 32, 128, 129, 200 }) {
+			byte[] key = salt.gen_rand(keyLen);
+			jdk.init(new SecretKeySpec(key, "HmacSHA512"));
+			HmacSHA512256 mac = new HmacSHA512256(key);
+			byte[] tag = new byte[HmacSHA512256.TAG_BYTES];
+			// the same object for every message: doFinal leaves it ready for the next
+			for (int len = 0; len < 300; len += 7) {
+				byte[] msg = salt.gen_rand(len);
+				byte[] expected = Arrays.copyOf(jdk.doFinal(msg), 32);
+				mac.update(msg, 0, len);
+				mac.doFinal(tag, 0);
+				Assert.assertTrue(Arrays.equals(expected, tag));
+				mac.update(msg, 0, len);
+				Assert.assertTrue(mac.verify(expected, 0));
+			}
+		}
+	}
+
+	@Test
+	public void testThroughput() {
+		TweetNaCl salt = new TweetNaCl();
+		byte[] key = salt.gen_rand(32), token = salt.gen_rand(48), tag = new byte[32];
+		HmacSHA512256 mac = new HmacSHA512256(key);
+		for (int i = 0; i < 100000; i++) {
+			mac.update(token, 0, token.length);
+			mac.doFinal(tag, 0);
+			salt.crypto_auth(token, key);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < 200000; i++)
+			salt.crypto_auth(token, key);
+		long oneShot = (System.nanoTime() - start) / 1000000;
+		start = System.nanoTime();
+		for (int i = 0; i < 200000; i++) {
+			mac.update(token, 0, token.length);
+			mac.doFinal(tag, 0);
+		}
+		long kept = (System.nanoTime() - start) / 1000000;
+		System.err.println("HMAC-SHA-512-256, 200000 48 byte tokens: crypto_auth " + oneShot
+				+ "ms, precomputed key " + kept + "ms");
+	}
+}
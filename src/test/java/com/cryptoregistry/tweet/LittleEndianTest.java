@@ -0,0 +1,139 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+package com.cryptoregistry.tweet;
+
+import static com.cryptoregistry.tweet.SHA512Test.hex;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cryptoregistry.digest.cubehash.CubeHash256;
+import com.cryptoregistry.digest.cubehash.CubeHash512;
+import com.cryptoregistry.digest.sha3.SHA3Digest;
+import com.cryptoregistry.tweet.salt.Poly1305;
+import com.cryptoregistry.tweet.salt.TweetNaCl;
+import com.cryptoregistry.tweet.salt.stream.SalsaEngine;
+import com.cryptoregistry.util.LittleEndian;
+
+public class LittleEndianTest {
+
+	@Test
+	public void testWords() {
+		byte[] b = new TweetNaCl().gen_rand(64);
+		for (int off = 0; off <= b.length - 8; off++) {
+			int u = (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+			long v = 0;
+			for (int i = 7; i >= 0; i--)
+				v = v << 8 | (b[off + i] & 0xff);
+			Assert.assertEquals(u, LittleEndian.ld32(b, off));
+			Assert.assertEquals(v, LittleEndian.ld64(b, off));
+
+			byte[] c = new byte[b.length];
+			LittleEndian.st64(c, off, v);
+			LittleEndian.st32(c, off, u);
+			for (int i = 0; i < c.length; i++)
+				Assert.assertEquals(i >= off && i < off + 8 ? b[i] : 0, c[i]);
+		}
+		try {
+			LittleEndian.ld32(b, b.length - 3);
+			Assert.fail();
+		} catch (IndexOutOfBoundsException e) {
+		}
+		try {
+			LittleEndian.st64(b, -1, 0L);
+			Assert.fail();
+		} catch (IndexOutOfBoundsException e) {
+		}
+	}
+
+	@Test
+	public void testDigests() {
+		byte[] abc = "abc".getBytes(), m = new byte[1000];
+		for (int i = 0; i < m.length; i++)
+			m[i] = (byte) i;
+
+		Assert.assertEquals("3a985da74fe225b2045c172d6bd390bd855f086e3e9d525b46bfe24511431532", hex(sha3(256, abc)));
+		Assert.assertEquals("0a96e7c099e956287a7d6c2516befb5089714c38f7c01ab158bcd131b50dd10c"
+				+ "80a71ee8fe850a301fea39e88f9b3f58822b47925700c44efcd5a3ed333f5947", hex(sha3(512, m)));
+		// from the byte-at-a-time implementation
+		Assert.assertEquals("a220b4bf5023e750c2a34dcd5564a8523d32e17fab6fbe0f18a0b0bf5a65632b",
+				hex(new CubeHash256().digest(abc)));
+		Assert.assertEquals("ca2fcf5475d011ec9ca9878c8ea86ada551eb922a6cc744103e99f3bcc2e748a"
+				+ "80159eb315c8814f9a39d8724c7a2808a90f126c0723fac2c72e787f0a2802d0", hex(new CubeHash512().digest(m)));
+	}
+
+	/**
+	 * Throughput of each primitive whose words go through LittleEndian. Run on Java 8 and on Java 9 or
+	 * later, from the multi-release jar, to compare the two versions
+	 */
+	@Test
+	public void testThroughput() {
+		TweetNaCl salt = new TweetNaCl();
+		final byte[] key = salt.gen_rand(32), nonce = salt.gen_rand(8), buf = salt.gen_rand(1 << 16), tag = new byte[64];
+		System.err.println("LittleEndian: " + (LittleEndian.class.getDeclaredFields().length > 0 ? "VarHandle" : "bytes"));
+
+		final SalsaEngine salsa = new SalsaEngine();
+		report("Salsa20", buf.length, new Runnable() {
+			public void run() {
+				salsa.init(key, 0, nonce, 0).xor(buf, 0, buf, 0, buf.length);
+			}
+		});
+		final Poly1305 poly = new Poly1305();
+		report("Poly1305", buf.length, new Runnable() {
+			public void run() {
+				poly.init(key, 0);
+				poly.update(buf, 0, buf.length);
+				poly.doFinal(tag, 0);
+			}
+		});
+		final CubeHash256 cube = new CubeHash256();
+		report("CubeHash256", buf.length, new Runnable() {
+			public void run() {
+				cube.digest(buf);
+			}
+		});
+		final SHA3Digest sha3 = new SHA3Digest(256);
+		report("SHA3-256", buf.length, new Runnable() {
+			public void run() {
+				sha3.update(buf, 0, buf.length);
+				sha3.doFinal(tag, 0);
+			}
+		});
+	}
+
+	private static byte[] sha3(int bits, byte[] m) {
+		SHA3Digest d = new SHA3Digest(bits);
+		d.update(m, 0, m.length);
+		byte[] out = new byte[bits / 8];
+		d.doFinal(out, 0);
+		return out;
+	}
+
+	private static void report(String name, int bytes, Runnable op) {
+		for (int i = 0; i < 200; i++)
+			op.run();
+		int runs = 400;
+		long start = System.nanoTime();
+		for (int i = 0; i < runs; i++)
+			op.run();
+		double secs = (System.nanoTime() - start) / 1e9;
+		System.err.println(String.format("%s: %.0f MB/s", name, (double) runs * bytes / secs / (1 << 20)));
+	}
+}
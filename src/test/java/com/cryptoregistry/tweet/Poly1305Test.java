@@ -0,0 +1,222 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+package com.cryptoregistry.tweet;
+
+import static com.cryptoregistry.tweet.SHA512Test.hex;
+import static com.cryptoregistry.tweet.SHA512Test.unhex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cryptoregistry.tweet.salt.Poly1305;
+import com.cryptoregistry.tweet.salt.TweetNaCl;
+
+public class Poly1305Test {
+
+	@Test
+	public void testVectors() {
+		// NaCl tests/onetimeauth.c
+		byte[] key = unhex("eea6a7251c1e72916d11c2cb214d3c252539121d8e234e652d651fa4c8cff880");
+		byte[] msg = unhex("8e993b9f48681273c29650ba32fc76ce48332ea7164d96a4476fb8c531a1186a"
+				+ "c0dfc17c98dce87b4da7f011ec48c97271d2c20f9b928fe2270d6fb863d51738"
+				+ "b48eeee314a7cc8ab932164548e526ae90224368517acfeabd6bb3732bc0e9da"
+				+ "99832b61ca01b6de56244a9e88d5f9b37973f622a43d14a6599b1f654cb45a74"
+				+ "e355a5");
+		Assert.assertEquals("f3ffc7703f9400e52a7dfb4b3d3305d9", hex(tag(key, msg)));
+
+		// RFC 7539, 2.5.2
+		key = unhex("85d6be7857556d337f4452fe42d506a80103808afb0db2fd4abff6af4149f51b");
+		msg = "Cryptographic Forum Research Group".getBytes(StandardCharsets.US_ASCII);
+		Assert.assertEquals("a8061dc1305136c6c22b8baf0c0127a9", hex(tag(key, msg)));
+	}
+
+	@Test
+	public void testAgainstTweetNaCl() {
+		TweetNaCl salt = new TweetNaCl();
+		byte[] ones = new byte[32];
+		Arrays.fill(ones, (byte) 0xff);
+		for (int len = 0; len < 600; len++) {
+			// random keys, and the largest key and message, which push every limb to its limit
+			byte[] key = len % 7 == 0 ? ones : salt.gen_rand(32);
+			byte[] msg = len % 5 == 0 ? fill(len, 0xff) : salt.gen_rand(len);
+			byte[] expected = reference(key, msg);
+			Assert.assertTrue(Arrays.equals(expected, tag(key, msg)));
+
+			// fed in uneven pieces, and through a direct buffer
+			Poly1305 poly = new Poly1305(key);
+			int off = 0, step = 1;
+			while (off < len) {
+				int n = Math.min(step, len - off);
+				poly.update(msg, off, n);
+				off += n;
+				step = step * 5 % 37 + 1;
+			}
+			byte[] out = new byte[Poly1305.TAG_BYTES];
+			poly.doFinal(out, 0);
+			Assert.assertTrue(Arrays.equals(expected, out));
+
+			ByteBuffer direct = ByteBuffer.allocateDirect(len);
+			direct.put(msg).flip();
+			poly.init(key, 0);
+			poly.update(direct);
+			poly.doFinal(out, 0);
+			Assert.assertTrue(Arrays.equals(expected, out));
+		}
+	}
+
+	@Test
+	public void testOneTime() {
+		byte[] key = new TweetNaCl().gen_rand(32), out = new byte[Poly1305.TAG_BYTES];
+		Poly1305 poly = new Poly1305();
+		try {
+			poly.update(key, 0, 1);
+			Assert.fail("used without a key");
+		} catch (IllegalStateException x) {
+		}
+		poly.init(key, 0);
+		poly.update(key, 0, 20);
+		poly.doFinal(out, 0);
+		try {
+			poly.update((byte) 1);
+			Assert.fail("key used twice");
+		} catch (IllegalStateException x) {
+		}
+		try {
+			poly.doFinal(out, 0);
+			Assert.fail("key used twice");
+		} catch (IllegalStateException x) {
+		}
+		poly.init(key, 0);
+		poly.update(key, 0, 20);
+		byte[] again = new byte[Poly1305.TAG_BYTES];
+		poly.doFinal(again, 0);
+		Assert.assertTrue(Arrays.equals(out, again));
+	}
+
+	@Test
+	public void testThroughput() {
+		byte[] key = new TweetNaCl().gen_rand(32), msg = new byte[1024 * 1024], out = new byte[16];
+		Poly1305 poly = new Poly1305();
+		for (int i = 0; i < 20; i++) {
+			poly.init(key, 0);
+			poly.update(msg, 0, msg.length);
+			poly.doFinal(out, 0);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < 100; i++) {
+			poly.init(key, 0);
+			poly.update(msg, 0, msg.length);
+			poly.doFinal(out, 0);
+		}
+		long ms = (System.nanoTime() - start) / 1000000;
+		System.err.println("Poly1305: 100 MB in " + ms + "ms");
+	}
+
+	static byte[] tag(byte[] key, byte[] msg) {
+		byte[] out = new byte[Poly1305.TAG_BYTES];
+		Poly1305 poly = new Poly1305(key);
+		poly.update(msg, 0, msg.length);
+		poly.doFinal(out, 0);
+		return out;
+	}
+
+	static byte[] fill(int len, int b) {
+		byte[] x = new byte[len];
+		Arrays.fill(x, (byte) b);
+		return x;
+	}
+
+	/*
+	 * crypto_onetimeauth as TweetNaCl has it, with 17 byte limbs
+	 */
+	static byte[] reference(byte[] k, byte[] m) {
+		int s, i, j, u, n = m.length, mOff = 0;
+		int[] x = new int[17], r = new int[17], h = new int[17], c = new int[17], g = new int[17];
+		byte[] out = new byte[16];
+		for (j = 0; j < 16; ++j)
+			r[j] = 0xff & k[j];
+		r[3] &= 15;
+		r[4] &= 252;
+		r[7] &= 15;
+		r[8] &= 252;
+		r[11] &= 15;
+		r[12] &= 252;
+		r[15] &= 15;
+		while (n > 0) {
+			for (j = 0; j < 17; ++j)
+				c[j] = 0;
+			for (j = 0; (j < 16) && (j < n); ++j)
+				c[j] = 0xff & m[mOff + j];
+			c[j] = 1;
+			mOff += j;
+			n -= j;
+			add1305(h, c);
+			for (i = 0; i < 17; ++i) {
+				x[i] = 0;
+				for (j = 0; j < 17; ++j)
+					x[i] += h[j] * ((j <= i) ? r[i - j] : 320 * r[i + 17 - j]);
+			}
+			for (i = 0; i < 17; ++i)
+				h[i] = x[i];
+			u = 0;
+			for (j = 0; j < 16; ++j) {
+				u += h[j];
+				h[j] = u & 255;
+				u >>= 8;
+			}
+			u += h[16];
+			h[16] = u & 3;
+			u = 5 * (u >> 2);
+			for (j = 0; j < 16; ++j) {
+				u += h[j];
+				h[j] = u & 255;
+				u >>= 8;
+			}
+			u += h[16];
+			h[16] = u;
+		}
+		for (j = 0; j < 17; ++j)
+			g[j] = h[j];
+		add1305(h, new int[] { 5, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 252 });
+		s = -(h[16] >> 7);
+		for (j = 0; j < 17; ++j)
+			h[j] ^= s & (g[j] ^ h[j]);
+		for (j = 0; j < 16; ++j)
+			c[j] = 0xff & k[j + 16];
+		c[16] = 0;
+		add1305(h, c);
+		for (j = 0; j < 16; ++j)
+			out[j] = (byte) h[j];
+		return out;
+	}
+
+	static void add1305(int[] h, int[] c) {
+		int j, u = 0;
+		for (j = 0; j < 17; ++j) {
+			u += h[j] + c[j];
+			h[j] = u & 255;
+			u >>= 8;
+		}
+	}
+}
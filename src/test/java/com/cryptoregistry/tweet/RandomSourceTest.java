@@ -0,0 +1,105 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+package com.cryptoregistry.tweet;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cryptoregistry.tweet.pepper.TweetPepper;
+import com.cryptoregistry.tweet.pepper.key.SigningKeyContents;
+import com.cryptoregistry.tweet.salt.RandomSource;
+import com.cryptoregistry.tweet.salt.SalsaDRBG;
+import com.cryptoregistry.tweet.salt.TweetNaCl;
+
+public class RandomSourceTest {
+
+	@Test
+	public void testOffsets() {
+		RandomSource rand = SalsaDRBG.getInstance();
+		for (int len = 0; len < 3000; len += 37) {
+			byte[] b = new byte[len + 10];
+			rand.nextBytes(b, 5, len);
+			for (int i = 0; i < 5; i++) {
+				Assert.assertEquals(0, b[i]);
+				Assert.assertEquals(0, b[len + 5 + i]);
+			}
+		}
+		// about half the bits set
+		byte[] b = new byte[1 << 16];
+		rand.nextBytes(b);
+		int ones = 0;
+		for (byte x : b)
+			ones += Integer.bitCount(x & 0xff);
+		Assert.assertTrue(Math.abs(ones - 8 * b.length / 2) < 2000);
+	}
+
+	@Test
+	public void testThreads() throws Exception {
+		final Set<String> seen = Collections.synchronizedSet(new HashSet<String>());
+		final TweetNaCl salt = new TweetNaCl();
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < 5000; j++)
+						seen.add(Arrays.toString(salt.gen_rand(TweetNaCl.BOX_NONCE_BYTES)));
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		Assert.assertEquals(8 * 5000, seen.size());
+	}
+
+	@Test
+	public void testPluggable() {
+		// a fixed source gives fixed keys
+		RandomSource fixed = new RandomSource() {
+			public void nextBytes(byte[] b, int off, int len) {
+				Arrays.fill(b, off, off + len, (byte) 7);
+			}
+		};
+		SigningKeyContents a = new TweetPepper(fixed).generateSigningKeys();
+		SigningKeyContents b = new TweetPepper(fixed).generateSigningKeys();
+		Assert.assertTrue(Arrays.equals(a.publicKey.getBytes(), b.publicKey.getBytes()));
+		Assert.assertFalse(Arrays.equals(a.publicKey.getBytes(),
+				new TweetPepper().generateSigningKeys().publicKey.getBytes()));
+		Assert.assertTrue(Arrays.equals(new byte[] { 7, 7, 7 }, new TweetNaCl(fixed).gen_rand(3)));
+	}
+
+	@Test
+	public void testThroughput() {
+		RandomSource rand = SalsaDRBG.getInstance();
+		byte[] b = new byte[24];
+		for (int i = 0; i < 100000; i++)
+			rand.nextBytes(b);
+		long start = System.nanoTime();
+		for (int i = 0; i < 1000000; i++)
+			rand.nextBytes(b);
+		long ms = (System.nanoTime() - start) / 1000000;
+		System.err.println("SalsaDRBG: 1000000 nonces in " + ms + "ms");
+	}
+}
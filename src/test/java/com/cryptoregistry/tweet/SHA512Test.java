@@ -0,0 +1,133 @@
+/*
+Copyright 2016, David R. Smith, All Rights Reserved
+
+This file is part of TweetPepper.
+
+TweetPepper is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+TweetPepper is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+package com.cryptoregistry.tweet;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cryptoregistry.tweet.salt.SHA512Digest;
+import com.cryptoregistry.tweet.salt.TweetNaCl;
+
+public class SHA512Test {
+
+	@Test
+	public void testAgainstJDK() throws Exception {
+		MessageDigest jdk = MessageDigest.getInstance("SHA-512");
+		SHA512Digest sha = new SHA512Digest();
+		TweetNaCl salt = new TweetNaCl();
+
+		// every padding case around the block boundaries
+		for (int len = 0; len < 400; len++) {
+			byte[] msg = salt.gen_rand(len);
+			byte[] expected = jdk.digest(msg);
+			Assert.assertTrue(Arrays.equals(expected, SHA512Digest.hash(msg)));
+
+			// fed in uneven pieces
+			byte[] out = new byte[64];
+			int off = 0, step = 1;
+			while (off < len) {
+				int n = Math.min(step, len - off);
+				sha.update(msg, off, n);
+				off += n;
+				step = step * 3 % 131 + 1;
+			}
+			sha.doFinal(out, 0);
+			Assert.assertTrue(Arrays.equals(expected, out));
+		}
+
+		byte[] abc = "abc".getBytes(StandardCharsets.US_ASCII);
+		Assert.assertEquals("ddaf35a193617abacc417349ae20413112e6fa4e89a97ea20a9eeee64b55d39a"
+				+ "2192992a274fc1a836ba3c23a3feebbd454d4423643ce80e2a9ac94fa54ca49f",
+				hex(SHA512Digest.hash(abc)));
+	}
+
+	@Test
+	public void testSignatureVector() {
+		// RFC 8032, 7.1, TEST 1
+		byte[] sk = new byte[TweetNaCl.SIGN_SECRET_KEY_BYTES];
+		byte[] pk = new byte[TweetNaCl.SIGN_PUBLIC_KEY_BYTES];
+		System.arraycopy(unhex("9d61b19deffd5a60ba844af492ec2cc44449c5697b326919703bac031cae7f60"), 0, sk, 0, 32);
+		TweetNaCl salt = new TweetNaCl();
+		salt.crypto_sign_keypair(pk, sk, true);
+		Assert.assertEquals("d75a980182b10ab7d54bfed3c964073a0ee172f3daa62325af021a68f707511a", hex(pk));
+
+		byte[] signed = salt.crypto_sign(new byte[0], sk);
+		Assert.assertEquals("e5564300c360ac729086e2cc806e828a84877f1eb8e5d974d873e06522490155"
+				+ "5fb8821590a33bacc61e39701cf9b46bd25bf5f0595bbe24655141438e7a100b", hex(signed));
+		Assert.assertEquals(0, salt.crypto_sign_open(signed, pk).length);
+
+		signed[10] ^= 1;
+		try {
+			salt.crypto_sign_open(signed, pk);
+			Assert.fail();
+		} catch (TweetNaCl.InvalidSignatureException x) {}
+	}
+
+	@Test
+	public void testThroughput() {
+		byte[] block = new byte[1024 * 1024];
+		SHA512Digest sha = new SHA512Digest();
+		byte[] out = new byte[64];
+		for (int i = 0; i < 20; i++) { // warm up
+			sha.update(block, 0, block.length);
+			sha.doFinal(out, 0);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < 50; i++) {
+			sha.update(block, 0, block.length);
+		}
+		sha.doFinal(out, 0);
+		long ms = (System.nanoTime() - start) / 1000000;
+		System.err.println("SHA-512: 50 MB in " + ms + "ms");
+
+		TweetNaCl salt = new TweetNaCl();
+		byte[] pk = new byte[TweetNaCl.SIGN_PUBLIC_KEY_BYTES];
+		byte[] sk = new byte[TweetNaCl.SIGN_SECRET_KEY_BYTES];
+		salt.crypto_sign_keypair(pk, sk, false);
+		byte[] msg = new byte[1024];
+		for (int i = 0; i < 50; i++) {
+			salt.crypto_sign_open(salt.crypto_sign(msg, sk), pk);
+		}
+		start = System.nanoTime();
+		for (int i = 0; i < 200; i++) {
+			salt.crypto_sign_open(salt.crypto_sign(msg, sk), pk);
+		}
+		ms = (System.nanoTime() - start) / 1000000;
+		System.err.println("sign + verify 1k message: 200 in " + ms + "ms");
+	}
+
+	static String hex(byte[] b) {
+		StringBuilder sb = new StringBuilder();
+		for (byte x : b)
+			sb.append(String.format("%02x", x));
+		return sb.toString();
+	}
+
+	static byte[] unhex(String s) {
+		byte[] b = new byte[s.length() / 2];
+		for (int i = 0; i < b.length; i++)
+			b[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+		return b;
+	}
+}
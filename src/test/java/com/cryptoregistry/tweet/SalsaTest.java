@@ -19,22 +19,46 @@ along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
  */
 package com.cryptoregistry.tweet;
 
+import static com.cryptoregistry.tweet.SHA512Test.hex;
+import static com.cryptoregistry.tweet.SHA512Test.unhex;
+
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import com.cryptoregistry.tweet.pepper.Block;
+import com.cryptoregistry.tweet.pepper.BlockType;
+import com.cryptoregistry.tweet.pepper.StreamAlg;
 import com.cryptoregistry.tweet.pepper.TweetPepper;
 import com.cryptoregistry.tweet.pepper.format.BlockFormatter;
 import com.cryptoregistry.tweet.pepper.key.BoxingKeyContents;
 import com.cryptoregistry.tweet.salt.TweetNaCl;
+import com.cryptoregistry.tweet.salt.stream.HSalsa20;
+import com.cryptoregistry.tweet.salt.stream.ParallelSalsa;
+import com.cryptoregistry.tweet.salt.stream.SalsaDecryptingChannel;
+import com.cryptoregistry.tweet.salt.stream.SalsaDecryptingInputStream;
+import com.cryptoregistry.tweet.salt.stream.SalsaEncryptingChannel;
+import com.cryptoregistry.tweet.salt.stream.SalsaEncryptingOutputStream;
 import com.cryptoregistry.tweet.salt.stream.Salsa20;
+import com.cryptoregistry.tweet.salt.stream.Salsa2012;
+import com.cryptoregistry.tweet.salt.stream.Salsa208;
+import com.cryptoregistry.tweet.salt.stream.SalsaEngine;
+import com.cryptoregistry.tweet.salt.stream.XSalsa20;
 
 public class SalsaTest {
 
@@ -107,7 +131,7 @@ public class SalsaTest {
 	}
 	
 	@Test
-	public void testTweetPepper() {
+	public void testTweetPepper() throws IOException {
 		TweetPepper tp = new TweetPepper();
 		BoxingKeyContents sender = tp.generateBoxingKeys();
 		BoxingKeyContents receiver = tp.generateBoxingKeys();
@@ -131,8 +155,517 @@ public class SalsaTest {
 		int expectedLength = Integer.parseInt(block.get("Input.Length"));
 		Assert.assertTrue(expectedLength == resultClassBytes.length);
 		
+		byte[] classBytes = readAll(this.getClass().getResourceAsStream("/com/cryptoregistry/tweet/salt/TweetNaCl.class"));
+		Assert.assertTrue(Arrays.equals(classBytes, resultClassBytes));
+		Assert.assertFalse(Arrays.equals(classBytes, block.getBytesFromBase64urlString("Data.0")));
 		
+		// any range on its own
+		for (int from : new int[] { 0, 1, 63, 64, 1027, 1028, 5000, classBytes.length - 10 }) {
+			byte[] part = readAll(tp.decryptSalsa20(receiver, sender, block, from, 10));
+			Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(classBytes, from, from + 10), part));
+		}
+		try {
+			tp.decryptSalsa20(receiver, sender, block, classBytes.length - 9, 10);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+		}
 	}
 	
+	@Test
+	public void testPositioned() {
+		TweetNaCl salt = new TweetNaCl();
+		byte[] k = salt.gen_rand(32), n = salt.gen_rand(8), xn = salt.gen_rand(24);
+		byte[] m = salt.gen_rand(5000);
+		byte[] c = new byte[m.length], xc = new byte[m.length];
+		new Salsa20().crypto_stream_xor(c, m, m.length, n, 0, k);
+		new XSalsa20().crypto_stream_xor(xc, m, m.length, xn, k);
+		
+		for (int from : new int[] { 0, 1, 63, 64, 65, 129, 4000 }) {
+			for (int len : new int[] { 0, 1, 63, 64, 100, m.length - 4000 }) {
+				byte[] part = new byte[len + 3];
+				new Salsa20().crypto_stream_xor(part, 3, c, from, len, n, 0, k, from);
+				Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(m, from, from + len), Arrays.copyOfRange(part, 3, len + 3)));
+				new XSalsa20().crypto_stream_xor(part, 3, xc, from, len, xn, k, from);
+				Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(m, from, from + len), Arrays.copyOfRange(part, 3, len + 3)));
+			}
+		}
+		
+		// the block counter is 64 bits: block 2^32 is not block 0
+		byte[] b0 = new byte[64], b32 = new byte[64];
+		new Salsa20().crypto_stream_xor(b0, 0, null, 0, 64, n, 0, k, 0);
+		new Salsa20().crypto_stream_xor(b32, 0, null, 0, 64, n, 0, k, 64L << 32);
+		Assert.assertFalse(Arrays.equals(b0, b32));
+	}
 	
+	@Test
+	public void testParallel() {
+		TweetNaCl salt = new TweetNaCl();
+		byte[] k = salt.gen_rand(32), n = salt.gen_rand(8), xn = salt.gen_rand(24);
+		byte[] m = salt.gen_rand(3 * ParallelSalsa.SEGMENT_BYTES + 1000);
+		byte[] c = new byte[m.length], xc = new byte[m.length];
+		new Salsa20().crypto_stream_xor(c, m, m.length, n, 0, k);
+		new XSalsa20().crypto_stream_xor(xc, m, m.length, xn, k);
+		
+		ForkJoinPool pool = new ForkJoinPool(4);
+		ParallelSalsa parallel = new ParallelSalsa(pool, 0);
+		for (int from : new int[] { 0, 1, 100, 64 * 1000 + 7 }) {
+			int len = m.length - from - 3;
+			byte[] part = new byte[len];
+			parallel.xor(part, 0, c, from, len, n, 0, k, from);
+			Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(m, from, from + len), part));
+			parallel.xorXSalsa20(part, 0, xc, from, len, xn, k, from);
+			Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(m, from, from + len), part));
+			
+			// in place in a direct buffer
+			ByteBuffer buf = ByteBuffer.allocateDirect(len + 10);
+			buf.position(5);
+			buf.put(m, from, len);
+			buf.position(5).limit(5 + len);
+			ByteBuffer view = buf.duplicate();
+			parallel.xor(buf, view, n, 0, k, from);
+			Assert.assertEquals(5 + len, buf.position());
+			Assert.assertFalse(view.hasRemaining());
+			buf.position(5);
+			buf.get(part);
+			Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(c, from, from + len), part));
+		}
+		pool.shutdown();
+		
+		// below the threshold, in the calling thread
+		byte[] part = new byte[1000];
+		ParallelSalsa.getInstance().xor(part, 0, null, 0, part.length, n, 0, k, 0);
+		for (int i = 0; i < part.length; i++)
+			Assert.assertEquals((byte) (m[i] ^ c[i]), part[i]);
+	}
+	
+	/**
+	 * MB/s of ParallelSalsa on pools of 1, 2, 4, ... threads, up to the number of processors
+	 */
+	@Test
+	public void testParallelScaling() {
+		TweetNaCl salt = new TweetNaCl();
+		byte[] k = salt.gen_rand(32), n = salt.gen_rand(8);
+		byte[] buf = new byte[32 << 20];
+		int cpus = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= cpus; threads *= 2) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			ParallelSalsa parallel = new ParallelSalsa(pool, 0);
+			for (int i = 0; i < 3; i++)
+				parallel.xor(buf, 0, buf, 0, buf.length, n, 0, k, 0);
+			long start = System.nanoTime();
+			for (int i = 0; i < 5; i++)
+				parallel.xor(buf, 0, buf, 0, buf.length, n, 0, k, 0);
+			System.err.println(String.format("ParallelSalsa, %d of %d threads: %.0f MB/s", threads, cpus,
+					5 * 32 * 1e9 / (System.nanoTime() - start)));
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testStreams() throws IOException {
+		TweetNaCl salt = new TweetNaCl();
+		byte[] k = salt.gen_rand(32), n = salt.gen_rand(24);
+		byte[] m = salt.gen_rand(100000), copy = m.clone();
+		byte[] c = new byte[m.length];
+		new XSalsa20().crypto_stream_xor(c, m, m.length, n, k);
+		Random r = new Random(1);
+		
+		// writes of every size, single bytes included, make the one stream
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		SalsaEncryptingOutputStream out = new SalsaEncryptingOutputStream(bos, n, k);
+		for (int off = 0, len; off < m.length; off += len) {
+			len = Math.min(r.nextInt(20000), m.length - off);
+			if (len == 1)
+				out.write(m[off]);
+			else
+				out.write(m, off, len);
+		}
+		Assert.assertEquals(m.length, out.position());
+		out.close();
+		Assert.assertTrue(Arrays.equals(c, bos.toByteArray()));
+		Assert.assertTrue(Arrays.equals(copy, m));
+		try {
+			out.write(1);
+			Assert.fail();
+		} catch (IOException e) {
+		}
+		
+		// and back, skipping a piece
+		SalsaDecryptingInputStream in = new SalsaDecryptingInputStream(new ByteArrayInputStream(c), n, k);
+		byte[] head = new byte[1000];
+		Assert.assertEquals(m[0] & 0xff, in.read());
+		Assert.assertEquals(head.length, in.read(head));
+		Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(m, 1, 1001), head));
+		Assert.assertEquals(4321, in.skip(4321));
+		byte[] rest = readAll(in);
+		Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(m, 5322, m.length), rest));
+		in.close();
+		
+		// resumed part way through
+		bos.reset();
+		out = new SalsaEncryptingOutputStream(bos, n, k, 5000);
+		out.write(m, 5000, m.length - 5000);
+		out.close();
+		Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(c, 5000, c.length), bos.toByteArray()));
+		in = new SalsaDecryptingInputStream(new ByteArrayInputStream(c, 777, c.length - 777), n, k, 777);
+		Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(m, 777, m.length), readAll(in)));
+	}
+	
+	@Test
+	public void testChannels() throws IOException {
+		TweetNaCl salt = new TweetNaCl();
+		byte[] k = salt.gen_rand(32), n = salt.gen_rand(24);
+		byte[] m = salt.gen_rand(50000);
+		byte[] c = new byte[m.length];
+		new XSalsa20().crypto_stream_xor(c, m, m.length, n, k);
+		
+		// from a direct buffer, in odd pieces
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		SalsaEncryptingChannel out = new SalsaEncryptingChannel(Channels.newChannel(bos), n, k);
+		ByteBuffer src = ByteBuffer.allocateDirect(m.length);
+		src.put(m).flip();
+		while (src.hasRemaining()) {
+			ByteBuffer piece = src.duplicate();
+			piece.limit(Math.min(src.limit(), src.position() + 10007));
+			Assert.assertEquals(piece.remaining(), out.write(piece));
+			src.position(piece.position());
+		}
+		out.close();
+		Assert.assertFalse(out.isOpen());
+		Assert.assertTrue(Arrays.equals(c, bos.toByteArray()));
+		
+		// into a direct buffer of fixed size
+		SalsaDecryptingChannel in = new SalsaDecryptingChannel(Channels.newChannel(new ByteArrayInputStream(c)), n, k);
+		ByteBuffer dst = ByteBuffer.allocateDirect(4096);
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		while (in.read(dst) != -1) {
+			dst.flip();
+			byte[] b = new byte[dst.remaining()];
+			dst.get(b);
+			plain.write(b);
+			dst.clear();
+		}
+		in.close();
+		Assert.assertTrue(Arrays.equals(m, plain.toByteArray()));
+	}
+	
+	@Test
+	public void testChannelPartialWrites() throws IOException {
+		TweetNaCl salt = new TweetNaCl();
+		byte[] k = salt.gen_rand(32), n = salt.gen_rand(24);
+		byte[] m = salt.gen_rand(50000);
+		byte[] c = new byte[m.length];
+		new XSalsa20().crypto_stream_xor(c, m, m.length, n, k);
+		
+		// takes at most 777 bytes a call, nothing on every third call, and fails once
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		WritableByteChannel slow = new WritableByteChannel() {
+			int calls;
+			public int write(ByteBuffer src) throws IOException {
+				if (++calls == 20)
+					throw new IOException("connection reset");
+				if (calls % 3 == 0)
+					return 0;
+				int len = Math.min(src.remaining(), 777);
+				byte[] b = new byte[len];
+				src.get(b);
+				bos.write(b);
+				return len;
+			}
+			public boolean isOpen() {
+				return true;
+			}
+			public void close() {
+			}
+		};
+		SalsaEncryptingChannel out = new SalsaEncryptingChannel(slow, n, k);
+		ByteBuffer src = ByteBuffer.wrap(m);
+		try {
+			while (src.hasRemaining()) {
+				int before = src.position();
+				int w = out.write(src);
+				Assert.assertEquals(before + w, src.position());
+				Assert.assertEquals(src.position(), out.position());
+			}
+			Assert.fail();
+		} catch (IOException e) {
+		}
+		Assert.assertEquals(bos.size(), src.position());
+		Assert.assertEquals(bos.size(), out.position());
+		
+		// resume where the failed write left off
+		out = new SalsaEncryptingChannel(Channels.newChannel(bos), n, k, out.position());
+		out.write(src);
+		out.close();
+		Assert.assertTrue(Arrays.equals(c, bos.toByteArray()));
+	}
+	
+	@Test
+	public void testFiles() throws IOException {
+		TweetPepper tp = new TweetPepper();
+		BoxingKeyContents sender = tp.generateBoxingKeys();
+		BoxingKeyContents receiver = tp.generateBoxingKeys();
+		byte[] m = tp.salt.gen_rand(300000);
+		Path plain = Files.createTempFile("salsa", ".txt");
+		Path cipher = Files.createTempFile("salsa", ".enc");
+		Path back = Files.createTempFile("salsa", ".out");
+		try {
+			Files.write(plain, m);
+			Block block = tp.encryptSalsa20(receiver, sender, plain, cipher);
+			Assert.assertEquals(BlockType.E, block.getBlockType());
+			Assert.assertEquals(cipher.getFileName().toString(), block.get("Data.File"));
+			Assert.assertEquals(String.valueOf(m.length), block.get("Input.Length"));
+			byte[] c = Files.readAllBytes(cipher);
+			Assert.assertEquals(m.length, c.length);
+			
+			tp.decryptSalsa20(receiver, sender, block, cipher, back);
+			Assert.assertTrue(Arrays.equals(m, Files.readAllBytes(back)));
+			
+			// a block which does not fit the file is refused before anything is written, in place or not
+			Block wrong = new Block(block.name);
+			wrong.putAll(block);
+			wrong.put("Input.Length", String.valueOf(m.length + 1));
+			for (Path to : new Path[] { back, cipher }) {
+				try {
+					tp.decryptSalsa20(receiver, sender, wrong, cipher, to);
+					Assert.fail();
+				} catch (RuntimeException e) {
+				}
+			}
+			Assert.assertTrue(Arrays.equals(m, Files.readAllBytes(back)));
+			Assert.assertTrue(Arrays.equals(c, Files.readAllBytes(cipher)));
+			
+			// with the cipher text in it, the block is an ordinary E block
+			block.put("Data.0", Base64.getUrlEncoder().encodeToString(c));
+			Assert.assertTrue(Arrays.equals(m, readAll(tp.decryptSalsa20(receiver, sender, block))));
+			
+			// in place
+			byte[] k = tp.salt.gen_rand(32), n = tp.salt.gen_rand(8);
+			Assert.assertEquals(m.length, ParallelSalsa.getInstance().xor(back, back, n, 0, k));
+			byte[] expected = new byte[m.length];
+			new Salsa20().crypto_stream_xor(expected, m, m.length, n, 0, k);
+			Assert.assertTrue(Arrays.equals(expected, Files.readAllBytes(back)));
+			
+			// more than one window: a sparse file of zeros, checked either side of the boundary
+			try (RandomAccessFile raf = new RandomAccessFile(plain.toFile(), "rw")) {
+				raf.setLength(ParallelSalsa.MAP_WINDOW_BYTES + 1000);
+			}
+			ParallelSalsa.getInstance().xor(cipher, plain, n, 0, k);
+			Assert.assertEquals(ParallelSalsa.MAP_WINDOW_BYTES + 1000, Files.size(cipher));
+			try (RandomAccessFile raf = new RandomAccessFile(cipher.toFile(), "r")) {
+				for (long pos : new long[] { ParallelSalsa.MAP_WINDOW_BYTES - 100, ParallelSalsa.MAP_WINDOW_BYTES + 900 }) {
+					byte[] got = new byte[100], ks = new byte[100];
+					raf.seek(pos);
+					raf.readFully(got);
+					new Salsa20().crypto_stream_xor(ks, 0, null, 0, 100, n, 0, k, pos);
+					Assert.assertTrue(Arrays.equals(ks, got));
+				}
+			}
+		} finally {
+			Files.delete(plain);
+			Files.delete(cipher);
+			Files.delete(back);
+		}
+	}
+	
+	@Test
+	public void testReducedRounds() {
+		TweetNaCl salt = new TweetNaCl();
+		byte[] k = salt.gen_rand(32), n = salt.gen_rand(8);
+		byte[] m = salt.gen_rand(5000);
+		byte[] c20 = new byte[m.length];
+		new Salsa20().crypto_stream_xor(c20, m, m.length, n, 0, k);
+		for (Salsa20 salsa : new Salsa20[] { new Salsa20(), new Salsa2012(), new Salsa208() }) {
+			int rounds = salsa.getRounds();
+			
+			// the keystream engine against the reference core, block by block
+			byte[] ks = new byte[3 * 64], in = new byte[16], block = new byte[64];
+			new SalsaEngine(rounds).init(k, 0, n, 0).xor(ks, 0, null, 0, ks.length);
+			System.arraycopy(n, 0, in, 0, 8);
+			for (int b = 0; b < 3; b++) {
+				in[8] = (byte) b;
+				salsa.crypto_core(block, in, k, XSalsa20.sigma);
+				Assert.assertTrue(Arrays.equals(block, Arrays.copyOfRange(ks, b * 64, b * 64 + 64)));
+			}
+			
+			byte[] c = new byte[m.length], back = new byte[m.length];
+			salsa.crypto_stream_xor(c, m, m.length, n, 0, k);
+			Assert.assertEquals(salsa.getRounds() == 20, Arrays.equals(c20, c));
+			new ParallelSalsa(ForkJoinPool.commonPool(), 0, rounds).xor(back, 0, c, 0, c.length, n, 0, k, 0);
+			Assert.assertTrue(Arrays.equals(m, back));
+			
+			byte[] part = new byte[1000];
+			salsa.crypto_stream_xor(part, 0, c, 1234, part.length, n, 0, k, 1234);
+			Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(m, 1234, 2234), part));
+			
+			if (rounds != Salsa20.ROUNDS) {
+				try {
+					ParallelSalsa.getInstance(rounds).xorXSalsa20(back, 0, c, 0, c.length, salt.gen_rand(24), k, 0);
+					Assert.fail();
+				} catch (IllegalStateException e) {
+				}
+			}
+		}
+		try {
+			new Salsa20(7);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+	
+	/**
+	 * crypto_core of HSalsa20: NaCl tests/core1.c, the first key derived from the shared secret of 
+	 * the box tests, and a random input against SalsaEngine.hsalsa20
+	 */
+	@Test
+	public void testHSalsa20Core() {
+		byte[] shared = unhex("4a5d9d5ba4ce2de1728e3bf480350f25e07e21c947d19e3376f09b3c1e161742");
+		byte[] out = new byte[32];
+		new HSalsa20().crypto_core(out, new byte[16], shared, XSalsa20.sigma);
+		Assert.assertEquals("1b27556473e985d462cd51197a9a46c76009549eac6474f206c4ee0844f68389", hex(out));
+		new HSalsa20().crypto_core(out, null, shared, XSalsa20.sigma);
+		Assert.assertEquals("1b27556473e985d462cd51197a9a46c76009549eac6474f206c4ee0844f68389", hex(out));
+		
+		TweetNaCl salt = new TweetNaCl();
+		byte[] k = salt.gen_rand(32), in = salt.gen_rand(16), expected = new byte[32];
+		SalsaEngine.hsalsa20(expected, 0, k, 0, in, 0);
+		new HSalsa20().crypto_core(out, in, k, XSalsa20.sigma);
+		Assert.assertTrue(Arrays.equals(expected, out));
+	}
+	
+	@Test
+	public void testStreamAlg() throws IOException {
+		TweetPepper tp = new TweetPepper();
+		BoxingKeyContents sender = tp.generateBoxingKeys();
+		BoxingKeyContents receiver = tp.generateBoxingKeys();
+		byte[] m = tp.salt.gen_rand(100000);
+		for (StreamAlg alg : StreamAlg.values()) {
+			Block block = tp.encryptSalsa20(receiver, sender, new ByteArrayInputStream(m), alg);
+			Assert.assertEquals(alg.label, block.get("StreamAlg"));
+			Assert.assertEquals(alg, StreamAlg.fromLabel(block.get("StreamAlg")));
+			Assert.assertTrue(Arrays.equals(m, readAll(tp.decryptSalsa20(receiver, sender, block))));
+			Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(m, 777, 1777), 
+					readAll(tp.decryptSalsa20(receiver, sender, block, 777, 1000))));
+			
+			// the label decides the rounds
+			block.put("StreamAlg", alg == StreamAlg.Salsa20 ? StreamAlg.Salsa20_8.label : StreamAlg.Salsa20.label);
+			Assert.assertFalse(Arrays.equals(m, readAll(tp.decryptSalsa20(receiver, sender, block))));
+		}
+		// streams which cannot tell their length up front, either side of the first buffer size
+		for (int len : new int[] { 0, 1, 8191, 8192, 8193, 16384, 100000 }) {
+			byte[] part = Arrays.copyOf(m, len);
+			InputStream in = Channels.newInputStream(Channels.newChannel(new ByteArrayInputStream(part)));
+			Block block = tp.encryptSalsa20(receiver, sender, in);
+			Assert.assertEquals(String.valueOf(len), block.get("Input.Length"));
+			Assert.assertEquals(len, block.getBytesFromBase64urlString("Data.0").length);
+			Assert.assertTrue(Arrays.equals(part, readAll(tp.decryptSalsa20(receiver, sender, block))));
+		}
+		Block block = tp.encryptSalsa20(receiver, sender, new ByteArrayInputStream(m));
+		Assert.assertEquals("Salsa20", block.get("StreamAlg"));
+		block.put("StreamAlg", "Salsa20/9");
+		try {
+			tp.decryptSalsa20(receiver, sender, block);
+			Assert.fail();
+		} catch (RuntimeException e) {
+		}
+	}
+	
+	/**
+	 * MB/s of each round count on one thread; the reduced rounds should be near 20/12 and 20/8 times faster
+	 */
+	@Test
+	public void testReducedRoundsSpeed() {
+		TweetNaCl salt = new TweetNaCl();
+		byte[] k = salt.gen_rand(32), n = salt.gen_rand(8);
+		byte[] buf = new byte[1 << 20];
+		for (StreamAlg alg : StreamAlg.values()) {
+			SalsaEngine salsa = new SalsaEngine(alg.rounds);
+			for (int i = 0; i < 20; i++)
+				salsa.init(k, 0, n, 0).xor(buf, 0, buf, 0, buf.length);
+			long start = System.nanoTime();
+			for (int i = 0; i < 100; i++)
+				salsa.init(k, 0, n, 0).xor(buf, 0, buf, 0, buf.length);
+			System.err.println(String.format("%s: %.0f MB/s", alg, 100 * 1e9 / (System.nanoTime() - start)));
+		}
+	}
+	
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[1028];
+		int len;
+		while ((len = in.read(buf, 0, buf.length)) != -1)
+			out.write(buf, 0, len);
+		return out.toByteArray();
+	}
+	
+	
+
+	@Test
+	public void testVectors() {
+		// NaCl tests/stream3.c: the first 32 bytes of XSalsa20
+		byte[] key = unhex("1b27556473e985d462cd51197a9a46c76009549eac6474f206c4ee0844f68389");
+		byte[] nonce = unhex("69696ee955b62b73cd62bda875fc73d68219e0036b7a0b37");
+		byte[] rs = new byte[32];
+		new XSalsa20().crypto_stream(rs, rs.length, nonce, key);
+		Assert.assertEquals("eea6a7251c1e72916d11c2cb214d3c252539121d8e234e652d651fa4c8cff880", hex(rs));
+
+		// eSTREAM Salsa20/20, 256 bit key, set 1, vector 0
+		byte[] k = new byte[32];
+		k[0] = (byte) 0x80;
+		byte[] ks = new byte[64];
+		new Salsa20().crypto_stream(ks, ks.length, new byte[8], 0, k);
+		Assert.assertEquals("e3be8fdd8beca2e3ea8ef9475b29a6e7003951e1097a5c38d23b7a5fad9f6844"
+				+ "b22c97559e2723c7cbbd3fe4fc8d9a0744652a83e72a9c461876af4d7ef1a117", hex(ks));
+
+		// secretbox encrypts with the XSalsa20 keystream from byte 32 on
+		TweetNaCl salt = new TweetNaCl();
+		byte[] zeros = new byte[5000];
+		byte[] boxed = salt.secretbox(zeros, nonce, key);
+		byte[] stream = new byte[32 + zeros.length];
+		new XSalsa20().crypto_stream(stream, stream.length, nonce, key);
+		Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(stream, 32, stream.length),
+				Arrays.copyOfRange(boxed, TweetNaCl.SECRETBOX_OVERHEAD_BYTES, boxed.length)));
+
+		// and decrypting is the same xor
+		byte[] m = salt.gen_rand(1000), c = new byte[1000], back = new byte[1000];
+		new XSalsa20().crypto_stream_xor(c, m, m.length, nonce, key);
+		new XSalsa20().crypto_stream_xor(back, c, c.length, nonce, key);
+		Assert.assertTrue(Arrays.equals(m, back));
+	}
+
+	@Test
+	public void testEngine() {
+		TweetNaCl salt = new TweetNaCl();
+		byte[] k = salt.gen_rand(32), n = salt.gen_rand(8);
+		byte[] whole = new byte[3000];
+		new SalsaEngine().init(k, 0, n, 0).xor(whole, 0, null, 0, whole.length);
+
+		// in pieces of every size, in place
+		byte[] m = salt.gen_rand(whole.length), c = m.clone();
+		SalsaEngine salsa = new SalsaEngine().init(k, 0, n, 0);
+		for (int off = 0, len = 0; off < c.length; off += len, len++) {
+			len = Math.min(len, c.length - off);
+			salsa.xor(c, off, c, off, len);
+			Assert.assertEquals(off + len, salsa.position());
+		}
+		for (int i = 0; i < m.length; i++)
+			Assert.assertEquals((byte) (m[i] ^ whole[i]), c[i]);
+
+		// from anywhere
+		for (int pos : new int[] { 0, 1, 63, 64, 65, 127, 1000, 2999 }) {
+			byte[] part = new byte[whole.length - pos];
+			salsa.init(k, 0, n, 0).seek(pos);
+			Assert.assertEquals(pos, salsa.position());
+			salsa.xor(part, 0, null, 0, part.length);
+			Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(whole, pos, whole.length), part));
+		}
+
+		byte[] buf = new byte[1 << 20];
+		for (int i = 0; i < 20; i++)
+			salsa.init(k, 0, n, 0).xor(buf, 0, buf, 0, buf.length);
+		long start = System.nanoTime();
+		for (int i = 0; i < 100; i++)
+			salsa.init(k, 0, n, 0).xor(buf, 0, buf, 0, buf.length);
+		System.err.println(String.format("SalsaEngine: %.0f MB/s", 100 * 1e9 / (System.nanoTime() - start)));
+	}
 }
@@ -20,6 +20,7 @@ along with TweetPepper.  If not, see <http://www.gnu.org/licenses/>.
 package com.cryptoregistry.tweet;
 
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.util.Arrays;
@@ -35,6 +36,7 @@ import com.cryptoregistry.tweet.pepper.TweetPepper;
 import com.cryptoregistry.tweet.pepper.format.BlockFormatter;
 import com.cryptoregistry.tweet.pepper.key.BoxingKeyContents;
 import com.cryptoregistry.tweet.pepper.key.SigningKeyContents;
+import com.cryptoregistry.tweet.salt.SharedKey;
 import com.cryptoregistry.tweet.salt.TweetNaCl;
 import com.cryptoregistry.tweet.salt.TweetNaCl.InvalidSignatureException;
 import com.lambdaworks.crypto.SCrypt;
@@ -76,6 +78,41 @@ public class TestIdeas {
 		
 	}
 	
+	@Test
+	public void testAuthEncryptPrecomputed() {
+
+		TweetNaCl salt = new TweetNaCl();
+
+		byte [] pk0 = new byte[TweetNaCl.BOX_PUBLIC_KEY_BYTES];
+		byte [] sk0 = new byte[TweetNaCl.BOX_SECRET_KEY_BYTES];
+		salt.crypto_box_keypair(pk0, sk0, false);
+
+		byte [] pk1 = new byte[TweetNaCl.BOX_PUBLIC_KEY_BYTES];
+		byte [] sk1 = new byte[TweetNaCl.BOX_SECRET_KEY_BYTES];
+		salt.crypto_box_keypair(pk1, sk1, false);
+
+		// each side computes the shared key once
+		SharedKey senderKey = salt.crypto_box_beforenm(pk1, sk0);
+		SharedKey receiverKey = salt.crypto_box_beforenm(pk0, sk1);
+
+		for(int i = 0; i < 10; i++){
+			byte [] msg = ("Hello Tweet Salt "+i).getBytes(StandardCharsets.UTF_8);
+			byte [] nonce = salt.gen_rand(TweetNaCl.BOX_NONCE_BYTES);
+			byte [] output = salt.crypto_box_afternm(msg, nonce, senderKey);
+
+			// interoperable with the one-shot form in both directions
+			Assert.assertTrue(Arrays.equals(output, salt.crypto_box(msg, nonce, pk1, sk0)));
+			Assert.assertTrue(Arrays.equals(msg, salt.crypto_box_open(output, nonce, pk0, sk1)));
+			Assert.assertTrue(Arrays.equals(msg, salt.crypto_box_open_afternm(output, nonce, receiverKey)));
+		}
+
+		senderKey.selfDestruct();
+		try {
+			salt.crypto_box_afternm(new byte[1], salt.gen_rand(TweetNaCl.BOX_NONCE_BYTES), senderKey);
+			Assert.fail();
+		}catch(IllegalStateException x){}
+	}
+
 	/**
 	 * A little different idea - crypto_sign returns a signed message, which is then converted back 
 	 * to a message and validated. But is it also encrypted? Should this be passed, actually, a digest?
@@ -122,6 +159,84 @@ public class TestIdeas {
 		
 	}
 	
+	@Test
+	public void testSecretboxOffsets() {
+
+		TweetNaCl salt = new TweetNaCl();
+		byte [] key = salt.gen_rand(TweetNaCl.SECRETBOX_KEY_BYTES);
+		byte [] nonce = salt.gen_rand(TweetNaCl.SECRETBOX_NONCE_BYTES);
+
+		for(int len : new int[]{0, 1, 31, 32, 33, 100, 4064, 4065, 10000}){
+			byte [] msg = salt.gen_rand(len);
+			byte [] expected = salt.secretbox(msg, nonce, key);
+
+			// message in the middle of a larger array
+			byte [] frame = new byte[len + 40];
+			System.arraycopy(msg, 0, frame, 24, len);
+			byte [] out = new byte[len + TweetNaCl.SECRETBOX_OVERHEAD_BYTES + 8];
+			int count = salt.secretbox(out, 8, frame, 24, len, nonce, key);
+			Assert.assertEquals(expected.length, count);
+			Assert.assertTrue(Arrays.equals(expected, Arrays.copyOfRange(out, 8, 8 + count)));
+
+			// in place, cipher text written 16 bytes ahead of the message
+			count = salt.secretbox(frame, 8, frame, 24, len, nonce, key);
+			Assert.assertTrue(Arrays.equals(expected, Arrays.copyOfRange(frame, 8, 8 + count)));
+			count = salt.secretbox_open(frame, 24, frame, 8, count, nonce, key);
+			Assert.assertEquals(len, count);
+			Assert.assertTrue(Arrays.equals(msg, Arrays.copyOfRange(frame, 24, 24 + len)));
+
+			// heap and direct buffers give the same bytes
+			for(boolean direct : new boolean[]{false, true}){
+				ByteBuffer m = direct ? ByteBuffer.allocateDirect(len) : ByteBuffer.allocate(len);
+				m.put(msg).flip();
+				ByteBuffer c = direct ? ByteBuffer.allocateDirect(expected.length) : ByteBuffer.allocate(expected.length);
+				salt.secretbox(c, m, nonce, key);
+				Assert.assertFalse(m.hasRemaining());
+				Assert.assertFalse(c.hasRemaining());
+				c.flip();
+				byte [] cipher = new byte[c.remaining()];
+				c.duplicate().get(cipher);
+				Assert.assertTrue(Arrays.equals(expected, cipher));
+
+				ByteBuffer plain = direct ? ByteBuffer.allocateDirect(len) : ByteBuffer.allocate(len);
+				Assert.assertEquals(len, salt.secretbox_open(plain, c, nonce, key));
+				plain.flip();
+				byte [] result = new byte[plain.remaining()];
+				plain.get(result);
+				Assert.assertTrue(Arrays.equals(msg, result));
+			}
+		}
+	}
+
+	@Test
+	public void testBoxByteBufferTampered() {
+
+		TweetNaCl salt = new TweetNaCl();
+		byte [] pk0 = new byte[TweetNaCl.BOX_PUBLIC_KEY_BYTES];
+		byte [] sk0 = new byte[TweetNaCl.BOX_SECRET_KEY_BYTES];
+		salt.crypto_box_keypair(pk0, sk0, false);
+		byte [] pk1 = new byte[TweetNaCl.BOX_PUBLIC_KEY_BYTES];
+		byte [] sk1 = new byte[TweetNaCl.BOX_SECRET_KEY_BYTES];
+		salt.crypto_box_keypair(pk1, sk1, false);
+
+		byte [] msg = salt.gen_rand(5000);
+		byte [] nonce = salt.gen_rand(TweetNaCl.BOX_NONCE_BYTES);
+		ByteBuffer c = ByteBuffer.allocateDirect(msg.length + TweetNaCl.BOX_OVERHEAD_BYTES);
+		salt.crypto_box(c, ByteBuffer.wrap(msg), nonce, pk1, sk0);
+		c.flip();
+		c.put(4900, (byte)(c.get(4900) ^ 1));
+
+		ByteBuffer m = ByteBuffer.allocateDirect(msg.length);
+		try {
+			salt.crypto_box_open(m, c, nonce, pk0, sk1);
+			Assert.fail();
+		}catch(TweetNaCl.InvalidCipherTextException x){}
+		// nothing consumed or released
+		Assert.assertEquals(0, c.position());
+		Assert.assertEquals(0, m.position());
+		for(int i = 0; i < msg.length; i++) Assert.assertEquals(0, m.get(i));
+	}
+
 	@Test
 	public void testScrypt() throws Exception{
 		    